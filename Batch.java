@@ -0,0 +1,200 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many input files, each exactly as Main would convert it, in
+ *  one run.  The configuration is parsed once, and each file is converted
+ *  by a task on a fixed pool of threads with a machine of its own whose
+ *  rotors share that configuration's wiring (Machine.freshCopy).  The
+ *  pool size bounds how many files are open at once.  A file that fails
+ *  is reported on the standard error and the others carry on.
+ *
+ *  (Java 17 has no virtual threads, so the files share a bounded pool of
+ *  platform threads instead of getting a thread each; conversion is
+ *  mostly CPU-bound, so this costs little.)
+ *  @author Frank Warren
+ */
+public final class Batch {
+
+    /** Run as specified by ARGS:
+     *      CONFIG INPUT-DIRECTORY OUTPUT-DIRECTORY
+     *      CONFIG --manifest=FILE
+     *  with --threads=N (default twice the number of cores) allowed in
+     *  either.  The first converts each regular file in INPUT-DIRECTORY
+     *  into the file of the same name in OUTPUT-DIRECTORY, which is
+     *  created if need be.  The second converts the pairs listed in FILE,
+     *  one per line: an input file name and an output file name separated
+     *  by a tab; blank lines and lines starting with '#' are skipped.
+     *  Prints a summary to the standard error, and exits with code 1 if
+     *  any file failed. */
+    public static void main(String... args) {
+        try {
+            String manifest = null;
+            int threads = 2 * Runtime.getRuntime().availableProcessors();
+            List<String> rest = new ArrayList<String>();
+            for (String arg : args) {
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (!arg.startsWith("--")) {
+                    rest.add(arg);
+                } else if (arg.startsWith("--manifest=")) {
+                    manifest = value;
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value);
+                } else {
+                    throw error("Unknown option %s", arg);
+                }
+            }
+            if (threads < 1
+                || rest.size() != (manifest == null ? 3 : 1)) {
+                throw error("Usage: Batch CONFIG (INPUT-DIRECTORY "
+                        + "OUTPUT-DIRECTORY | --manifest=FILE) "
+                        + "[--threads=N]");
+            }
+            List<String[]> jobs = manifest == null
+                ? listDirectory(rest.get(1), rest.get(2))
+                : readManifest(manifest);
+            long start = System.nanoTime();
+            Batch batch = new Batch(Main.readConfig(rest.get(0)));
+            List<String> failures = batch.run(jobs, threads);
+            for (String failure : failures) {
+                System.err.printf("Error: %s%n", failure);
+            }
+            System.err.printf("%d files converted, %d failed, in %.3f s%n",
+                    jobs.size() - failures.size(), failures.size(),
+                    (System.nanoTime() - start) * 1e-9);
+            if (failures.isEmpty()) {
+                return;
+            }
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the (input, output) pairs for converting each regular file
+     *  in directory INPUT into the file of the same name in directory
+     *  OUTPUT, which is created if need be, in name order. */
+    static List<String[]> listDirectory(String input, String output) {
+        File[] files = new File(input).listFiles(File::isFile);
+        if (files == null) {
+            throw error("could not list directory %s", input);
+        }
+        File dir = new File(output);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw error("could not create directory %s", output);
+        }
+        Arrays.sort(files);
+        List<String[]> result = new ArrayList<String[]>();
+        for (File file : files) {
+            result.add(new String[] {
+                file.getPath(), new File(dir, file.getName()).getPath()
+            });
+        }
+        return result;
+    }
+
+    /** Return the (input, output) pairs listed in the manifest file
+     *  NAME. */
+    static List<String[]> readManifest(String name) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        List<String[]> result = new ArrayList<String[]>();
+        for (int i = 0; i < lines.size(); i += 1) {
+            String line = lines.get(i);
+            if (line.isBlank() || line.startsWith("#")) {
+                continue;
+            }
+            String[] pair = line.split("\t");
+            if (pair.length != 2) {
+                throw error("%s:%d: need an input and an output file "
+                        + "separated by a tab", name, i + 1);
+            }
+            result.add(pair);
+        }
+        return result;
+    }
+
+    /** A batch converting with machines like M, whose own rotors are
+     *  never used. */
+    Batch(Machine m) {
+        _machine = m;
+    }
+
+    /** Convert each pair of input and output file names in JOBS on
+     *  THREADS threads, and return a description of each failure, in the
+     *  order of JOBS. */
+    List<String> run(List<String[]> jobs, int threads) {
+        List<String> result = new ArrayList<String>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> parts = new ArrayList<Future<String>>();
+            for (String[] job : jobs) {
+                parts.add(pool.submit(() -> convert(job[0], job[1])));
+            }
+            for (Future<String> part : parts) {
+                String failure = part.get();
+                if (failure != null) {
+                    result.add(failure);
+                }
+            }
+        } catch (ExecutionException excp) {
+            throw error("batch failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    /** Convert the file named INPUT into the file named OUTPUT with a
+     *  machine of its own, returning null, or a description of the
+     *  failure if it fails. */
+    String convert(String input, String output) {
+        try (InputStream in = new FileInputStream(input);
+             PrintStream out = new PrintStream(new BufferedOutputStream(
+                 new FileOutputStream(output), 1 << 16))) {
+            Main.convert(_machine.freshCopy(), in, out);
+            if (out.checkError()) {
+                return String.format("%s: could not write %s", input,
+                                     output);
+            }
+            return null;
+        } catch (IOException excp) {
+            return String.format("%s: %s", input, excp.getMessage());
+        } catch (EnigmaException excp) {
+            return String.format("%s: %s", input, excp.getMessage());
+        } catch (RuntimeException excp) {
+            return String.format("%s: %s", input, excp);
+        }
+    }
+
+    /** Machine whose configuration every file is converted with. */
+    private final Machine _machine;
+}
@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Batch class.
+ *  @author Frank Warren
+ */
+public class BatchTest {
+
+    /** Inputs of the batches, one file each. */
+    private static final String[] INPUTS = {
+        "* B Beta III IV I AXLE BCDE (HQ) (EX)\nFROM HIS SHOULDER HIAWATHA\n",
+        "* B Gamma II IV I QRST\nTOOK THE CAMERA\nOF ROSEWOOD\n",
+        "* B Beta III IV I AAAA\nMADE OF SLIDING\n* B Beta I II III ZZZZ\n"
+            + "FOLDING ROSEWOOD\n",
+        "* B Gamma IV V VI AQLE (AB) (CD)\n\nNEATLY PUT IT ALL TOGETHER\n",
+        "* B Beta III IV I AXLE\n" + "IN ITS CASE IT LAY COMPACTLY\n"
+            .repeat(100)
+    };
+
+    /** Return a new temporary directory. */
+    private static File tempDirectory() throws IOException {
+        File dir = Files.createTempDirectory("batch").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /** Write TEXT to the file NAME in DIR and return it. */
+    private static File write(File dir, String name, String text)
+        throws IOException {
+        File file = new File(dir, name);
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), text);
+        return file;
+    }
+
+    /** Return the output of Main converting the file INPUT with the
+     *  configuration in file CONFIG. */
+    private static String mainOutput(File config, File input)
+        throws IOException {
+        File output = File.createTempFile("main", ".out");
+        output.deleteOnExit();
+        new Main(new String[] {
+            config.getPath(), input.getPath(), output.getPath()
+        }).process();
+        return Files.readString(output.toPath());
+    }
+
+    @Test
+    public void directoryModeMatchesMain() throws IOException {
+        File config = navalConfigFile();
+        File in = tempDirectory();
+        File out = new File(tempDirectory(), "converted");
+        out.deleteOnExit();
+        List<File> inputs = new ArrayList<File>();
+        for (int i = 0; i < INPUTS.length; i += 1) {
+            inputs.add(write(in, "message" + i, INPUTS[i]));
+        }
+        List<String[]> jobs = Batch.listDirectory(in.getPath(),
+                                                  out.getPath());
+        assertEquals(INPUTS.length, jobs.size());
+        assertTrue(out.isDirectory());
+        Batch batch = new Batch(Main.readConfig(config.getPath()));
+        assertTrue(batch.run(jobs, 3).isEmpty());
+        for (File input : inputs) {
+            File output = new File(out, input.getName());
+            output.deleteOnExit();
+            assertEquals(mainOutput(config, input),
+                         Files.readString(output.toPath()));
+        }
+    }
+
+    @Test
+    public void manifestModeSkipsCommentsAndBlanks() throws IOException {
+        File config = navalConfigFile();
+        File dir = tempDirectory();
+        File a = write(dir, "a", INPUTS[0]), b = write(dir, "b", INPUTS[1]);
+        File aOut = new File(dir, "a.out"), bOut = new File(dir, "b.out");
+        aOut.deleteOnExit();
+        bOut.deleteOnExit();
+        File manifest = write(dir, "manifest",
+                "# messages\n" + a + "\t" + aOut + "\n\n"
+                + b + "\t" + bOut + "\n");
+        List<String[]> jobs = Batch.readManifest(manifest.getPath());
+        assertEquals(2, jobs.size());
+        Batch batch = new Batch(Main.readConfig(config.getPath()));
+        assertTrue(batch.run(jobs, 2).isEmpty());
+        assertEquals(mainOutput(config, a), Files.readString(aOut.toPath()));
+        assertEquals(mainOutput(config, b), Files.readString(bOut.toPath()));
+        File bad = write(dir, "bad", a + "\t" + aOut + "\n" + b + "\n");
+        try {
+            Batch.readManifest(bad.getPath());
+            fail("accepted a line without an output file");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains(":2:"));
+        }
+    }
+
+    @Test
+    public void failuresReportedOthersContinue() throws IOException {
+        File config = navalConfigFile();
+        File dir = tempDirectory();
+        File good = write(dir, "good", INPUTS[2]);
+        File noSetting = write(dir, "nosetting", "HELLO WORLD\n");
+        File missing = new File(dir, "missing");
+        String[][] pairs = {
+            {missing.getPath(), new File(dir, "missing.out").getPath()},
+            {good.getPath(), new File(dir, "good.out").getPath()},
+            {noSetting.getPath(), new File(dir, "nosetting.out").getPath()}
+        };
+        List<String[]> jobs = new ArrayList<String[]>();
+        for (String[] pair : pairs) {
+            new File(pair[1]).deleteOnExit();
+            jobs.add(pair);
+        }
+        Batch batch = new Batch(Main.readConfig(config.getPath()));
+        List<String> failures = batch.run(jobs, 2);
+        assertEquals(2, failures.size());
+        assertTrue(failures.get(0).startsWith(missing.getPath()));
+        assertEquals(noSetting.getPath() + ": No configuration line found.",
+                     failures.get(1));
+        assertEquals(mainOutput(config, good),
+                     Files.readString(new File(pairs[1][1]).toPath()));
+    }
+}
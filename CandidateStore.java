@@ -0,0 +1,304 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A bounded store of the best-scoring candidate keys seen by a search,
+ *  kept off the Java heap.  Each candidate is a float score, a packed
+ *  key and a packed plugboard (see KeySpace), held as a 20-byte record
+ *  in a primitive min-heap over a direct or file-mapped ByteBuffer, so
+ *  the lowest retained score is always at the root.
+ *
+ *  Inserts are striped: each thread offers to the stripe chosen by its
+ *  id, and only takes that stripe's lock when its score beats the
+ *  stripe's current floor, which is read without locking.  Every stripe
+ *  can hold the full capacity, so the union of stripes always contains
+ *  the true top candidates; merged() reduces them to one heap.
+ *  @author Frank Warren
+ */
+class CandidateStore {
+
+    /** Bytes per stored candidate: score, key and plugboard. */
+    static final int ENTRY_BYTES = 20;
+
+    /** A store keeping the CAPACITY best candidates in direct memory,
+     *  spread over STRIPES independently locked heaps. */
+    CandidateStore(int capacity, int stripes) {
+        this(capacity, stripes, null);
+    }
+
+    /** A store keeping the CAPACITY best candidates over STRIPES heaps.
+     *  If SPILL is non-null, the heaps live in that file, mapped into
+     *  memory, rather than in direct buffers, so that very large
+     *  capacities are paged by the OS instead of pinned in RAM. */
+    CandidateStore(int capacity, int stripes, File spill) {
+        if (capacity < 1 || stripes < 1) {
+            throw error("Candidate store needs a positive capacity "
+                    + "and stripe count.");
+        }
+        if ((long) capacity * ENTRY_BYTES > Integer.MAX_VALUE) {
+            throw error("Candidate store capacity too large for one stripe.");
+        }
+        _capacity = capacity;
+        _stripes = new Stripe[stripes];
+        int bytes = capacity * ENTRY_BYTES;
+        if (spill == null) {
+            _channel = null;
+            for (int i = 0; i < stripes; i += 1) {
+                _stripes[i] = new Stripe(ByteBuffer.allocateDirect(bytes));
+            }
+        } else {
+            try {
+                _channel = FileChannel.open(spill.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                for (int i = 0; i < stripes; i += 1) {
+                    MappedByteBuffer buf = _channel.map(
+                            FileChannel.MapMode.READ_WRITE,
+                            (long) i * bytes, bytes);
+                    _stripes[i] = new Stripe(buf);
+                }
+            } catch (IOException excp) {
+                throw error("could not open %s", spill);
+            }
+        }
+    }
+
+    /** Return the maximum number of candidates I retain. */
+    int capacity() {
+        return _capacity;
+    }
+
+    /** Offer the candidate with score SCORE, packed key KEY and packed
+     *  plugboard PLUGS from the calling thread.  Returns true iff it was
+     *  retained by the calling thread's stripe. */
+    boolean offer(float score, long key, long plugs) {
+        int id = (int) Thread.currentThread().getId();
+        return _stripes[Math.floorMod(id, _stripes.length)]
+            .offer(score, key, plugs);
+    }
+
+    /** Return a lower bound on the score a candidate needs to be
+     *  retained, so workers can skip scoring that cannot succeed. */
+    float threshold() {
+        float result = Float.POSITIVE_INFINITY;
+        for (Stripe s : _stripes) {
+            result = Math.min(result, s._floor);
+        }
+        return result;
+    }
+
+    /** Offer every candidate in OTHER to me. */
+    void addAll(CandidateStore other) {
+        for (Stripe s : other._stripes) {
+            synchronized (s) {
+                for (int i = 0; i < s._size; i += 1) {
+                    offer(s.score(i), s.key(i), s.plugs(i));
+                }
+            }
+        }
+    }
+
+    /** Return a single-stripe store in direct memory holding the best
+     *  capacity() candidates across all my stripes. */
+    CandidateStore merged() {
+        CandidateStore result = new CandidateStore(_capacity, 1);
+        result.addAll(this);
+        return result;
+    }
+
+    /** Return the number of candidates held over all stripes, which may
+     *  exceed capacity() until merged. */
+    int size() {
+        int result = 0;
+        for (Stripe s : _stripes) {
+            synchronized (s) {
+                result += s._size;
+            }
+        }
+        return result;
+    }
+
+    /** Copy the best candidates across all stripes into SCORES, KEYS and
+     *  PLUGS, best first, and return how many were copied.  At most
+     *  min(capacity(), SCORES.length) are returned.  Leaves me empty. */
+    int drain(float[] scores, long[] keys, long[] plugs) {
+        Stripe all = _stripes.length == 1 ? _stripes[0]
+            : merged()._stripes[0];
+        synchronized (all) {
+            while (all._size > scores.length) {
+                all.pop();
+            }
+            int count = all._size;
+            for (int i = count - 1; i >= 0; i -= 1) {
+                scores[i] = all.score(0);
+                keys[i] = all.key(0);
+                plugs[i] = all.plugs(0);
+                all.pop();
+            }
+            for (Stripe s : _stripes) {
+                synchronized (s) {
+                    s.clear();
+                }
+            }
+            return count;
+        }
+    }
+
+    /** Release the spill file, if any, after forcing it to disk.  I may
+     *  not be used afterwards. */
+    void close() {
+        if (_channel != null) {
+            try {
+                for (Stripe s : _stripes) {
+                    ((MappedByteBuffer) s._buf).force();
+                }
+                _channel.close();
+            } catch (IOException excp) {
+                throw error("could not close candidate spill file");
+            }
+        }
+    }
+
+    /** One independently locked min-heap of candidates. */
+    private class Stripe {
+
+        /** A heap stored in BUF, which holds capacity() records. */
+        Stripe(ByteBuffer buf) {
+            _buf = buf;
+            _floor = Float.NEGATIVE_INFINITY;
+        }
+
+        /** Offer SCORE, KEY and PLUGS; return true iff retained. */
+        boolean offer(float score, long key, long plugs) {
+            if (score <= _floor) {
+                return false;
+            }
+            synchronized (this) {
+                if (_size < _capacity) {
+                    write(_size, score, key, plugs);
+                    _size += 1;
+                    siftUp(_size - 1);
+                } else if (score > score(0)) {
+                    write(0, score, key, plugs);
+                    siftDown(0);
+                } else {
+                    return false;
+                }
+                if (_size == _capacity) {
+                    _floor = score(0);
+                }
+                return true;
+            }
+        }
+
+        /** Remove the lowest-scoring record. */
+        void pop() {
+            _size -= 1;
+            if (_size > 0) {
+                copy(_size, 0);
+                siftDown(0);
+            }
+            _floor = Float.NEGATIVE_INFINITY;
+        }
+
+        /** Remove all records. */
+        void clear() {
+            _size = 0;
+            _floor = Float.NEGATIVE_INFINITY;
+        }
+
+        /** Return the score of record I. */
+        float score(int i) {
+            return _buf.getFloat(i * ENTRY_BYTES);
+        }
+
+        /** Return the packed key of record I. */
+        long key(int i) {
+            return _buf.getLong(i * ENTRY_BYTES + 4);
+        }
+
+        /** Return the packed plugboard of record I. */
+        long plugs(int i) {
+            return _buf.getLong(i * ENTRY_BYTES + 12);
+        }
+
+        /** Store SCORE, KEY and PLUGS as record I. */
+        private void write(int i, float score, long key, long plugs) {
+            int off = i * ENTRY_BYTES;
+            _buf.putFloat(off, score);
+            _buf.putLong(off + 4, key);
+            _buf.putLong(off + 12, plugs);
+        }
+
+        /** Copy record FROM over record TO. */
+        private void copy(int from, int to) {
+            write(to, score(from), key(from), plugs(from));
+        }
+
+        /** Swap records I and J. */
+        private void swap(int i, int j) {
+            float score = score(i);
+            long key = key(i), plugs = plugs(i);
+            copy(j, i);
+            write(j, score, key, plugs);
+        }
+
+        /** Restore the heap property upward from record I. */
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (score(parent) <= score(i)) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        /** Restore the heap property downward from record I. */
+        private void siftDown(int i) {
+            while (true) {
+                int least = i, left = 2 * i + 1, right = left + 1;
+                if (left < _size && score(left) < score(least)) {
+                    least = left;
+                }
+                if (right < _size && score(right) < score(least)) {
+                    least = right;
+                }
+                if (least == i) {
+                    return;
+                }
+                swap(i, least);
+                i = least;
+            }
+        }
+
+        /** Record storage. */
+        private final ByteBuffer _buf;
+
+        /** Number of records held. */
+        private int _size;
+
+        /** Lowest retained score once full, else negative infinity.
+         *  Read without locking to reject hopeless offers cheaply. */
+        private volatile float _floor;
+    }
+
+    /** Maximum number of candidates retained. */
+    private final int _capacity;
+
+    /** The independently locked heaps. */
+    private final Stripe[] _stripes;
+
+    /** Channel of the spill file, or null when in direct memory. */
+    private final FileChannel _channel;
+}
@@ -0,0 +1,124 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+/** The suite of all JUnit tests for the CandidateStore class.
+ *  @author Frank Warren
+ */
+public class CandidateStoreTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Offer SCORES to STORE with keys equal to their indices, then
+     *  check that the top K come back best first. */
+    private void checkTopK(CandidateStore store, float[] scores, int k) {
+        for (int i = 0; i < scores.length; i += 1) {
+            store.offer(scores[i], i, -i);
+        }
+        float[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        float[] outScores = new float[k];
+        long[] keys = new long[k], plugs = new long[k];
+        assertEquals(k, store.drain(outScores, keys, plugs));
+        for (int i = 0; i < k; i += 1) {
+            assertEquals(sorted[sorted.length - 1 - i], outScores[i], 0f);
+            assertEquals(scores[(int) keys[i]], outScores[i], 0f);
+            assertEquals(-keys[i], plugs[i]);
+        }
+    }
+
+    /** Return N distinct pseudo-random scores. */
+    private float[] randomScores(int n) {
+        Random r = new Random(61);
+        float[] result = new float[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = i + r.nextFloat() / 2;
+        }
+        for (int i = n - 1; i > 0; i -= 1) {
+            int j = r.nextInt(i + 1);
+            float t = result[i];
+            result[i] = result[j];
+            result[j] = t;
+        }
+        return result;
+    }
+
+    @Test
+    public void keepsTopK() {
+        checkTopK(new CandidateStore(10, 1), randomScores(1000), 10);
+    }
+
+    @Test
+    public void keepsTopKAcrossStripes() {
+        CandidateStore store = new CandidateStore(50, 4);
+        checkTopK(store, randomScores(5000), 50);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void concurrentOffers() throws InterruptedException {
+        final CandidateStore store = new CandidateStore(16, 8);
+        final float[] scores = randomScores(8000);
+        Thread[] workers = new Thread[8];
+        for (int t = 0; t < workers.length; t += 1) {
+            final int start = t;
+            workers[t] = new Thread(() -> {
+                for (int i = start; i < scores.length; i += 8) {
+                    store.offer(scores[i], i, 0);
+                }
+            });
+            workers[t].start();
+        }
+        for (Thread w : workers) {
+            w.join();
+        }
+        float[] out = new float[16];
+        store.drain(out, new long[16], new long[16]);
+        for (int i = 0; i < out.length; i += 1) {
+            assertEquals(scores.length - 1 - i, (int) out[i]);
+        }
+    }
+
+    @Test
+    public void spillToFile() throws IOException {
+        File spill = File.createTempFile("candidates", ".bin");
+        spill.deleteOnExit();
+        CandidateStore store = new CandidateStore(100, 2, spill);
+        checkTopK(store, randomScores(3000), 100);
+        store.close();
+        assertEquals(2 * 100 * CandidateStore.ENTRY_BYTES, spill.length());
+    }
+
+    @Test
+    public void packedKeysRoundTrip() {
+        Alphabet alpha = new Alphabet();
+        KeySpace space = new KeySpace(alpha, 5,
+                Arrays.asList("B", "Beta", "I", "II", "III", "IV"));
+        int[] order = {0, 1, 4, 5, 2}, rings = {0, 0, 3, 25};
+        int[] positions = {0, 23, 11, 4};
+        long key = space.pack(order, rings, positions);
+        assertEquals("B Beta III IV I", space.rotors(key));
+        assertEquals("AXLE", space.setting(key));
+        assertEquals("AADZ", space.ringSetting(key));
+        Permutation board = new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                alpha);
+        int[] map = new int[26];
+        for (int i = 0; i < 26; i += 1) {
+            map[i] = board.permute(i);
+        }
+        long plugs = space.packPlugboard(map);
+        assertTrue(plugs >= 0 && plugs < space.plugboards());
+        assertEquals("(BY) (EX) (HQ) (IP) (RT)",
+                space.plugboardCycles(plugs));
+    }
+}
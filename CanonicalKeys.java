@@ -0,0 +1,283 @@
+package enigma;
+
+import java.util.function.LongConsumer;
+
+/** Collapses keys of a KeySpace that behave identically over messages of
+ *  a given length to one canonical key each.
+ *
+ *  A rotor with start position P and ring setting R converts according
+ *  to its offset P - R alone (see Machine.setRotors); P itself matters
+ *  only when the machine asks whether the rotor is at a notch, and then
+ *  only for the windows P, P + 1, ... the rotor passes through during the
+ *  message.  The notch of the leftmost moving rotor and of fixed rotors
+ *  is never consulted, so their ring setting is irrelevant; the fast
+ *  rotor is consulted at windows P .. P + LENGTH - 1; each rotor to its
+ *  left at most at as many windows as the rotor to its right turns it
+ *  over, plus one double step per notch of its own.  Two keys with the
+ *  same order and offsets whose rotors see the same notches over those
+ *  windows produce the same output letter for letter.  The canonical key
+ *  of such a class takes, slot by slot, the least position with the same
+ *  notch pattern, and the ring setting that keeps the offset.
+ *
+ *  Each instance keeps a machine of its own, so one is needed per
+ *  thread.
+ *  @author Frank Warren
+ */
+class CanonicalKeys {
+
+    /** Canonical keys of SPACE for messages of LENGTH letters, with
+     *  rotors inserted into M, whose rotors no other thread uses. */
+    CanonicalKeys(Machine m, KeySpace space, int length) {
+        _machine = m;
+        _space = space;
+        _length = length;
+        _size = m.getAlphabet().size();
+        _numRotors = m.numRotors();
+        _first = m.numRotors() - m.numPawls();
+        _order = new int[_numRotors];
+        _rings = new int[_numRotors - 1];
+        _positions = new int[_numRotors - 1];
+        _notches = new boolean[_numRotors][];
+        _notchCounts = new int[_numRotors];
+        _tables = new int[_numRotors][][];
+        _currentOrder = -1;
+    }
+
+    /** Return the canonical key equivalent to KEY, or KEY itself if its
+     *  rotor order is not valid for my machine. */
+    long canonical(long key) {
+        if (!useOrder(key)) {
+            return key;
+        }
+        _space.unpack(key, _order, _rings, _positions);
+        long hits = 0;
+        for (int j = _numRotors - 1; j >= 1; j -= 1) {
+            long bound = bound(j, hits);
+            int p = _positions[j - 1];
+            int offset = p - _rings[j - 1];
+            _positions[j - 1] = table(j, bound)[p];
+            _rings[j - 1] = Math.floorMod(_positions[j - 1] - offset, _size);
+            hits = hits(j, p, bound);
+        }
+        return _space.pack(_order, _rings, _positions);
+    }
+
+    /** Return true iff KEY is its own canonical key. */
+    boolean isCanonical(long key) {
+        return canonical(key) == key;
+    }
+
+    /** Call ACTION with every canonical key of the rotor order of KEY,
+     *  in no particular order.  Does nothing if that order is not valid
+     *  for my machine. */
+    void forEach(long key, LongConsumer action) {
+        if (useOrder(key)) {
+            int[] order = new int[_numRotors];
+            _space.unpack(key, order, null, null);
+            choose(_numRotors - 1, 0, order, new int[_numRotors - 1],
+                   action);
+        }
+    }
+
+    /** Return the number of canonical keys of the rotor order of KEY,
+     *  or 0 if it is not valid for my machine. */
+    long count(long key) {
+        long[] result = { 0 };
+        if (useOrder(key)) {
+            countChoices(_numRotors - 1, 0, result);
+        }
+        long offsets = 1;
+        for (int j = 1; j < _numRotors; j += 1) {
+            offsets *= _size;
+        }
+        return result[0] * offsets;
+    }
+
+    /** Choose canonical positions, stored in POSITIONS, for slots J down
+     *  to 1, where the rotor in slot J + 1 turns slot J over at most HITS
+     *  times, and then call ACTION with the keys of rotor order ORDER and
+     *  every combination of offsets. */
+    private void choose(int j, long hits, int[] order, int[] positions,
+                        LongConsumer action) {
+        if (j == 0) {
+            int[] offsets = new int[_numRotors - 1];
+            int[] rings = new int[_numRotors - 1];
+            while (true) {
+                for (int i = 0; i < offsets.length; i += 1) {
+                    rings[i] = Math.floorMod(positions[i] - offsets[i],
+                                             _size);
+                }
+                action.accept(_space.pack(order, rings, positions));
+                int i = offsets.length - 1;
+                while (i >= 0 && offsets[i] == _size - 1) {
+                    offsets[i] = 0;
+                    i -= 1;
+                }
+                if (i < 0) {
+                    return;
+                }
+                offsets[i] += 1;
+            }
+        }
+        long bound = bound(j, hits);
+        int[] table = table(j, bound);
+        for (int p = 0; p < _size; p += 1) {
+            if (table[p] == p) {
+                positions[j - 1] = p;
+                choose(j - 1, hits(j, p, bound), order, positions, action);
+            }
+        }
+    }
+
+    /** Add to RESULT[0] the number of combinations of canonical positions
+     *  for slots J down to 1, where slot J + 1 turns slot J over at most
+     *  HITS times. */
+    private void countChoices(int j, long hits, long[] result) {
+        if (j == 0) {
+            result[0] += 1;
+            return;
+        }
+        long bound = bound(j, hits);
+        int[] table = table(j, bound);
+        for (int p = 0; p < _size; p += 1) {
+            if (table[p] == p) {
+                countChoices(j - 1, hits(j, p, bound), result);
+            }
+        }
+    }
+
+    /** Return the last window offset, from its start position, at which
+     *  the notch of slot J can be consulted during a message, when slot
+     *  J + 1 turns it over at most HITS times, or -1 if it never is.
+     *  While a rotor has made fewer than a full turn it meets each of its
+     *  notches at most once, so it double steps at most once per notch. */
+    private long bound(int j, long hits) {
+        if (_notches[j] == null) {
+            return -1;
+        } else if (j == _numRotors - 1) {
+            return _length - 1;
+        } else if (hits + _notchCounts[j] < _size) {
+            return hits + _notchCounts[j];
+        } else {
+            return _length;
+        }
+    }
+
+    /** Return the most times slot J, from position P, can be at a notch
+     *  when consulted at window offsets 0 .. BOUND, and so the most times
+     *  it turns over the slot to its left. */
+    private long hits(int j, int p, long bound) {
+        if (_notches[j] == null || bound < 0) {
+            return 0;
+        }
+        long result = (bound + 1) / _size * _notchCounts[j];
+        for (int k = 0; k < (bound + 1) % _size; k += 1) {
+            if (_notches[j][(p + k) % _size]) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Return the canonical position table of slot J when its notch is
+     *  consulted at window offsets 0 .. BOUND: entry P is the least
+     *  position with the same notch pattern as P over those windows (over
+     *  a full turn if BOUND is larger). */
+    private int[] table(int j, long bound) {
+        int range = (int) Math.min(_size - 1, bound);
+        if (_tables[j][range + 1] == null) {
+            int[] table = new int[_size];
+            for (int p = 0; p < _size; p += 1) {
+                int q = 0;
+                while (!samePattern(j, p, q, range)) {
+                    q += 1;
+                }
+                table[p] = q;
+            }
+            _tables[j][range + 1] = table;
+        }
+        return _tables[j][range + 1];
+    }
+
+    /** Return true iff slot J is at a notch at the same windows 0 ..
+     *  RANGE from positions P and Q. */
+    private boolean samePattern(int j, int p, int q, int range) {
+        for (int k = 0; k <= range; k += 1) {
+            if (_notches[j][(p + k) % _size] != _notches[j][(q + k) % _size]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Set up my notch tables for the rotor order of KEY, returning false
+     *  if my machine does not accept that order. */
+    private boolean useOrder(long key) {
+        long order = key / _space.keysPerOrder();
+        if (order == _currentOrder) {
+            return _orderValid;
+        }
+        _currentOrder = order;
+        try {
+            _machine.insertRotors(_space.rotors(key));
+        } catch (EnigmaException excp) {
+            _orderValid = false;
+            return false;
+        }
+        Alphabet alpha = _machine.getAlphabet();
+        for (int j = 1; j < _numRotors; j += 1) {
+            _notches[j] = null;
+            _notchCounts[j] = 0;
+            _tables[j] = new int[_size + 1][];
+            Rotor rotor = _machine.getRotors()[j];
+            if (j > _first && rotor instanceof MovingRotor) {
+                String notches = ((MovingRotor) rotor).notches();
+                _notches[j] = new boolean[_size];
+                for (int p = 0; p < _size; p += 1) {
+                    _notches[j][p] = notches.indexOf(alpha.toChar(p)) >= 0;
+                    if (_notches[j][p]) {
+                        _notchCounts[j] += 1;
+                    }
+                }
+            } else {
+                _tables[j][0] = new int[_size];
+            }
+        }
+        _orderValid = true;
+        return true;
+    }
+
+    /** Machine into which each rotor order is inserted. */
+    private final Machine _machine;
+
+    /** Space of my keys. */
+    private final KeySpace _space;
+
+    /** Message length in letters. */
+    private final int _length;
+
+    /** Alphabet size, slots, and first moving slot. */
+    private final int _size, _numRotors, _first;
+
+    /** Scratch rotor order, ring settings and positions. */
+    private final int[] _order, _rings, _positions;
+
+    /** For each slot whose notch may be consulted, whether each window is
+     *  a notch; null for the others. */
+    private final boolean[][] _notches;
+
+    /** Number of notches of each slot in _notches. */
+    private final int[] _notchCounts;
+
+    /** Canonical position tables of each slot, indexed by the last
+     *  consulted window offset (at most a full turn) plus one, built on
+     *  first use. */
+    private final int[][][] _tables;
+
+    /** Rotor order (key / keys per order) whose tables are set up, or
+     *  -1. */
+    private long _currentOrder;
+
+    /** True iff my machine accepted _currentOrder. */
+    private boolean _orderValid;
+}
@@ -0,0 +1,72 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CanonicalKeys class.
+ *  @author Frank Warren
+ */
+public class CanonicalKeysTest {
+
+    /** Return the conversion of TEXT by machine M set to KEY of SPACE. */
+    private static String convert(Machine m, KeySpace space, long key,
+                                  String text) {
+        space.apply(m, key);
+        return m.convert(text);
+    }
+
+    @Test
+    public void canonicalKeysConvertAlike() {
+        Machine m = navalMachine();
+        KeySpace space = new KeySpace(m);
+        Random random = new Random(39);
+        int[] lengths = { 1, 3, 12, 25, 26, 40, 300, 2000 };
+        for (int length : lengths) {
+            CanonicalKeys canon = new CanonicalKeys(navalMachine(), space,
+                    length);
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < length; i += 1) {
+                text.append((char) ('A' + random.nextInt(26)));
+            }
+            int checked = 0;
+            while (checked < 300) {
+                long key = (long) (random.nextDouble() * space.size());
+                long canonical = canon.canonical(key);
+                try {
+                    space.apply(m, key);
+                } catch (EnigmaException excp) {
+                    assertEquals(key, canonical);
+                    continue;
+                }
+                assertEquals(convert(m, space, key, text.toString()),
+                        convert(m, space, canonical, text.toString()));
+                assertTrue(canon.isCanonical(canonical));
+                checked += 1;
+            }
+        }
+    }
+
+    @Test
+    public void forEachMatchesCount() {
+        Machine m = navalMachine();
+        KeySpace space = new KeySpace(m);
+        long order = KeySearch.validOrders(m, space, "B Beta III IV I")
+            .get(0);
+        CanonicalKeys canon = new CanonicalKeys(m, space, 2);
+        long[] seen = { 0 };
+        canon.forEach(order, key -> {
+            if (seen[0] % 997 == 0) {
+                assertTrue(canon.isCanonical(key));
+                assertEquals(order / space.keysPerOrder(),
+                             key / space.keysPerOrder());
+            }
+            seen[0] += 1;
+        });
+        assertEquals(canon.count(order), seen[0]);
+        assertTrue(seen[0] * 26 * 26 < space.keysPerOrder());
+    }
+}
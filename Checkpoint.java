@@ -0,0 +1,215 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static enigma.EnigmaException.*;
+
+/** The state of a Main run at a line boundary: how far it has read its
+ *  input and written its output, the setting line in force, and the
+ *  machine's state: the rotors inserted, their positions (packed into
+ *  one long), the plugboard and the ring setting of every rotor.  The
+ *  setting line alone does not determine that state, since a line
+ *  without a plugboard or ring setting keeps those of earlier lines, so
+ *  the state is restored directly, and resuming from a checkpoint
+ *  reproduces the rest of an uninterrupted run exactly.
+ *
+ *  A checkpoint file is text, one "NAME VALUE" line per field ("ring
+ *  ROTOR INDEX" for each rotor with a ring setting other than 0), and is
+ *  replaced atomically so a crash never leaves a partial one.
+ *  @author Frank Warren
+ */
+class Checkpoint {
+
+    /** A checkpoint at input byte INPUTOFFSET and output byte
+     *  OUTPUTOFFSET, where the latest setting line (after its '*') was
+     *  SETTING, or null if none, and the machine was M. */
+    Checkpoint(long inputOffset, long outputOffset, String setting,
+               Machine m) {
+        this(inputOffset, outputOffset, setting, null, 0, "",
+             new LinkedHashMap<String, Integer>());
+        RotorLibrary library = m.getAllRotors();
+        for (String name : new TreeSet<String>(library.names())) {
+            int ring = library.get(name).ringSetting();
+            if (ring != 0) {
+                _rings.put(name, ring);
+            }
+        }
+        if (setting != null) {
+            StringBuilder rotors = new StringBuilder();
+            for (Rotor rotor : m.getRotors()) {
+                rotors.append(rotors.length() == 0 ? "" : " ")
+                    .append(rotor.name());
+            }
+            _rotors = rotors.toString();
+            _positions = m.packedPositions();
+            _plugboard = cycles(m.getPlugboard());
+        }
+    }
+
+    /** A checkpoint at input byte INPUTOFFSET and output byte
+     *  OUTPUTOFFSET, where the latest setting line was SETTING, the
+     *  rotors named ROTORS (or null if none) were at POSITIONS, the
+     *  plugboard had the cycles PLUGBOARD and the rotors had the ring
+     *  settings RINGS. */
+    private Checkpoint(long inputOffset, long outputOffset, String setting,
+                       String rotors, long positions, String plugboard,
+                       LinkedHashMap<String, Integer> rings) {
+        _inputOffset = inputOffset;
+        _outputOffset = outputOffset;
+        _setting = setting;
+        _rotors = rotors;
+        _positions = positions;
+        _plugboard = plugboard;
+        _rings = rings;
+    }
+
+    /** Return the checkpoint stored in FILE. */
+    static Checkpoint read(File file) {
+        long input = -1, output = -1, positions = 0;
+        String setting = null, rotors = null, plugboard = "";
+        LinkedHashMap<String, Integer> rings =
+            new LinkedHashMap<String, Integer>();
+        try {
+            for (String line : Files.readAllLines(file.toPath())) {
+                int space = line.indexOf(' ');
+                String name = space < 0 ? line : line.substring(0, space);
+                String value = space < 0 ? "" : line.substring(space + 1);
+                switch (name) {
+                case "input":
+                    input = Long.parseLong(value);
+                    break;
+                case "output":
+                    output = Long.parseLong(value);
+                    break;
+                case "setting":
+                    setting = value;
+                    break;
+                case "rotors":
+                    rotors = value;
+                    break;
+                case "positions":
+                    positions = Long.parseLong(value);
+                    break;
+                case "plugboard":
+                    plugboard = value;
+                    break;
+                case "ring":
+                    String[] ring = value.split(" ");
+                    rings.put(ring[0], Integer.parseInt(ring[1]));
+                    break;
+                default:
+                    break;
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read checkpoint %s", file);
+        } catch (NumberFormatException
+                 | ArrayIndexOutOfBoundsException excp) {
+            throw error("corrupt checkpoint %s", file);
+        }
+        if (input < 0 || output < 0 || (setting != null && rotors == null)) {
+            throw error("corrupt checkpoint %s", file);
+        }
+        return new Checkpoint(input, output, setting, rotors, positions,
+                              plugboard, rings);
+    }
+
+    /** Replace the contents of FILE with me. */
+    void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        StringBuilder text = new StringBuilder();
+        text.append("input ").append(_inputOffset).append('\n');
+        text.append("output ").append(_outputOffset).append('\n');
+        if (_setting != null) {
+            text.append("setting ").append(_setting).append('\n');
+            text.append("rotors ").append(_rotors).append('\n');
+            text.append("positions ").append(_positions).append('\n');
+            text.append("plugboard ").append(_plugboard).append('\n');
+        }
+        for (Map.Entry<String, Integer> ring : _rings.entrySet()) {
+            text.append("ring ").append(ring.getKey()).append(' ')
+                .append(ring.getValue()).append('\n');
+        }
+        Files.write(temp.toPath(), List.of(text.toString().split("\n")));
+        Files.move(temp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Put M in my machine state: my ring settings, and, if a setting
+     *  line was in force, my rotors, positions and plugboard. */
+    void restore(Machine m) {
+        for (Map.Entry<String, Integer> ring : _rings.entrySet()) {
+            Rotor rotor = m.getAllRotors().get(ring.getKey());
+            if (rotor == null) {
+                throw error("checkpoint names unknown rotor %s",
+                            ring.getKey());
+            }
+            rotor.setRing(ring.getValue());
+        }
+        if (_rotors != null) {
+            m.insertRotors(_rotors);
+            m.setPackedPositions(_positions);
+            m.setPlugboard(new Permutation(_plugboard, m.getAlphabet()));
+        }
+    }
+
+    /** Return PLUGBOARD, which must consist of 2-cycles, in cycle
+     *  notation. */
+    private static String cycles(Permutation plugboard) {
+        Alphabet alpha = plugboard.alphabet();
+        StringBuilder result = new StringBuilder();
+        for (int x = 0; x < alpha.size(); x += 1) {
+            int y = plugboard.permute(x);
+            if (x < y) {
+                result.append(result.length() == 0 ? "(" : " (")
+                    .append(alpha.toChar(x)).append(alpha.toChar(y))
+                    .append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the input byte offset. */
+    long inputOffset() {
+        return _inputOffset;
+    }
+
+    /** Return the output byte offset. */
+    long outputOffset() {
+        return _outputOffset;
+    }
+
+    /** Return the setting line in force (after its '*'), or null. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Input and output byte offsets. */
+    private final long _inputOffset, _outputOffset;
+
+    /** Setting line in force, or null. */
+    private final String _setting;
+
+    /** Names of the inserted rotors, or null if no setting line was in
+     *  force. */
+    private String _rotors;
+
+    /** Packed rotor positions. */
+    private long _positions;
+
+    /** Plugboard, in cycle notation. */
+    private String _plugboard;
+
+    /** Ring settings other than 0, by rotor name. */
+    private final LinkedHashMap<String, Integer> _rings;
+}
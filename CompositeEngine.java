@@ -0,0 +1,176 @@
+package enigma;
+
+/** A MachineEngine that folds every rotor to the left of the fast
+ *  (rightmost) rotor, and the reflector, into one table.  Between
+ *  turnovers only the fast rotor moves, so the signal path through the
+ *  slower rotors, the reflector and back is the same permutation for
+ *  every key press; each press then costs the plugboard, the fast rotor
+ *  forward, one lookup in that table, the fast rotor backward and the
+ *  plugboard again.  The table is marked stale whenever a slower rotor
+ *  steps (that is, whenever a rotor to its right is at a notch as
+ *  MovingRotor.atNotch() defines it) and rebuilt on the next key press.
+ *  @author Frank Warren
+ */
+class CompositeEngine implements MachineEngine {
+
+    /** An engine for the rotors currently inserted in M. */
+    CompositeEngine(Machine m) {
+        Rotor[] rotors = m.getRotors();
+        _size = m.getAlphabet().size();
+        _slots = rotors.length;
+        _first = _slots - m.numPawls();
+        _forward = new int[_slots][2 * _size];
+        _backward = new int[_slots][2 * _size];
+        _notches = new boolean[_slots][2 * _size];
+        for (int i = 0; i < _slots; i += 1) {
+            Permutation perm = rotors[i].permutation();
+            for (int x = 0; x < 2 * _size; x += 1) {
+                _forward[i][x] = perm.permute(x);
+                _backward[i][x] = perm.invert(x);
+            }
+            if (rotors[i] instanceof MovingRotor) {
+                String notches = ((MovingRotor) rotors[i]).notches();
+                for (int k = 0; k < 2 * _size; k += 1) {
+                    _notches[i][k] = notches.indexOf(
+                            m.getAlphabet().toChar(k % _size)) != -1;
+                }
+            }
+        }
+        _settings = new int[_slots];
+        _rings = new int[_slots];
+        _plugs = new int[_size];
+        _composite = new int[_size];
+    }
+
+    @Override
+    public void load(Machine m) {
+        loadRotors(m);
+        m.getPlugboard().table(_plugs);
+    }
+
+    @Override
+    public void loadRotors(Machine m) {
+        Rotor[] rotors = m.getRotors();
+        for (int i = 1; i < _slots; i += 1) {
+            _settings[i] = rotors[i].setting();
+            _rings[i] = rotors[i].ringSetting();
+        }
+        _stale = true;
+    }
+
+    @Override
+    public void loadPlugboard(int[] plugs) {
+        System.arraycopy(plugs, 0, _plugs, 0, _size);
+    }
+
+    @Override
+    public void store(Machine m) {
+        Rotor[] rotors = m.getRotors();
+        for (int i = _first; i < _slots; i += 1) {
+            rotors[i].set(_settings[i]);
+        }
+    }
+
+    @Override
+    public int convert(int c) {
+        advance();
+        if (_stale) {
+            compose();
+        }
+        int fast = _slots - 1, s = _settings[fast];
+        c = _plugs[c];
+        c = _forward[fast][c + s] - s;
+        if (c < 0) {
+            c += _size;
+        }
+        c = _composite[c];
+        c = _backward[fast][c + s] - s;
+        if (c < 0) {
+            c += _size;
+        }
+        return _plugs[c];
+    }
+
+    /** Return true iff the rotor in slot I is at a notch. */
+    private boolean atNotch(int i) {
+        return _notches[i][_settings[i] + _rings[i]];
+    }
+
+    /** Return the current setting of the rotor in slot I. */
+    int setting(int i) {
+        return _settings[i];
+    }
+
+    /** Return the plugboard's image of C. */
+    int plug(int c) {
+        return _plugs[c];
+    }
+
+    /** Advance my rotor settings as Machine.advance() does, marking my
+     *  composite table stale if any but the fast rotor moves. */
+    void advance() {
+        for (int i = _first; i < _slots; i += 1) {
+            if (i == _slots - 1 || atNotch(i + 1)) {
+                step(i);
+                if (i < _slots - 2 && !atNotch(i + 2)) {
+                    step(i + 1);
+                }
+            }
+        }
+    }
+
+    /** Advance the rotor in slot I one position. */
+    private void step(int i) {
+        _settings[i] = _settings[i] == _size - 1 ? 0 : _settings[i] + 1;
+        if (i < _slots - 1) {
+            _stale = true;
+        }
+    }
+
+    /** Rebuild my composite table from the current settings of every
+     *  slot left of the fast rotor. */
+    private void compose() {
+        for (int x = 0; x < _size; x += 1) {
+            int c = x;
+            for (int i = _slots - 2; i > 0; i -= 1) {
+                c = _forward[i][c + _settings[i]] - _settings[i];
+                if (c < 0) {
+                    c += _size;
+                }
+            }
+            c = _forward[0][c];
+            for (int i = 1; i < _slots - 1; i += 1) {
+                c = _backward[i][c + _settings[i]] - _settings[i];
+                if (c < 0) {
+                    c += _size;
+                }
+            }
+            _composite[x] = c;
+        }
+        _stale = false;
+    }
+
+    /** Alphabet size, number of slots, and first moving slot. */
+    private final int _size, _slots, _first;
+
+    /** Forward and inverse tables of the rotor in each slot, of twice
+     *  the alphabet size so that adding a setting needs no wrap-around. */
+    private final int[][] _forward, _backward;
+
+    /** Whether the rotor in each slot is at a notch when its setting plus
+     *  ring setting is K, for K < twice the alphabet size. */
+    private final boolean[][] _notches;
+
+    /** Setting and ring setting of the rotor in each slot. */
+    private final int[] _settings, _rings;
+
+    /** Plugboard, as a table. */
+    private final int[] _plugs;
+
+    /** The path from the fast rotor's left side through the slower rotors
+     *  and reflector and back, for the current settings. */
+    private final int[] _composite;
+
+    /** True iff _composite must be rebuilt before use. */
+    private boolean _stale;
+}
@@ -0,0 +1,139 @@
+package enigma;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static enigma.EnigmaException.*;
+
+/** A seekable archive of one message converted under one setting line.
+ *  The layout is
+ *      header:  magic, configuration fingerprint, chunk size, setting line
+ *      chunks:  the converted letters as alphabet indices, one byte each,
+ *               in chunks of a fixed number of letters
+ *      index:   chunk count, then per chunk its first letter's offset in
+ *               the message, its byte offset in the file and the packed
+ *               rotor positions (Machine.packedPositions) before it
+ *      footer:  index offset, message length, magic
+ *  so a reader can start at any chunk without replaying the ones before
+ *  it (see ContainerReader and ContainerWriter).
+ *
+ *  Since the machine is its own inverse, a container of ciphertext reads
+ *  back as plaintext and vice versa.
+ *  @author Frank Warren
+ */
+public final class Container {
+
+    /** Magic number that starts and ends every container ("ENIGCTR1"). */
+    static final long MAGIC = 0x454e494743545231L;
+
+    /** Bytes in the footer. */
+    static final int FOOTER_BYTES = 24;
+
+    /** Bytes per index entry. */
+    static final int ENTRY_BYTES = 24;
+
+    /** Default letters per chunk. */
+    static final int DEFAULT_CHUNK = 1 << 16;
+
+    /** Not instantiable except through main. */
+    private Container() {
+    }
+
+    /** Run as specified by ARGS, one of
+     *      write CONFIG INPUT CONTAINER [--chunk=N]
+     *      read CONFIG CONTAINER FROM TO [--parallel]
+     *  "write" converts the message of INPUT, a single section in the
+     *  input format of Main, into the file CONTAINER.  "read" prints
+     *  letters FROM (inclusive) to TO (exclusive) of the message read back
+     *  from CONTAINER, decoding its chunks on all cores with --parallel. */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 4 && args[0].equals("write")) {
+                int chunk = DEFAULT_CHUNK;
+                for (int i = 4; i < args.length; i += 1) {
+                    if (!args[i].startsWith("--chunk=")) {
+                        throw error("Unknown option %s", args[i]);
+                    }
+                    chunk = Integer.parseInt(args[i].substring(8));
+                }
+                write(args[1], args[2], new File(args[3]), chunk);
+            } else if (args.length >= 5 && args[0].equals("read")) {
+                boolean parallel = args.length > 5
+                    && args[5].equals("--parallel");
+                ContainerReader reader =
+                    new ContainerReader(new File(args[2]), args[1]);
+                long from = Long.parseLong(args[3]);
+                long to = Long.parseLong(args[4]);
+                System.out.println(parallel
+                    ? reader.readParallel(from, to,
+                            Runtime.getRuntime().availableProcessors())
+                    : reader.read(from, to));
+                reader.close();
+            } else {
+                throw error("Usage: Container write CONFIG INPUT CONTAINER "
+                        + "[--chunk=N] | read CONFIG CONTAINER FROM TO "
+                        + "[--parallel]");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Convert the section in the file named INPUT with the machine of
+     *  configuration file CONFIG into container OUT with CHUNK letters
+     *  per chunk. */
+    static void write(String config, String input, File out, int chunk) {
+        Machine m = Main.readConfig(config);
+        try (FileInputStream in = new FileInputStream(input)) {
+            LineReader lines = new LineReader(in, 0);
+            String line = lines.readLine();
+            while (line != null && line.trim().isEmpty()) {
+                line = lines.readLine();
+            }
+            if (line == null || line.indexOf('*') < 0) {
+                throw error("Input must start with a setting line.");
+            }
+            String setting = line.substring(line.indexOf('*') + 1);
+            Main.configure(m, setting);
+            ContainerWriter writer = new ContainerWriter(out, m, setting,
+                    fingerprint(config), chunk);
+            while ((line = lines.readLine()) != null) {
+                if (line.indexOf('*') >= 0) {
+                    throw error("A container holds a single setting line.");
+                }
+                writer.write(line);
+            }
+            writer.close();
+        } catch (IOException excp) {
+            throw error("could not open %s", input);
+        }
+    }
+
+    /** Return a fingerprint of the contents of configuration file CONFIG:
+     *  the first eight bytes of their SHA-256 digest. */
+    static long fingerprint(String config) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(Files.readAllBytes(new File(config).toPath()));
+            long result = 0;
+            for (int i = 0; i < 8; i += 1) {
+                result = (result << 8) | (digest[i] & 0xff);
+            }
+            return result;
+        } catch (IOException excp) {
+            throw error("could not open %s", config);
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 unavailable");
+        }
+    }
+}
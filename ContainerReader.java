@@ -0,0 +1,217 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Reads arbitrary ranges of the message in a Container file, starting
+ *  each from the nearest chunk's recorded rotor positions rather than
+ *  from the start of the message.
+ *  @author Frank Warren
+ */
+class ContainerReader {
+
+    /** A reader of container FILE, which must have been written with the
+     *  machine described by configuration file CONFIG. */
+    ContainerReader(File file, String config) {
+        _config = config;
+        try {
+            _channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.READ);
+            long size = _channel.size();
+            ByteBuffer footer = read(size - Container.FOOTER_BYTES,
+                    Container.FOOTER_BYTES);
+            long indexOffset = footer.getLong();
+            _length = footer.getLong();
+            ByteBuffer header = read(0, 24);
+            if (header.getLong() != Container.MAGIC
+                || footer.getLong() != Container.MAGIC) {
+                throw error("%s is not a container", file);
+            }
+            if (header.getLong() != Container.fingerprint(config)) {
+                throw error("%s was not written with configuration %s",
+                        file, config);
+            }
+            _chunk = header.getInt();
+            int settingLength = header.getInt();
+            _setting = StandardCharsets.UTF_8.decode(
+                    read(24, settingLength)).toString();
+            int count = read(indexOffset, 4).getInt();
+            ByteBuffer index = read(indexOffset + 4,
+                    count * Container.ENTRY_BYTES);
+            _fileOffsets = new long[count];
+            _positions = new long[count];
+            for (int i = 0; i < count; i += 1) {
+                if (index.getLong() != (long) i * _chunk) {
+                    throw error("corrupt container index in %s", file);
+                }
+                _fileOffsets[i] = index.getLong();
+                _positions[i] = index.getLong();
+            }
+        } catch (IOException | IllegalArgumentException excp) {
+            throw error("could not read container %s", file);
+        }
+        _machine = newMachine();
+    }
+
+    /** Return the number of letters in the message. */
+    long length() {
+        return _length;
+    }
+
+    /** Return the setting line (after its '*') the message was written
+     *  under. */
+    String setting() {
+        return _setting;
+    }
+
+    /** Return letters FROM (inclusive) through TO (exclusive) of the
+     *  message, converted back. */
+    String read(long from, long to) {
+        checkRange(from, to);
+        char[] result = new char[(int) (to - from)];
+        for (long k = from; k < to; k = chunkEnd(k)) {
+            decode(_machine, k, Math.min(to, chunkEnd(k)), result,
+                    (int) (k - from));
+        }
+        return new String(result);
+    }
+
+    /** Return the same as read(FROM, TO), decoding its chunks
+     *  concurrently on THREADS threads, each with a machine of its own. */
+    String readParallel(long from, long to, int threads) {
+        checkRange(from, to);
+        char[] result = new char[(int) (to - from)];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(this::newMachine);
+        try {
+            List<Future<?>> parts = new ArrayList<Future<?>>();
+            for (long k = from; k < to; k = chunkEnd(k)) {
+                long start = k, end = Math.min(to, chunkEnd(k));
+                parts.add(pool.submit(() -> decode(machines.get(), start,
+                        end, result, (int) (start - from))));
+            }
+            for (Future<?> part : parts) {
+                part.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("could not read container: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdown();
+        }
+        return new String(result);
+    }
+
+    /** Close my file. */
+    void close() {
+        try {
+            _channel.close();
+        } catch (IOException excp) {
+            throw error("could not close container");
+        }
+    }
+
+    /** Convert letters FROM through TO - 1, which lie in one chunk, back
+     *  with M and store them in DEST starting at DESTOFFSET. */
+    private void decode(Machine m, long from, long to, char[] dest,
+                        int destOffset) {
+        int chunk = (int) (from / _chunk);
+        long start = (long) chunk * _chunk;
+        m.setPackedPositions(_positions[chunk]);
+        for (long k = start; k < from; k += 1) {
+            m.advance();
+        }
+        ByteBuffer letters = read(_fileOffsets[chunk] + (from - start),
+                (int) (to - from));
+        Alphabet alpha = m.getAlphabet();
+        for (int i = 0; letters.hasRemaining(); i += 1) {
+            dest[destOffset + i] = alpha.toChar(m.convert(letters.get()
+                                                          & 0xff));
+        }
+    }
+
+    /** Return a new machine of my configuration set up with my setting
+     *  line. */
+    private Machine newMachine() {
+        Machine m = Main.readConfig(_config);
+        Main.configure(m, _setting);
+        return m;
+    }
+
+    /** Return the index of the first letter after the chunk containing
+     *  letter K. */
+    private long chunkEnd(long k) {
+        return (k / _chunk + 1) * _chunk;
+    }
+
+    /** Check that FROM..TO is a range of letters I can return. */
+    private void checkRange(long from, long to) {
+        if (from < 0 || to > _length || from > to
+            || to - from > Integer.MAX_VALUE) {
+            throw error("range %d..%d outside message of length %d",
+                    from, to, _length);
+        }
+    }
+
+    /** Return the LENGTH bytes of my file at OFFSET, read positionally so
+     *  that concurrent readers do not interfere. */
+    private ByteBuffer read(long offset, int length) {
+        ByteBuffer result = ByteBuffer.allocate(length);
+        try {
+            while (result.hasRemaining()) {
+                int n = _channel.read(result, offset + result.position());
+                if (n < 0) {
+                    throw error("container truncated");
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not read container: %s", excp.getMessage());
+        }
+        result.flip();
+        return result;
+    }
+
+    /** Name of my configuration file. */
+    private final String _config;
+
+    /** The container file. */
+    private FileChannel _channel;
+
+    /** Setting line (after its '*'). */
+    private String _setting;
+
+    /** Letters per chunk. */
+    private int _chunk;
+
+    /** Letters in the message. */
+    private long _length;
+
+    /** Byte offset in the file of each chunk. */
+    private long[] _fileOffsets;
+
+    /** Packed rotor positions before each chunk. */
+    private long[] _positions;
+
+    /** Machine used by read(). */
+    private final Machine _machine;
+}
@@ -0,0 +1,141 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Container, ContainerWriter and
+ *  ContainerReader classes.
+ *  @author Frank Warren
+ */
+public class ContainerTest {
+
+    /** Setting line of the messages. */
+    private static final String SETTING =
+        "* B Beta III IV I AXLE BCDE (HQ) (EX) (IP)";
+
+    /** Lines of the plaintext message. */
+    private static final String[] LINES = {
+        "FROM HIS SHOULDER HIAWATHA",
+        "TOOK THE CAMERA OF ROSEWOOD",
+        "MADE OF SLIDING FOLDING ROSEWOOD",
+        "NEATLY PUT IT ALL TOGETHER"
+    };
+
+    /** Return the letters of the plaintext, repeated N times. */
+    private static String letters(int n) {
+        return String.join("", LINES).replace(" ", "").repeat(n);
+    }
+
+    /** Return a container of the plaintext repeated N times, written by
+     *  Container.write with CHUNK letters per chunk, with configuration
+     *  file CONFIG. */
+    private static File container(File config, int n, int chunk)
+        throws IOException {
+        File input = File.createTempFile("message", ".txt");
+        input.deleteOnExit();
+        StringBuilder text = new StringBuilder(SETTING).append('\n');
+        for (int i = 0; i < n; i += 1) {
+            text.append(String.join("\n", LINES)).append('\n');
+        }
+        Files.writeString(input.toPath(), text);
+        File result = File.createTempFile("message", ".ctr");
+        result.deleteOnExit();
+        Container.write(config.getPath(), input.getPath(), result, chunk);
+        return result;
+    }
+
+    @Test
+    public void readsBackArbitraryRanges() throws IOException {
+        File config = navalConfigFile();
+        String plain = letters(5);
+        Random random = new Random(42);
+        for (int chunk : new int[] {
+                7, 64, plain.length(), Container.DEFAULT_CHUNK }) {
+            ContainerReader reader = new ContainerReader(
+                    container(config, 5, chunk), config.getPath());
+            try {
+                assertEquals(plain.length(), reader.length());
+                assertEquals(SETTING.substring(1), reader.setting());
+                assertEquals(plain, reader.read(0, plain.length()));
+                assertEquals("", reader.read(3, 3));
+                for (int k = chunk; k < plain.length(); k += chunk) {
+                    assertEquals(plain.substring(k - 1, k + 1),
+                                 reader.read(k - 1, k + 1));
+                    assertEquals(plain.substring(k, k + 1),
+                                 reader.read(k, k + 1));
+                    assertEquals(plain.substring(k - 1, k),
+                                 reader.read(k - 1, k));
+                }
+                for (int i = 0; i < 50; i += 1) {
+                    int from = random.nextInt(plain.length() + 1);
+                    int to = from
+                        + random.nextInt(plain.length() - from + 1);
+                    assertEquals(plain.substring(from, to),
+                                 reader.read(from, to));
+                    assertEquals(plain.substring(from, to),
+                                 reader.readParallel(from, to, 3));
+                }
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    @Test
+    public void fileHoldsCiphertextInFormat() throws IOException {
+        File config = navalConfigFile();
+        File file = container(config, 3, 10);
+        Machine m = Main.readConfig(config.getPath());
+        Main.configure(m, SETTING.substring(1));
+        String cipher = m.convert(letters(3));
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        int header = 24 + SETTING.length() - 1;
+        for (int i = 0; i < cipher.length(); i += 1) {
+            assertEquals(m.getAlphabet().toInt(cipher.charAt(i)),
+                         bytes[header + i]);
+        }
+        long chunks = (cipher.length() + 9) / 10;
+        assertEquals(header + cipher.length() + 4
+                     + chunks * Container.ENTRY_BYTES
+                     + Container.FOOTER_BYTES, bytes.length);
+    }
+
+    @Test
+    public void rejectsBadRangesAndConfigurations() throws IOException {
+        File config = navalConfigFile();
+        File file = container(config, 1, 16);
+        ContainerReader reader = new ContainerReader(file, config.getPath());
+        int length = letters(1).length();
+        try {
+            long[][] bad = {{-1, 2}, {0, length + 1}, {5, 4}};
+            for (long[] range : bad) {
+                try {
+                    reader.read(range[0], range[1]);
+                    fail("accepted " + range[0] + ".." + range[1]);
+                } catch (EnigmaException excp) {
+                    assertTrue(excp.getMessage().startsWith("range"));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        File other = File.createTempFile("other", ".conf");
+        other.deleteOnExit();
+        Files.writeString(other.toPath(), navalConfig() + "\n");
+        try {
+            new ContainerReader(file, other.getPath());
+            fail("accepted another configuration");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("not written with"));
+        }
+    }
+}
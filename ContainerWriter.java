@@ -0,0 +1,138 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Writes a message, converted as it goes, into a Container file.
+ *  @author Frank Warren
+ */
+class ContainerWriter {
+
+    /** A writer of container OUT converting with M, which has been set up
+     *  from the setting line SETTING (the part after its '*') of a
+     *  configuration with fingerprint FINGERPRINT, with CHUNK letters per
+     *  chunk. */
+    ContainerWriter(File out, Machine m, String setting, long fingerprint,
+                    int chunk) {
+        if (chunk < 1) {
+            throw error("Chunk size must be positive.");
+        }
+        if (m.getAlphabet().size() > 256) {
+            throw error("Containers need an alphabet of at most 256.");
+        }
+        _machine = m;
+        _chunk = chunk;
+        _entries = new long[3 * 16];
+        try {
+            _out = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(out)));
+            byte[] text = setting.getBytes(StandardCharsets.UTF_8);
+            _out.writeLong(Container.MAGIC);
+            _out.writeLong(fingerprint);
+            _out.writeInt(chunk);
+            _out.writeInt(text.length);
+            _out.write(text);
+            _offset = 8 + 8 + 4 + 4 + text.length;
+        } catch (IOException excp) {
+            throw error("could not open %s", out);
+        }
+    }
+
+    /** Convert the letters of TEXT and append them.  Whitespace is
+     *  skipped, as by Machine.convert(String). */
+    void write(String text) {
+        int i = 0;
+        while (i < text.length()) {
+            long room = _chunk - _letters % _chunk;
+            StringBuilder segment = new StringBuilder();
+            while (i < text.length() && segment.length() < room) {
+                char c = text.charAt(i);
+                if (!Character.isWhitespace(c)) {
+                    segment.append(c);
+                }
+                i += 1;
+            }
+            if (segment.length() == 0) {
+                break;
+            }
+            if (_pendingChunk) {
+                startChunk();
+            }
+            String converted = _machine.convert(segment.toString());
+            Alphabet alpha = _machine.getAlphabet();
+            try {
+                for (int k = 0; k < converted.length(); k += 1) {
+                    _out.write(alpha.toInt(converted.charAt(k)));
+                }
+            } catch (IOException excp) {
+                throw error("could not write container");
+            }
+            _letters += converted.length();
+            _offset += converted.length();
+            _pendingChunk = _letters % _chunk == 0;
+        }
+    }
+
+    /** Record an index entry for a chunk starting at the next letter. */
+    private void startChunk() {
+        if (3 * _chunks + 3 > _entries.length) {
+            _entries = Arrays.copyOf(_entries, 2 * _entries.length);
+        }
+        _entries[3 * _chunks] = _letters;
+        _entries[3 * _chunks + 1] = _offset;
+        _entries[3 * _chunks + 2] = _machine.packedPositions();
+        _chunks += 1;
+        _pendingChunk = false;
+    }
+
+    /** Write the index and footer and close the file. */
+    void close() {
+        try {
+            long indexOffset = _offset;
+            _out.writeInt(_chunks);
+            for (int i = 0; i < 3 * _chunks; i += 1) {
+                _out.writeLong(_entries[i]);
+            }
+            _out.writeLong(indexOffset);
+            _out.writeLong(_letters);
+            _out.writeLong(Container.MAGIC);
+            _out.close();
+        } catch (IOException excp) {
+            throw error("could not write container");
+        }
+    }
+
+    /** Machine converting the message. */
+    private final Machine _machine;
+
+    /** Letters per chunk. */
+    private final int _chunk;
+
+    /** Output file. */
+    private final DataOutputStream _out;
+
+    /** Bytes written so far. */
+    private long _offset;
+
+    /** Letters written so far. */
+    private long _letters;
+
+    /** True iff the next letter starts a chunk. */
+    private boolean _pendingChunk = true;
+
+    /** Number of chunks started. */
+    private int _chunks;
+
+    /** Index entries: message offset, file offset and packed positions
+     *  of each chunk. */
+    private long[] _entries;
+}
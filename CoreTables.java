@@ -0,0 +1,235 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** The permutation of the rotors alone (without the plugboard) at every
+ *  rotor setting of one rotor order, stored in a file that is mapped
+ *  into memory, so that many machines, threads and processes with that
+ *  order can share one copy of the pages.  The permutation depends only
+ *  on the rotors' settings (position minus ring setting), so one file
+ *  serves every ring setting; the ring settings only decide when rotors
+ *  step, which the engine() still works out as a machine does.  A key
+ *  press is then the plugboard, one table lookup and the plugboard.
+ *
+ *  The file is a 32-byte header (magic number, alphabet size, number of
+ *  slots, length of the rotor order), the rotor order as UTF-8, and one
+ *  table of alphabet-size bytes per setting, indexed by the settings of
+ *  the slots after the reflector packed as by Machine.packedPositions()
+ *  (so 26 bytes per setting, about 12 MB for five slots of 26 letters).
+ *  @author Frank Warren
+ */
+public final class CoreTables {
+
+    /** Magic number at the start of every table file ("ENIGMAT1"). */
+    static final long MAGIC = 0x454e49474d415431L;
+
+    /** Bytes in the header. */
+    static final int HEADER_BYTES = 32;
+
+    /** Largest alphabet tabulated, since each entry is one byte. */
+    static final int MAX_SIZE = 256;
+
+    /** Run as specified by ARGS:
+     *      CONFIG ORDER TABLES
+     *  writing to file TABLES the tables of rotor order ORDER (e.g.
+     *  "B Beta III IV I") of configuration file CONFIG, using all
+     *  cores. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("Usage: CoreTables CONFIG ORDER TABLES");
+            }
+            build(Main.readConfig(args[0]), args[1], new File(args[2]),
+                    Runtime.getRuntime().availableProcessors());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write to OUT the tables of rotor order ORDER for machines like M,
+     *  computed by THREADS threads, each filling the tables of some
+     *  settings of the leftmost slot.  M's rotors are not used. */
+    static void build(Machine m, String order, File out, int threads) {
+        int size = m.getAlphabet().size(), slots = m.numRotors();
+        if (size > MAX_SIZE) {
+            throw error("alphabets over %d letters cannot be tabulated",
+                        MAX_SIZE);
+        }
+        long settings = 1;
+        for (int i = 1; i < slots; i += 1) {
+            settings *= size;
+        }
+        long perLeft = settings / size;
+        if (perLeft * size > Integer.MAX_VALUE) {
+            throw error("too many settings to tabulate");
+        }
+        m.freshCopy().insertRotors(order);
+        byte[] name = order.trim().getBytes(StandardCharsets.UTF_8);
+        long start = HEADER_BYTES + name.length;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel channel = FileChannel.open(out.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.READ,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putLong(MAGIC).putInt(size).putInt(slots)
+                .putInt(name.length).rewind();
+            channel.write(header, 0);
+            channel.write(ByteBuffer.wrap(name), HEADER_BYTES);
+            ThreadLocal<Machine> machines = ThreadLocal.withInitial(() -> {
+                Machine copy = m.freshCopy();
+                copy.insertRotors(order);
+                return copy;
+            });
+            List<Future<?>> parts = new ArrayList<Future<?>>();
+            for (int left = 0; left < size; left += 1) {
+                long first = left * perLeft;
+                parts.add(pool.submit(() -> {
+                    Machine machine = machines.get();
+                    ByteBuffer tables =
+                        ByteBuffer.allocate((int) (perLeft * size));
+                    for (long p = first; p < first + perLeft; p += 1) {
+                        machine.setPackedPositions(p);
+                        for (int x = 0; x < size; x += 1) {
+                            tables.put((byte) machine.encipher(x));
+                        }
+                    }
+                    tables.flip();
+                    long pos = start + first * size;
+                    while (tables.hasRemaining()) {
+                        pos += channel.write(tables, pos);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> part : parts) {
+                part.get();
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", out);
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("table build failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Open the tables in FILE, mapping them into memory. */
+    CoreTables(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_BYTES
+                || header.getLong() != MAGIC) {
+                throw error("%s is not a table file", file);
+            }
+            _size = header.getInt();
+            if (_size < 1 || _size > MAX_SIZE) {
+                throw error("%s has a bad alphabet size", file);
+            }
+            _slots = header.getInt();
+            ByteBuffer name = ByteBuffer.allocate(header.getInt());
+            channel.read(name, HEADER_BYTES);
+            _order = new String(name.array(), StandardCharsets.UTF_8);
+            long start = HEADER_BYTES + name.capacity();
+            long length = channel.size() - start;
+            long perChunk = CHUNK_BYTES / _size * _size;
+            _perChunk = perChunk / _size;
+            _chunks = new MappedByteBuffer[(int) (length / perChunk) + 1];
+            for (int i = 0; i < _chunks.length; i += 1) {
+                long offset = (long) i * perChunk;
+                _chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start + offset, Math.min(perChunk, length - offset));
+            }
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the rotor order my tables are for. */
+    String order() {
+        return _order;
+    }
+
+    /** Return the conversion of C by the rotors alone at the settings
+     *  packed as SETTINGS. */
+    int permute(long settings, int c) {
+        return _chunks[(int) (settings / _perChunk)].get(
+                (int) (settings % _perChunk) * _size + c) & 0xff;
+    }
+
+    /** Return an engine converting with my tables for M, which must
+     *  have my rotor order inserted. */
+    MachineEngine engine(Machine m) {
+        StringBuilder names = new StringBuilder();
+        for (Rotor rotor : m.getRotors()) {
+            names.append(names.length() == 0 ? "" : " ").append(rotor.name());
+        }
+        if (m.getAlphabet().size() != _size || m.numRotors() != _slots
+            || !names.toString().equals(_order.replaceAll("\\s+", " "))) {
+            throw error("tables are for %s, not %s", _order, names);
+        }
+        return new Engine(m);
+    }
+
+    /** A MachineEngine that steps as CompositeEngine does and converts
+     *  with my tables. */
+    private class Engine extends CompositeEngine {
+
+        /** An engine for the rotors of M. */
+        Engine(Machine m) {
+            super(m);
+        }
+
+        @Override
+        public int convert(int c) {
+            advance();
+            long settings = 0;
+            for (int i = 1; i < _slots; i += 1) {
+                settings = settings * _size + setting(i);
+            }
+            return plug(permute(settings, plug(c)));
+        }
+    }
+
+    /** Most bytes mapped per chunk. */
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    /** Alphabet size and number of slots. */
+    private final int _size, _slots;
+
+    /** The rotor order, as given to Machine.insertRotors. */
+    private final String _order;
+
+    /** Settings per mapped chunk. */
+    private final long _perChunk;
+
+    /** The mapped tables. */
+    private final MappedByteBuffer[] _chunks;
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CoreTables class.
+ *  @author Frank Warren
+ */
+public class CoreTablesTest {
+
+    @Test
+    public void tablesMatchMachine() throws IOException {
+        File file = File.createTempFile("core", ".tab");
+        file.deleteOnExit();
+        CoreTables.build(navalMachine(), "B Beta III IV I", file, 4);
+        CoreTables tables = new CoreTables(file);
+        assertEquals("B Beta III IV I", tables.order());
+        assertEquals(32 + 15 + 26L * 26 * 26 * 26 * 26, file.length());
+
+        Random random = new Random(47);
+        for (int trial = 0; trial < 5; trial += 1) {
+            String start = "", rings = "";
+            for (int i = 0; i < 4; i += 1) {
+                start += (char) ('A' + random.nextInt(26));
+                rings += (char) ('A' + random.nextInt(26));
+            }
+            Machine generic = navalMachine(), tabled = navalMachine();
+            for (Machine m : new Machine[] { generic, tabled }) {
+                m.setRotors(start, rings);
+                m.setPlugboard(new Permutation("(AQ) (EX) (TZ)", UPPER));
+            }
+            tabled.useEngine(tables.engine(tabled));
+            StringBuilder msg = new StringBuilder();
+            for (int i = 0; i < 5000; i += 1) {
+                msg.append((char) ('A' + random.nextInt(26)));
+            }
+            assertEquals(generic.convert(msg.toString()),
+                         tabled.convert(msg.toString()));
+            assertEquals(generic.packedPositions(),
+                         tabled.packedPositions());
+        }
+    }
+
+    @Test
+    public void oversizedAlphabetRejected() throws IOException {
+        File file = File.createTempFile("core", ".tab");
+        file.deleteOnExit();
+        ByteBuffer header = ByteBuffer.allocate(CoreTables.HEADER_BYTES);
+        header.putLong(CoreTables.MAGIC).putInt(CoreTables.MAX_SIZE + 1)
+            .putInt(5).putInt(0);
+        Files.write(file.toPath(), header.array());
+        try {
+            new CoreTables(file);
+            fail("opened tables for a 257-letter alphabet");
+        } catch (EnigmaException excp) {
+            assertTrue(excp.getMessage().contains("alphabet size"));
+        }
+    }
+}
@@ -0,0 +1,293 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Finds every offset at which a crib (guessed plaintext) may lie under a
+ *  ciphertext.  Because the reflector is a derangement, no letter ever
+ *  encrypts to itself, so a placement is impossible wherever a crib
+ *  letter sits over the same ciphertext letter.  The ciphertext is held
+ *  as one bitset of positions per letter; the impossible offsets for a
+ *  crib are the OR of the bitsets of its letters, each shifted back by
+ *  that letter's index in the crib, computed 64 offsets per word.
+ *
+ *  Legal placements are ranked by the number of closed loops in their
+ *  menu (the graph joining each crib letter to the ciphertext letter
+ *  beneath it), since loops are what make a placement useful to a
+ *  bombe-style attack.  Each placement is ranked as one packed long, so
+ *  that only the placements returned become objects.  A scanner is not
+ *  for use by several threads at once.
+ *  @author Frank Warren
+ */
+public final class CribScanner {
+
+    /** Print the legal placements of the cribs ARGS[2..] in the
+     *  ciphertext in file ARGS[1], over the alphabet of configuration file
+     *  ARGS[0], best ranked first, as lines "CRIB OFFSET LOOPS". */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("Usage: CribScanner CONFIG CIPHERTEXT CRIB...");
+            }
+            Alphabet alpha = Main.readConfig(args[0]).getAlphabet();
+            String text;
+            try {
+                text = Files.readString(Paths.get(args[1]));
+            } catch (IOException excp) {
+                throw error("could not open %s", args[1]);
+            }
+            CribScanner scanner = new CribScanner(alpha, text);
+            List<String> cribs = Arrays.asList(args).subList(2, args.length);
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(System.out)));
+            for (Placement p : scanner.placements(cribs,
+                                                  Integer.MAX_VALUE)) {
+                out.printf("%s %d %d%n", p.crib(), p.offset(), p.loops());
+            }
+            out.flush();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A scanner over the letters of CIPHERTEXT in ALPHA.  Other
+     *  characters, such as the blanks between groups, are skipped and do
+     *  not count towards offsets. */
+    CribScanner(Alphabet alpha, String ciphertext) {
+        _alphabet = alpha;
+        int[] text = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            if (alpha.contains(c)) {
+                text[n] = alpha.toInt(c);
+                n += 1;
+            }
+        }
+        _text = Arrays.copyOf(text, n);
+        _words = (n >>> 6) + 1;
+        _positions = new long[alpha.size()][_words];
+        for (int i = 0; i < n; i += 1) {
+            _positions[_text[i]][i >>> 6] |= 1L << i;
+        }
+        _parent = new int[alpha.size()];
+    }
+
+    /** Return the number of ciphertext letters. */
+    int length() {
+        return _text.length;
+    }
+
+    /** Return a bitset with bit K set iff CRIB may lie at offset K of the
+     *  ciphertext, i.e. it fits and matches no letter beneath it. */
+    long[] legalOffsets(String crib) {
+        long[] bad = new long[_words];
+        for (int j = 0; j < crib.length(); j += 1) {
+            int letter = _alphabet.toInt(crib.charAt(j));
+            if (letter < 0) {
+                throw error("Crib character not in alphabet.");
+            }
+            orShifted(bad, _positions[letter], j);
+        }
+        long[] legal = new long[_words];
+        int last = _text.length - crib.length();
+        for (int w = 0; w <= last >>> 6 && last >= 0; w += 1) {
+            legal[w] = ~bad[w];
+        }
+        if (last >= 0) {
+            int used = (last & 63) + 1;
+            if (used < 64) {
+                legal[last >>> 6] &= (1L << used) - 1;
+            }
+        }
+        return legal;
+    }
+
+    /** Set bit K of DEST wherever bit K + SHIFT of SRC is set. */
+    private static void orShifted(long[] dest, long[] src, int shift) {
+        int words = shift >>> 6, bits = shift & 63;
+        int n = src.length - words;
+        if (bits == 0) {
+            for (int w = 0; w < n; w += 1) {
+                dest[w] |= src[w + words];
+            }
+        } else {
+            for (int w = 0; w < n; w += 1) {
+                long hi = w + words + 1 < src.length
+                    ? src[w + words + 1] << (64 - bits) : 0;
+                dest[w] |= (src[w + words] >>> bits) | hi;
+            }
+        }
+    }
+
+    /** Return the legal placements of all of CRIBS, best first: most
+     *  menu loops, then longest crib, then earliest offset, then the
+     *  earliest crib in CRIBS. */
+    List<Placement> placements(List<String> cribs) {
+        return placements(cribs, Integer.MAX_VALUE);
+    }
+
+    /** Return the first LIMIT of the legal placements of all of CRIBS,
+     *  ranked as by placements(CRIBS).  Each placement is ranked as the
+     *  long (MAX - LOOPS, MAX - LENGTH, OFFSET, CRIB), where MAX is the
+     *  greatest crib length and CRIB the index of the crib in CRIBS, with
+     *  each field just wide enough for its largest value. */
+    List<Placement> placements(List<String> cribs, int limit) {
+        int maxLength = 0;
+        for (String crib : cribs) {
+            maxLength = Math.max(maxLength, crib.length());
+        }
+        int lengthBits = bits(maxLength), offsetBits = bits(_text.length),
+            cribBits = bits(cribs.size());
+        if (2 * lengthBits + offsetBits + cribBits > 63) {
+            throw error("too many placements to rank");
+        }
+        long[] ranked = new long[64];
+        int n = 0;
+        for (int c = 0; c < cribs.size(); c += 1) {
+            String crib = cribs.get(c);
+            long[] legal = legalOffsets(crib);
+            long lengthRank = maxLength - crib.length();
+            for (int w = 0; w < legal.length; w += 1) {
+                long bits = legal[w];
+                while (bits != 0) {
+                    int offset = (w << 6) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    long loopRank = maxLength - loops(crib, offset);
+                    if (n == ranked.length) {
+                        ranked = Arrays.copyOf(ranked, 2 * n);
+                    }
+                    ranked[n] = ((((loopRank << lengthBits) | lengthRank)
+                                  << offsetBits | offset) << cribBits) | c;
+                    n += 1;
+                }
+            }
+        }
+        Arrays.sort(ranked, 0, n);
+        List<Placement> result = new ArrayList<Placement>();
+        long offsetMask = (1L << offsetBits) - 1;
+        long cribMask = (1L << cribBits) - 1;
+        for (int i = 0; i < n && i < limit; i += 1) {
+            long rank = ranked[i];
+            String crib = cribs.get((int) (rank & cribMask));
+            int offset = (int) ((rank >>> cribBits) & offsetMask);
+            result.add(new Placement(crib, offset, maxLength
+                    - (int) (rank >>> (cribBits + offsetBits + lengthBits))));
+        }
+        return result;
+    }
+
+    /** Return the number of bits needed to hold values 0 .. MAX. */
+    private static int bits(int max) {
+        return 32 - Integer.numberOfLeadingZeros(max);
+    }
+
+    /** Return the number of independent loops in the menu of CRIB at
+     *  OFFSET: edges minus letters plus connected components. */
+    private int loops(String crib, int offset) {
+        int[] parent = _parent;
+        for (int i = 0; i < parent.length; i += 1) {
+            parent[i] = i;
+        }
+        int loops = 0;
+        for (int j = 0; j < crib.length(); j += 1) {
+            int a = find(parent, _alphabet.toInt(crib.charAt(j)));
+            int b = find(parent, _text[offset + j]);
+            if (a == b) {
+                loops += 1;
+            } else {
+                parent[a] = b;
+            }
+        }
+        return loops;
+    }
+
+    /** Return the representative of X's set in the forest PARENT. */
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    /** A legal position of a crib and the quality of its menu. */
+    static final class Placement implements Comparable<Placement> {
+
+        /** The placement of CRIB at OFFSET, whose menu has LOOPS loops. */
+        Placement(String crib, int offset, int loops) {
+            _crib = crib;
+            _offset = offset;
+            _loops = loops;
+        }
+
+        /** Return my crib. */
+        String crib() {
+            return _crib;
+        }
+
+        /** Return my offset in the ciphertext letters. */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the number of loops in my menu. */
+        int loops() {
+            return _loops;
+        }
+
+        @Override
+        public int compareTo(Placement other) {
+            if (_loops != other._loops) {
+                return Integer.compare(other._loops, _loops);
+            }
+            if (_crib.length() != other._crib.length()) {
+                return Integer.compare(other._crib.length(),
+                        _crib.length());
+            }
+            return Integer.compare(_offset, other._offset);
+        }
+
+        @Override
+        public String toString() {
+            return _crib + " " + _offset + " " + _loops;
+        }
+
+        /** The crib. */
+        private final String _crib;
+
+        /** Offset of the crib's first letter. */
+        private final int _offset;
+
+        /** Loops in the menu. */
+        private final int _loops;
+    }
+
+    /** Alphabet of the ciphertext. */
+    private final Alphabet _alphabet;
+
+    /** Ciphertext letters as alphabet indices. */
+    private final int[] _text;
+
+    /** Number of words in each bitset. */
+    private final int _words;
+
+    /** _positions[L] has bit I set iff ciphertext letter I is L. */
+    private final long[][] _positions;
+
+    /** Scratch union-find forest of the letters, reused by loops(). */
+    private final int[] _parent;
+}
@@ -0,0 +1,95 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribScanner class.
+ *  @author Frank Warren
+ */
+public class CribScannerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /** Return a random string of N upper-case letters. */
+    private String randomText(Random r, int n) {
+        char[] result = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = UPPER_STRING.charAt(r.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    @Test
+    public void matchesNaiveScan() {
+        Random r = new Random(61);
+        String text = randomText(r, 1000);
+        CribScanner scanner = new CribScanner(UPPER, text);
+        for (int len : new int[] {1, 5, 63, 64, 65, 130}) {
+            String crib = randomText(r, len);
+            long[] legal = scanner.legalOffsets(crib);
+            for (int k = 0; k < text.length(); k += 1) {
+                boolean ok = k + len <= text.length();
+                for (int j = 0; ok && j < len; j += 1) {
+                    ok = text.charAt(k + j) != crib.charAt(j);
+                }
+                boolean found = (legal[k >>> 6] & (1L << k)) != 0;
+                assertEquals(msg("crib", "length %d offset %d", len, k),
+                        ok, found);
+            }
+        }
+    }
+
+    @Test
+    public void skipsGroupBlanks() {
+        CribScanner scanner = new CribScanner(UPPER, "QVPQS OKOIL");
+        assertEquals(10, scanner.length());
+        List<CribScanner.Placement> p =
+            scanner.placements(Arrays.asList("QS", "OKO"));
+        for (CribScanner.Placement placement : p) {
+            assertFalse(placement.crib().equals("QS")
+                    && placement.offset() == 3);
+        }
+    }
+
+    @Test
+    public void ranksByLoops() {
+        CribScanner scanner = new CribScanner(UPPER, "BABAXY");
+        List<CribScanner.Placement> p =
+            scanner.placements(Arrays.asList("ABAB"));
+        assertEquals(0, p.get(0).offset());
+        assertEquals(3, p.get(0).loops());
+    }
+
+    @Test
+    public void rankedInOrder() {
+        Random r = new Random(29);
+        CribScanner scanner = new CribScanner(UPPER, randomText(r, 700));
+        List<String> cribs = Arrays.asList(randomText(r, 12),
+                randomText(r, 20), randomText(r, 12), randomText(r, 5));
+        List<CribScanner.Placement> p = scanner.placements(cribs);
+        int legal = 0;
+        for (String crib : cribs) {
+            for (long word : scanner.legalOffsets(crib)) {
+                legal += Long.bitCount(word);
+            }
+        }
+        assertEquals(legal, p.size());
+        for (int i = 1; i < p.size(); i += 1) {
+            CribScanner.Placement a = p.get(i - 1), b = p.get(i);
+            assertTrue(a.compareTo(b) < 0 || a.compareTo(b) == 0
+                    && cribs.indexOf(a.crib()) < cribs.indexOf(b.crib()));
+        }
+        assertEquals(p.subList(0, 10).toString(),
+                     scanner.placements(cribs, 10).toString());
+    }
+}
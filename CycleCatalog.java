@@ -0,0 +1,460 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristic cycle structures of the machine for
+ *  every rotor order and start position, after Rejewski.  When a message
+ *  key is enciphered twice, the products AD, BE and CF of the machine's
+ *  permutations at the first and fourth, second and fifth, and third and
+ *  sixth key presses can be read off a day's indicators, and the cycle
+ *  lengths of those products (the characteristic) depend only on the
+ *  rotor order and start position, not on the plugboard.
+ *
+ *  The catalog file is a 16-byte header (magic number and record count)
+ *  followed by 16-byte records (signature, packed key) sorted by
+ *  signature then key; it is memory-mapped for lookups, which are a
+ *  binary search.  Signatures are exact: the cycles of each product pair
+ *  off by length, and each halved partition of size/2 is written as one
+ *  bit per letter (a part of length L as L-1 ones and a zero).
+ *  @author Frank Warren
+ */
+public final class CycleCatalog {
+
+    /** Magic number at the start of every catalog file ("ENIGMAC1"). */
+    static final long MAGIC = 0x454e49474d414331L;
+
+    /** Bytes in the catalog header and in each record. */
+    static final int HEADER_BYTES = 16, RECORD_BYTES = 16;
+
+    /** Run as specified by ARGS, one of
+     *      build CONFIG CATALOG [--rotors ORDER] [--rings SETTING]
+     *      lookup CONFIG CATALOG INDICATORS
+     *  "build" writes the catalog for every rotor order of configuration
+     *  file CONFIG (or just ORDER) with ring setting SETTING (default all
+     *  first letters), using all cores.  "lookup" reads the doubly
+     *  enciphered six-letter indicators in file INDICATORS, one per line,
+     *  and prints the keys whose characteristic matches, as setting
+     *  lines. */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 3 && args[0].equals("build")) {
+                String rotors = null, rings = null;
+                for (int i = 3; i + 1 < args.length; i += 2) {
+                    if (args[i].equals("--rotors")) {
+                        rotors = args[i + 1];
+                    } else if (args[i].equals("--rings")) {
+                        rings = args[i + 1];
+                    } else {
+                        throw error("Unknown option %s", args[i]);
+                    }
+                }
+                build(args[1], new File(args[2]), rotors, rings,
+                        Runtime.getRuntime().availableProcessors());
+            } else if (args.length == 4 && args[0].equals("lookup")) {
+                Machine m = Main.readConfig(args[1]);
+                KeySpace space = new KeySpace(m);
+                long sig = signature(m.getAlphabet(), readText(args[3]));
+                CycleCatalog catalog = new CycleCatalog(new File(args[2]));
+                for (long key : catalog.lookup(sig)) {
+                    System.out.printf("* %s %s %s%n", space.rotors(key),
+                            space.setting(key), space.ringSetting(key));
+                }
+            } else {
+                throw error("Usage: CycleCatalog build CONFIG CATALOG "
+                        + "[--rotors ORDER] [--rings SETTING] | "
+                        + "lookup CONFIG CATALOG INDICATORS");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private static String readText(String name) {
+        try {
+            return Files.readString(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Open the catalog in FILE for lookups, mapping it into memory. */
+    CycleCatalog(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            _chunks = new MappedByteBuffer[(int) (length / CHUNK_BYTES) + 1];
+            for (int i = 0; i < _chunks.length; i += 1) {
+                long start = (long) i * CHUNK_BYTES;
+                _chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(CHUNK_BYTES, length - start));
+            }
+            if (length < HEADER_BYTES || _chunks[0].getLong(0) != MAGIC) {
+                throw error("%s is not a cycle catalog", file);
+            }
+            _size = _chunks[0].getLong(8);
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the number of keys in the catalog. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the packed keys (see KeySpace) whose characteristic has
+     *  signature SIG, in increasing order. */
+    long[] lookup(long sig) {
+        long lo = 0, hi = _size;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (field(mid, 0) < sig) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        long end = lo;
+        while (end < _size && field(end, 0) == sig) {
+            end += 1;
+        }
+        long[] result = new long[(int) (end - lo)];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = field(lo + i, 8);
+        }
+        return result;
+    }
+
+    /** Return the long at byte OFFSET of record I. */
+    private long field(long i, int offset) {
+        long pos = HEADER_BYTES + i * RECORD_BYTES + offset;
+        return _chunks[(int) (pos / CHUNK_BYTES)]
+            .getLong((int) (pos % CHUNK_BYTES));
+    }
+
+    /** Return the signature of the characteristic of M, whose rotors are
+     *  set to the start position of interest, using PERMS (seven arrays
+     *  of the alphabet size) as scratch space.  Advances M six times. */
+    static long characteristic(Machine m, int[][] perms) {
+        int n = m.getAlphabet().size();
+        for (int k = 0; k < 6; k += 1) {
+            m.advance();
+            for (int x = 0; x < n; x += 1) {
+                perms[k][x] = m.encipher(x);
+            }
+        }
+        long sig = 0;
+        int[] product = perms[6];
+        for (int k = 0; k < 3; k += 1) {
+            for (int x = 0; x < n; x += 1) {
+                product[x] = perms[k + 3][perms[k][x]];
+            }
+            sig = (sig << (n / 2)) | partition(product);
+        }
+        return sig;
+    }
+
+    /** Return the signature of the characteristic given by the doubly
+     *  enciphered indicators in TEXT, one per line.  Characters of a line
+     *  outside ALPHA, such as blanks between groups, are ignored.  The
+     *  indicators must determine the products AD, BE and CF completely. */
+    static long signature(Alphabet alpha, String text) {
+        int n = alpha.size();
+        int[][] products = new int[3][n];
+        for (int[] p : products) {
+            Arrays.fill(p, -1);
+        }
+        for (String line : text.split("\\R")) {
+            StringBuilder word = new StringBuilder();
+            for (int i = 0; i < line.length(); i += 1) {
+                if (alpha.contains(line.charAt(i))) {
+                    word.append(line.charAt(i));
+                }
+            }
+            if (word.length() > 0) {
+                addIndicator(alpha, word.toString(), products);
+            }
+        }
+        long sig = 0;
+        for (int[] p : products) {
+            for (int to : p) {
+                if (to < 0) {
+                    throw error("Indicators do not determine the "
+                            + "characteristic");
+                }
+            }
+            sig = (sig << (n / 2)) | partition(p);
+        }
+        return sig;
+    }
+
+    /** Record in PRODUCTS the pairs of letters of ALPHA that the
+     *  indicator WORD shows to be mapped by AD, BE and CF. */
+    private static void addIndicator(Alphabet alpha, String word,
+                                     int[][] products) {
+        if (word.length() != 6) {
+            throw error("Indicator %s does not have six letters", word);
+        }
+        for (int k = 0; k < 3; k += 1) {
+            int from = alpha.toInt(word.charAt(k));
+            int to = alpha.toInt(word.charAt(k + 3));
+            if (products[k][from] >= 0 && products[k][from] != to) {
+                throw error("Indicators are inconsistent");
+            }
+            products[k][from] = to;
+        }
+    }
+
+    /** Return the halved cycle partition of PERM, a product of two
+     *  fixed-point-free involutions, in the encoding described above. */
+    static long partition(int[] perm) {
+        int n = perm.length;
+        if (n % 2 != 0 || 3 * (n / 2) > 63) {
+            throw error("Alphabet size unsuitable for cycle signatures");
+        }
+        boolean[] seen = new boolean[n];
+        int[] lengths = new int[n];
+        int count = 0;
+        for (int x = 0; x < n; x += 1) {
+            if (!seen[x]) {
+                int len = 0;
+                for (int y = x; !seen[y]; y = perm[y]) {
+                    seen[y] = true;
+                    len += 1;
+                }
+                lengths[count] = len;
+                count += 1;
+            }
+        }
+        Arrays.sort(lengths, 0, count);
+        long bits = 0;
+        for (int i = count - 1; i >= 0; i -= 2) {
+            if (i == 0 || lengths[i - 1] != lengths[i]) {
+                throw error("Cycles do not pair off; not a product of "
+                        + "two reflections");
+            }
+            int len = lengths[i];
+            bits = (bits << len) | (((1L << (len - 1)) - 1) << 1);
+        }
+        return bits;
+    }
+
+    /** Write to OUT the catalog of every rotor order accepted by the
+     *  machine of configuration file CONFIG (or only ORDER, if non-null)
+     *  with ring setting RINGS (all zero if null), computed by THREADS
+     *  threads.  Each order is computed, sorted and written as a run of
+     *  its own, and the runs are then merged. */
+    static void build(String config, File out, String order, String rings,
+                      int threads) {
+        Machine m = Main.readConfig(config);
+        KeySpace space = new KeySpace(m);
+        int[] ringIndices = new int[m.numRotors() - 1];
+        if (rings != null) {
+            for (int i = 0; i < ringIndices.length; i += 1) {
+                ringIndices[i] = rings.length() == ringIndices.length
+                    ? m.getAlphabet().toInt(rings.charAt(i)) : -1;
+                if (ringIndices[i] < 0) {
+                    throw error("Bad ring setting %s", rings);
+                }
+            }
+        }
+        long ringBase = space.pack(new int[m.numRotors()], ringIndices,
+                new int[m.numRotors() - 1]);
+        if (Long.numberOfLeadingZeros(space.positions()) - 1
+                < 3 * (m.getAlphabet().size() / 2)) {
+            throw error("Key space too large to catalog");
+        }
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(() -> Main.readConfig(config));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<File>> runs = new ArrayList<Future<File>>();
+        for (long o : KeySearch.validOrders(m, space, order)) {
+            long base = o + ringBase;
+            runs.add(pool.submit(() -> writeRun(machines.get(), space,
+                    base, out)));
+        }
+        pool.shutdown();
+        List<File> files = new ArrayList<File>();
+        try {
+            for (Future<File> f : runs) {
+                files.add(f.get());
+            }
+        } catch (InterruptedException | ExecutionException excp) {
+            throw error("catalog build failed: %s", excp.getCause());
+        }
+        while (files.size() > MERGE_FAN_IN) {
+            List<File> merged = new ArrayList<File>();
+            for (int i = 0; i < files.size(); i += MERGE_FAN_IN) {
+                File run = tempRun(out);
+                merge(files.subList(i, Math.min(files.size(),
+                        i + MERGE_FAN_IN)), run, false);
+                merged.add(run);
+            }
+            files = merged;
+        }
+        merge(files, out, true);
+    }
+
+    /** Compute the characteristics of every start position of the keys
+     *  starting at BASE (one rotor order and ring setting) with machine
+     *  M and return a temporary file, next to OUT, holding their sorted
+     *  records. */
+    private static File writeRun(Machine m, KeySpace space, long base,
+                                 File out) throws IOException {
+        int n = m.getAlphabet().size(), slots = m.numRotors() - 1;
+        int[][] perms = new int[7][n];
+        int[] rings = new int[slots], positions = new int[slots];
+        int count = (int) space.positions();
+        int shift = 64 - Long.numberOfLeadingZeros(count);
+        m.insertRotors(space.rotors(base));
+        space.unpack(base, null, rings, null);
+        long[] records = new long[count];
+        for (int p = 0; p < count; p += 1) {
+            space.unpack(base + p, null, null, positions);
+            m.setRotors(positions, rings);
+            records[p] = (characteristic(m, perms) << shift) | p;
+        }
+        Arrays.sort(records);
+        File run = tempRun(out);
+        try (DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (long r : records) {
+                data.writeLong(r >>> shift);
+                data.writeLong(base + (r & ((1L << shift) - 1)));
+            }
+        }
+        return run;
+    }
+
+    /** Return a new, empty temporary file next to OUT. */
+    private static File tempRun(File out) {
+        try {
+            File dir = out.getAbsoluteFile().getParentFile();
+            File run = File.createTempFile("catalog", ".run", dir);
+            run.deleteOnExit();
+            return run;
+        } catch (IOException excp) {
+            throw error("could not create run file for %s", out);
+        }
+    }
+
+    /** Merge the sorted record files RUNS into OUT, preceded by a header
+     *  iff HEADER, and delete RUNS. */
+    private static void merge(List<File> runs, File out, boolean header) {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        try {
+            long total = 0;
+            for (File f : runs) {
+                total += f.length() / RECORD_BYTES;
+                Run run = new Run(f);
+                if (run.next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            try (DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(out)))) {
+                if (header) {
+                    data.writeLong(MAGIC);
+                    data.writeLong(total);
+                }
+                while (!queue.isEmpty()) {
+                    Run run = queue.poll();
+                    data.writeLong(run._sig);
+                    data.writeLong(run._key);
+                    if (run.next()) {
+                        queue.add(run);
+                    } else {
+                        run.close();
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", out);
+        } finally {
+            for (File f : runs) {
+                f.delete();
+            }
+        }
+    }
+
+    /** A sorted run of records being merged. */
+    private static class Run implements Comparable<Run> {
+
+        /** A run reading the records of FILE. */
+        Run(File file) throws IOException {
+            _data = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+        }
+
+        /** Read the next record; return false at the end of the run. */
+        boolean next() throws IOException {
+            try {
+                _sig = _data.readLong();
+                _key = _data.readLong();
+                return true;
+            } catch (EOFException excp) {
+                return false;
+            }
+        }
+
+        /** Close my file. */
+        void close() throws IOException {
+            _data.close();
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            int c = Long.compare(_sig, other._sig);
+            return c != 0 ? c : Long.compare(_key, other._key);
+        }
+
+        /** Source of records. */
+        private final DataInputStream _data;
+
+        /** The current record. */
+        private long _sig, _key;
+    }
+
+    /** Bytes per mapped chunk of a catalog; a multiple of RECORD_BYTES so
+     *  that no record straddles two chunks. */
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    /** Most runs merged at once, to bound open files. */
+    private static final int MERGE_FAN_IN = 256;
+
+    /** The mapped catalog file. */
+    private final MappedByteBuffer[] _chunks;
+
+    /** Number of records. */
+    private final long _size;
+}
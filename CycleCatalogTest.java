@@ -0,0 +1,76 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Frank Warren
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    @Test
+    public void partitionEncoding() {
+        int[] perm = new int[26];
+        for (int i = 0; i < 26; i += 1) {
+            perm[i] = i;
+        }
+        assertEquals(0, CycleCatalog.partition(perm));
+        for (int i = 0; i < 13; i += 1) {
+            perm[i] = (i + 1) % 13;
+            perm[i + 13] = 13 + (i + 1) % 13;
+        }
+        assertEquals(((1L << 12) - 1) << 1, CycleCatalog.partition(perm));
+    }
+
+    @Test
+    public void indicatorsGiveCharacteristic() {
+        Machine m = navalMachine();
+        m.setRotors("AXLE", null);
+        long expected = CycleCatalog.characteristic(m, new int[7][26]);
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", UPPER));
+        Random r = new Random(61);
+        StringBuilder indicators = new StringBuilder();
+        for (int i = 0; i < 400; i += 1) {
+            String key = "" + UPPER_STRING.charAt(r.nextInt(26))
+                + UPPER_STRING.charAt(r.nextInt(26))
+                + UPPER_STRING.charAt(r.nextInt(26));
+            m.setRotors("AXLE", null);
+            indicators.append(m.convert(key + key)).append('\n');
+        }
+        assertEquals(expected,
+                CycleCatalog.signature(UPPER, indicators.toString()));
+    }
+
+    @Test
+    public void builtCatalogFindsKey() throws IOException {
+        File file = File.createTempFile("cycles", ".cat");
+        file.deleteOnExit();
+        CycleCatalog.build(navalConfigFile().getPath(), file,
+                           "B Beta III IV I", "AAAA", 2);
+        CycleCatalog catalog = new CycleCatalog(file);
+        assertEquals(26L * 26 * 26 * 26, catalog.size());
+
+        Machine m = navalMachine();
+        m.setRotors("AXLE", "AAAA");
+        long sig = CycleCatalog.characteristic(m, new int[7][26]);
+        KeySpace space = new KeySpace(m);
+        boolean found = false;
+        for (long key : catalog.lookup(sig)) {
+            assertEquals("B Beta III IV I", space.rotors(key));
+            found |= space.setting(key).equals("AXLE");
+        }
+        assertTrue(found);
+    }
+}
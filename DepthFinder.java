@@ -0,0 +1,361 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Finds pairs of messages "in depth": enciphered with the same key, so
+ *  that from some relative offset on they share the machine's states.
+ *  Letters under the same state coincide about as often as plaintext
+ *  letters do (near 1/15 in German), while letters under unrelated states
+ *  coincide at 1/26, so a depth shows as an excess of coincidences at its
+ *  offset.  Each message is held as one bitset of positions per letter,
+ *  and the coincidences of two messages at an offset are the sum over
+ *  letters of the popcounts of the AND of one's bitset, shifted by the
+ *  offset, with the other's, taken 64 positions per word.  Every pair is
+ *  tried at every offset, the pairs spread over a pool of threads, and
+ *  an offset is flagged when its count is significant: its z-score
+ *  against the binomial count for chance coincidences at 1/(alphabet
+ *  size) reaches a threshold.
+ *  @author Frank Warren
+ */
+public final class DepthFinder {
+
+    /** Run as specified by ARGS:
+     *      CONFIG FILE... [--z=Z] [--min-overlap=N] [--max-offset=D]
+     *          [--threads=N]
+     *  treating each non-blank line of the FILEs (e.g. Main outputs) as a
+     *  message over the alphabet of configuration file CONFIG, and
+     *  printing the offsets where two messages overlapping by at least N
+     *  letters (default 50), offset by at most D (default any), have a
+     *  z-score of at least Z (default 4), most significant first, as lines
+     *  "Z COINCIDENCES OVERLAP OFFSET MESSAGE MESSAGE", messages being
+     *  named FILE:LINE.  Uses all cores unless told otherwise.  Every
+     *  pair and offset is a separate test, so in a large archive some
+     *  short overlaps of unrelated messages reach any modest Z by chance;
+     *  raise Z or N accordingly. */
+    public static void main(String... args) {
+        try {
+            double minZ = 4;
+            int minOverlap = 50, maxOffset = Integer.MAX_VALUE;
+            int threads = Runtime.getRuntime().availableProcessors();
+            List<String> rest = new ArrayList<String>();
+            for (String arg : args) {
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (!arg.startsWith("--")) {
+                    rest.add(arg);
+                } else if (arg.startsWith("--z=")) {
+                    minZ = Double.parseDouble(value);
+                } else if (arg.startsWith("--min-overlap=")) {
+                    minOverlap = Integer.parseInt(value);
+                } else if (arg.startsWith("--max-offset=")) {
+                    maxOffset = Integer.parseInt(value);
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value);
+                } else {
+                    throw error("Unknown option %s", arg);
+                }
+            }
+            if (rest.size() < 2 || threads < 1 || minOverlap < 1) {
+                throw error("Usage: DepthFinder CONFIG FILE... [--z=Z] "
+                        + "[--min-overlap=N] [--max-offset=D] "
+                        + "[--threads=N]");
+            }
+            DepthFinder finder = new DepthFinder(
+                    Main.readConfig(rest.get(0)).getAlphabet());
+            for (String name : rest.subList(1, rest.size())) {
+                finder.addFile(name);
+            }
+            PrintWriter out = new PrintWriter(new BufferedWriter(
+                    new OutputStreamWriter(System.out)));
+            for (Depth d
+                     : finder.find(minZ, minOverlap, maxOffset, threads)) {
+                out.println(d);
+            }
+            out.flush();
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A finder of depths among messages over ALPHA. */
+    DepthFinder(Alphabet alpha) {
+        _alphabet = alpha;
+    }
+
+    /** Add each non-blank line of the file named NAME as a message named
+     *  NAME:LINE. */
+    void addFile(String name) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+        for (int i = 0; i < lines.size(); i += 1) {
+            if (!lines.get(i).isBlank()) {
+                add(name + ":" + (i + 1), lines.get(i));
+            }
+        }
+    }
+
+    /** Add the letters of CIPHERTEXT as the message named NAME, skipping
+     *  other characters, such as the blanks between groups, and return
+     *  its index. */
+    int add(String name, String ciphertext) {
+        int size = _alphabet.size();
+        int[] text = new int[ciphertext.length()];
+        int n = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            if (_alphabet.contains(c)) {
+                text[n] = _alphabet.toInt(c);
+                n += 1;
+            }
+        }
+        int words = (n >>> 6) + 2;
+        long[] bits = new long[size * words];
+        for (int i = 0; i < n; i += 1) {
+            bits[text[i] * words + (i >>> 6)] |= 1L << i;
+        }
+        _messages.add(new Message(name, n, words, bits));
+        return _messages.size() - 1;
+    }
+
+    /** Return the number of messages added. */
+    int size() {
+        return _messages.size();
+    }
+
+    /** Return the number of positions at which messages A and B overlap
+     *  when B's first letter lies under letter OFFSET of A (OFFSET may be
+     *  negative, putting A's first letter under letter -OFFSET of B). */
+    int overlap(int a, int b, int offset) {
+        if (offset < 0) {
+            return overlap(b, a, -offset);
+        }
+        return Math.max(0, Math.min(_messages.get(a)._length - offset,
+                                    _messages.get(b)._length));
+    }
+
+    /** Return the number of positions at which messages A and B have the
+     *  same letter when B's first letter lies under letter OFFSET of A,
+     *  as for overlap(). */
+    int coincidences(int a, int b, int offset) {
+        if (offset < 0) {
+            return coincidences(b, a, -offset);
+        }
+        Message x = _messages.get(a), y = _messages.get(b);
+        int skip = offset >>> 6, shift = offset & 63;
+        int n = Math.min(y._words, x._words - skip - 1);
+        int count = 0;
+        for (int letter = 0; letter < _alphabet.size(); letter += 1) {
+            int xs = letter * x._words + skip, ys = letter * y._words;
+            if (shift == 0) {
+                for (int w = 0; w < n; w += 1) {
+                    count += Long.bitCount(
+                            x._bits[xs + w] & y._bits[ys + w]);
+                }
+            } else {
+                for (int w = 0; w < n; w += 1) {
+                    long shifted = (x._bits[xs + w] >>> shift)
+                        | (x._bits[xs + w + 1] << (64 - shift));
+                    count += Long.bitCount(shifted & y._bits[ys + w]);
+                }
+            }
+        }
+        return count;
+    }
+
+    /** Return the z-score of COINCIDENCES among OVERLAP positions whose
+     *  letters coincide by chance with probability 1/SIZE. */
+    static double zScore(int coincidences, int overlap, int size) {
+        double p = 1.0 / size;
+        return (coincidences - overlap * p)
+            / Math.sqrt(overlap * p * (1 - p));
+    }
+
+    /** Return every offset of every pair of my messages that overlap by
+     *  at least MINOVERLAP letters, offset by at most MAXOFFSET, whose
+     *  z-score is at least MINZ, most significant first, computed by
+     *  THREADS threads each taking the pairs of one message at a time. */
+    List<Depth> find(double minZ, int minOverlap, int maxOffset,
+                     int threads) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<List<Depth>>> rows =
+                new ArrayList<Future<List<Depth>>>();
+            for (int a = 0; a < _messages.size(); a += 1) {
+                int first = a;
+                rows.add(pool.submit(
+                        () -> find(first, minZ, minOverlap, maxOffset)));
+            }
+            List<Depth> result = new ArrayList<Depth>();
+            for (Future<List<Depth>> row : rows) {
+                result.addAll(row.get());
+            }
+            Collections.sort(result);
+            return result;
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("depth search failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Return the depths, as for find(), between message A and each
+     *  later message. */
+    private List<Depth> find(int a, double minZ, int minOverlap,
+                             int maxOffset) {
+        List<Depth> result = new ArrayList<Depth>();
+        int size = _alphabet.size();
+        for (int b = a + 1; b < _messages.size(); b += 1) {
+            int lo = Math.max(-maxOffset,
+                              minOverlap - _messages.get(b)._length);
+            int hi = Math.min(maxOffset,
+                              _messages.get(a)._length - minOverlap);
+            for (int offset = lo; offset <= hi; offset += 1) {
+                int overlap = overlap(a, b, offset);
+                int count = coincidences(a, b, offset);
+                double z = zScore(count, overlap, size);
+                if (z >= minZ) {
+                    result.add(new Depth(_messages.get(a)._name,
+                            _messages.get(b)._name, offset, overlap,
+                            count, z));
+                }
+            }
+        }
+        return result;
+    }
+
+    /** A message and its letter bitsets. */
+    private static final class Message {
+
+        /** The message named NAME of LENGTH letters, whose bitsets are
+         *  WORDS consecutive words of BITS per letter. */
+        Message(String name, int length, int words, long[] bits) {
+            _name = name;
+            _length = length;
+            _words = words;
+            _bits = bits;
+        }
+
+        /** Name of the message. */
+        private final String _name;
+
+        /** Letters in the message and words per bitset. */
+        private final int _length, _words;
+
+        /** Word W of the bitset of letter L is _bits[L * _words + W]; bit
+         *  I of a bitset is set iff letter I of the message is L.  Each
+         *  bitset ends with a zero word, so that shifting one needs no
+         *  bounds test. */
+        private final long[] _bits;
+    }
+
+    /** A significant excess of coincidences between two messages. */
+    static final class Depth implements Comparable<Depth> {
+
+        /** The depth between messages FIRST and SECOND when SECOND's
+         *  first letter lies under letter OFFSET of FIRST, where they
+         *  overlap by OVERLAP letters with COINCIDENCES the same, for a
+         *  z-score of Z. */
+        Depth(String first, String second, int offset, int overlap,
+              int coincidences, double z) {
+            _first = first;
+            _second = second;
+            _offset = offset;
+            _overlap = overlap;
+            _coincidences = coincidences;
+            _z = z;
+        }
+
+        /** Return the name of my first message. */
+        String first() {
+            return _first;
+        }
+
+        /** Return the name of my second message. */
+        String second() {
+            return _second;
+        }
+
+        /** Return the letter of my first message under which my second
+         *  message starts (negative if it starts before). */
+        int offset() {
+            return _offset;
+        }
+
+        /** Return the number of letters my messages overlap by. */
+        int overlap() {
+            return _overlap;
+        }
+
+        /** Return the number of coinciding letters. */
+        int coincidences() {
+            return _coincidences;
+        }
+
+        /** Return my z-score. */
+        double z() {
+            return _z;
+        }
+
+        @Override
+        public int compareTo(Depth other) {
+            if (_z != other._z) {
+                return Double.compare(other._z, _z);
+            }
+            int c = _first.compareTo(other._first);
+            if (c == 0) {
+                c = _second.compareTo(other._second);
+            }
+            return c != 0 ? c : Integer.compare(_offset, other._offset);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.2f %d %d %d %s %s", _z, _coincidences,
+                                 _overlap, _offset, _first, _second);
+        }
+
+        /** Names of the messages. */
+        private final String _first, _second;
+
+        /** Offset, overlap and coincidences. */
+        private final int _offset, _overlap, _coincidences;
+
+        /** The z-score. */
+        private final double _z;
+    }
+
+    /** Alphabet of the messages. */
+    private final Alphabet _alphabet;
+
+    /** The messages, in the order added. */
+    private final ArrayList<Message> _messages = new ArrayList<Message>();
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the DepthFinder class.
+ *  @author Frank Warren
+ */
+public class DepthFinderTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /** Plaintext with the letter frequencies of English. */
+    private static final String PLAIN =
+        "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOM"
+        + "ITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCH"
+        + "OFINCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESS"
+        + "ITWASTHESPRINGOFHOPEITWASTHEWINTEROFDESPAIRWEHADEVERYTHING"
+        + "BEFOREUSWEHADNOTHINGBEFOREUSWEWEREALLGOINGDIRECTTOHEAVENWE"
+        + "WEREALLGOINGDIRECTTHEOTHERWAYINSHORTTHEPERIODWASSOFARLIKE";
+
+    /** Return a random string of N upper-case letters. */
+    private String randomText(Random r, int n) {
+        char[] result = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            result[i] = UPPER_STRING.charAt(r.nextInt(26));
+        }
+        return new String(result);
+    }
+
+    @Test
+    public void matchesNaiveCount() {
+        Random r = new Random(49);
+        DepthFinder finder = new DepthFinder(UPPER);
+        String a = randomText(r, 300), b = randomText(r, 130);
+        finder.add("a", a);
+        finder.add("b", b);
+        for (int offset = -129; offset < 300; offset += 1) {
+            int expected = 0, overlap = 0;
+            for (int k = 0; k < b.length(); k += 1) {
+                if (k + offset >= 0 && k + offset < a.length()) {
+                    overlap += 1;
+                    if (a.charAt(k + offset) == b.charAt(k)) {
+                        expected += 1;
+                    }
+                }
+            }
+            assertEquals(msg("offset", "%d", offset), expected,
+                         finder.coincidences(0, 1, offset));
+            assertEquals(overlap, finder.overlap(0, 1, offset));
+            assertEquals(expected, finder.coincidences(1, 0, -offset));
+        }
+    }
+
+    @Test
+    public void findsMessagesInDepth() {
+        Random r = new Random(50);
+        DepthFinder finder = new DepthFinder(UPPER);
+        Machine machine = navalMachine();
+        String plain = PLAIN + PLAIN + PLAIN;
+        String first = machine.convert(plain);
+        for (int i = 0; i < 6; i += 1) {
+            finder.add("noise" + i, randomText(r, 300));
+        }
+        finder.add("first", first);
+        machine.setRotors("AXLE", null);
+        machine.convert(plain.substring(0, 37));
+        String rest = plain.substring(100) + plain.substring(0, 100);
+        finder.add("second", machine.convert(rest));
+        List<DepthFinder.Depth> depths = finder.find(4, 50, 1000, 3);
+        assertFalse(depths.isEmpty());
+        DepthFinder.Depth best = depths.get(0);
+        assertEquals("first", best.first());
+        assertEquals("second", best.second());
+        assertEquals(37, best.offset());
+        assertEquals(plain.length() - 37, best.overlap());
+    }
+}
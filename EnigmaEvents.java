@@ -0,0 +1,130 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JDK Flight Recorder events for the stages of Main.  Main touches them
+ *  only through a Recorder, which it creates only if RECORDING or it was
+ *  asked for --stats; otherwise neither the events nor the JFR classes
+ *  behind them are loaded, which would add much of a plain run's startup
+ *  time.  Since RECORDING is checked once, a run records its events only
+ *  if Flight Recorder was started with the JVM (e.g. java
+ *  -XX:StartFlightRecording ...) or before Main's first use.
+ *  @author Frank Warren
+ */
+final class EnigmaEvents {
+
+    /** Not instantiable. */
+    private EnigmaEvents() {
+    }
+
+    /** True iff Flight Recorder was initialized when this class was. */
+    static final boolean RECORDING = FlightRecorder.isInitialized();
+
+    /** The events of one Main run, as that run's stages begin and end.
+     *  Not thread-safe; each run has its own. */
+    static final class Recorder {
+
+        /** Begin loading a configuration. */
+        void beginConfig() {
+            _config = new ConfigLoad();
+            _config.begin();
+        }
+
+        /** End loading a configuration that defined ROTORS rotors. */
+        void endConfig(int rotors) {
+            _config.rotors = rotors;
+            _config.commit();
+            _config = null;
+        }
+
+        /** Begin applying a setting line. */
+        void beginSection() {
+            _section = new Section();
+            _section.begin();
+        }
+
+        /** End applying the setting line SETTING (after its '*'). */
+        void endSection(String setting) {
+            _section.setting = setting;
+            _section.commit();
+            _section = null;
+        }
+
+        /** Account for CHARACTERS converted, ending LINES message lines,
+         *  in the current conversion batch, starting one if need be and
+         *  ending it once it has BATCH_CHARACTERS. */
+        void converted(long characters, int lines) {
+            if (_batch == null) {
+                _batch = new Conversion();
+                _batch.begin();
+            }
+            _batch.characters += characters;
+            _batch.lines += lines;
+            if (_batch.characters >= BATCH_CHARACTERS) {
+                endBatch();
+            }
+        }
+
+        /** Commit the current conversion batch, if any. */
+        void endBatch() {
+            if (_batch != null) {
+                _batch.commit();
+                _batch = null;
+            }
+        }
+
+        /** Characters per conversion batch event. */
+        private static final int BATCH_CHARACTERS = 1 << 16;
+
+        /** Configuration load begun and not yet committed, or null. */
+        private ConfigLoad _config;
+
+        /** Section set-up begun and not yet committed, or null. */
+        private Section _section;
+
+        /** Conversion batch being accumulated, or null. */
+        private Conversion _batch;
+    }
+
+    /** Loading the configuration file in Main.readConfig. */
+    @Name("enigma.ConfigLoad")
+    @Label("Config Load")
+    @Category("Enigma")
+    @StackTrace(false)
+    static final class ConfigLoad extends Event {
+        /** Number of rotors defined. */
+        @Label("Rotors")
+        int rotors;
+    }
+
+    /** Applying one '*' setting line in Main.setUp. */
+    @Name("enigma.Section")
+    @Label("Section Setup")
+    @Category("Enigma")
+    @StackTrace(false)
+    static final class Section extends Event {
+        /** The setting line, after its '*'. */
+        @Label("Setting")
+        String setting;
+    }
+
+    /** Converting and writing a batch of message lines. */
+    @Name("enigma.Conversion")
+    @Label("Conversion Batch")
+    @Category("Enigma")
+    @StackTrace(false)
+    static final class Conversion extends Event {
+        /** Characters converted in the batch. */
+        @Label("Characters")
+        long characters;
+
+        /** Message lines in the batch. */
+        @Label("Lines")
+        int lines;
+    }
+}
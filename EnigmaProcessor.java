@@ -0,0 +1,262 @@
+package enigma;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** A Flow.Processor that converts a stream of chunks of text with one
+ *  machine, as Machine.convert(String) would convert their concatenation,
+ *  and publishes the converted chunks in order to a single subscriber.
+ *
+ *  All signals, from upstream and downstream alike, only record what
+ *  happened and schedule a drain on an Executor, so neither side's
+ *  thread ever blocks or converts.  The drain converts only when the
+ *  subscriber has asked for a chunk, joins small input chunks until at
+ *  least a batch's worth of characters is waiting (or the input ends),
+ *  and asks upstream for more only while fewer than a bounded number of
+ *  characters are waiting, so a slow subscriber holds back the producer
+ *  rather than filling memory: at most the buffer limit plus PREFETCH
+ *  chunks are ever held.
+ *  @author Frank Warren
+ */
+class EnigmaProcessor implements Flow.Processor<CharSequence, String> {
+
+    /** Chunks requested from upstream at a time. */
+    static final int PREFETCH = 16;
+
+    /** A processor converting with M, which must already be set up and
+     *  is used by no one else, on the common fork/join pool, emitting
+     *  chunks of at least 8192 characters and buffering at most 1 MiB of
+     *  characters. */
+    EnigmaProcessor(Machine m) {
+        this(m, ForkJoinPool.commonPool(), 1 << 13, 1 << 20);
+    }
+
+    /** A processor converting with M, which must already be set up and
+     *  is used by no one else, draining on EXECUTOR, joining input into
+     *  chunks of at least BATCH characters and requesting more input only
+     *  while fewer than LIMIT characters are buffered. */
+    EnigmaProcessor(Machine m, Executor executor, int batch, int limit) {
+        if (batch < 1 || limit < batch) {
+            throw new IllegalArgumentException("bad batch size or limit");
+        }
+        _machine = m;
+        _executor = executor;
+        _batch = batch;
+        _limit = limit;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super String> subscriber) {
+        synchronized (this) {
+            if (_downstream == null) {
+                _downstream = subscriber;
+                subscriber.onSubscribe(new Subscription());
+                schedule();
+                return;
+            }
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException(
+                "EnigmaProcessor allows only one subscriber"));
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this) {
+            if (_upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            _upstream = subscription;
+        }
+        schedule();
+    }
+
+    @Override
+    public void onNext(CharSequence item) {
+        String text = item.toString();
+        _input.add(text);
+        _buffered.addAndGet(text.length());
+        _outstanding.decrementAndGet();
+        schedule();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        _error = throwable;
+        _done = true;
+        schedule();
+    }
+
+    @Override
+    public void onComplete() {
+        _done = true;
+        schedule();
+    }
+
+    /** The subscription given to my subscriber. */
+    private class Subscription implements Flow.Subscription {
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                _error = new IllegalArgumentException(
+                        "non-positive request " + n);
+                _cancelled = true;
+            } else {
+                _demand.getAndAccumulate(n, (a, b) ->
+                        a + b < 0 ? Long.MAX_VALUE : a + b);
+            }
+            schedule();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            schedule();
+        }
+    }
+
+    /** Arrange for drain() to run, unless it is running already, in
+     *  which case it will look again before it stops. */
+    private void schedule() {
+        if (_wip.getAndIncrement() == 0) {
+            _executor.execute(this::drain);
+        }
+    }
+
+    /** Do everything that the signals recorded so far allow: emit
+     *  converted chunks while there is demand, finish the stream, and
+     *  request more input.  Only one drain runs at a time. */
+    private void drain() {
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super String> downstream;
+            Flow.Subscription upstream;
+            synchronized (this) {
+                downstream = _downstream;
+                upstream = _upstream;
+            }
+            if (_terminated) {
+                _input.clear();
+            } else if (_cancelled) {
+                terminate(upstream, downstream);
+            } else if (downstream != null) {
+                emit(upstream, downstream);
+                if (!_terminated && !_done && upstream != null) {
+                    while (_outstanding.get() < PREFETCH
+                           && _buffered.get() < _limit) {
+                        _outstanding.incrementAndGet();
+                        upstream.request(1);
+                    }
+                }
+            }
+            missed = _wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /** Send DOWNSTREAM as many converted chunks as it has asked for and
+     *  my input allows, and complete it once the input from UPSTREAM is
+     *  exhausted. */
+    private void emit(Flow.Subscription upstream,
+                      Flow.Subscriber<? super String> downstream) {
+        boolean done = _done;
+        while (_demand.get() > 0
+               && (_buffered.get() >= _batch || done && !_input.isEmpty())) {
+            StringBuilder chunk = new StringBuilder();
+            while (chunk.length() < _batch && !_input.isEmpty()) {
+                chunk.append(_input.poll());
+            }
+            _buffered.addAndGet(-chunk.length());
+            String converted;
+            try {
+                converted = _machine.convert(chunk.toString());
+            } catch (EnigmaException excp) {
+                _error = excp;
+                terminate(upstream, downstream);
+                return;
+            }
+            _demand.decrementAndGet();
+            downstream.onNext(converted);
+        }
+        if (done && _input.isEmpty()) {
+            terminate(null, downstream);
+        }
+    }
+
+    /** End the stream: cancel UPSTREAM if non-null, and signal my error,
+     *  if any, or else completion unless it cancelled, to DOWNSTREAM if
+     *  non-null. */
+    private void terminate(Flow.Subscription upstream,
+                           Flow.Subscriber<? super String> downstream) {
+        _terminated = true;
+        _input.clear();
+        if (upstream != null) {
+            upstream.cancel();
+        }
+        if (downstream == null) {
+            return;
+        } else if (_error != null) {
+            downstream.onError(_error);
+        } else if (!_cancelled) {
+            downstream.onComplete();
+        }
+    }
+
+    /** Machine that converts my stream. */
+    private final Machine _machine;
+
+    /** Where drains run. */
+    private final Executor _executor;
+
+    /** Least characters per emitted chunk, except the last. */
+    private final int _batch;
+
+    /** Most characters buffered before I stop requesting input. */
+    private final int _limit;
+
+    /** Input chunks received and not yet converted. */
+    private final ConcurrentLinkedQueue<String> _input =
+        new ConcurrentLinkedQueue<String>();
+
+    /** Characters in _input. */
+    private final AtomicLong _buffered = new AtomicLong();
+
+    /** Chunks requested from upstream and not yet received. */
+    private final AtomicInteger _outstanding = new AtomicInteger();
+
+    /** Chunks requested by my subscriber and not yet sent. */
+    private final AtomicLong _demand = new AtomicLong();
+
+    /** Signals not yet seen by a drain. */
+    private final AtomicInteger _wip = new AtomicInteger();
+
+    /** My source's subscription, once it arrives. */
+    private Flow.Subscription _upstream;
+
+    /** My subscriber, once it arrives. */
+    private Flow.Subscriber<? super String> _downstream;
+
+    /** The error ending the stream, or null. */
+    private volatile Throwable _error;
+
+    /** True once upstream has completed or failed. */
+    private volatile boolean _done;
+
+    /** True once my subscriber has cancelled or misbehaved. */
+    private volatile boolean _cancelled;
+
+    /** True once the stream has ended.  Only drains touch it. */
+    private boolean _terminated;
+}
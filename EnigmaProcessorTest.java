@@ -0,0 +1,169 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the EnigmaProcessor class.
+ *  @author Frank Warren
+ */
+public class EnigmaProcessorTest {
+
+    /** Return N chunks of 1 to 20 random letters and spaces from
+     *  RANDOM. */
+    private static List<String> chunks(int n, Random random) {
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < n; i += 1) {
+            StringBuilder chunk = new StringBuilder();
+            int len = 1 + random.nextInt(20);
+            for (int k = 0; k < len; k += 1) {
+                int c = random.nextInt(27);
+                chunk.append(c == 26 ? ' ' : (char) ('A' + c));
+            }
+            result.add(chunk.toString());
+        }
+        return result;
+    }
+
+    /** A subscriber that records what it receives and requests nothing
+     *  until told to. */
+    private static class Recorder implements Flow.Subscriber<String> {
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+        }
+
+        @Override
+        public void onNext(String item) {
+            _items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            _error = throwable;
+            _finished.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            _finished.countDown();
+        }
+
+        /** The subscription I was given. */
+        private Flow.Subscription _subscription;
+        /** Chunks received. */
+        private final List<String> _items = new ArrayList<String>();
+        /** Error received, if any. */
+        private Throwable _error;
+        /** Counted down on completion or error. */
+        private final CountDownLatch _finished = new CountDownLatch(1);
+    }
+
+    @Test
+    public void slowSubscriberHoldsBackProducer() {
+        List<String> input = chunks(5000, new Random(41));
+        long[] requested = { 0 };
+        int[] sent = { 0 };
+        EnigmaProcessor processor =
+            new EnigmaProcessor(navalMachine(), Runnable::run, 100, 400);
+        Recorder recorder = new Recorder();
+        processor.subscribe(recorder);
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requested[0] += n;
+                while (sent[0] < requested[0] && sent[0] < input.size()) {
+                    sent[0] += 1;
+                    processor.onNext(input.get(sent[0] - 1));
+                }
+                if (sent[0] == input.size()) {
+                    processor.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        assertTrue(requested[0] <= 400 + EnigmaProcessor.PREFETCH);
+        assertEquals(0, recorder._items.size());
+
+        for (int i = 0; i < 3; i += 1) {
+            long before = requested[0];
+            recorder._subscription.request(1);
+            assertEquals(i + 1, recorder._items.size());
+            assertTrue(recorder._items.get(i).length() <= 100 + 20);
+            assertTrue(requested[0] - before <= 120);
+        }
+        recorder._subscription.request(Long.MAX_VALUE);
+        assertEquals(0, recorder._finished.getCount());
+        assertEquals(null, recorder._error);
+        assertEquals(navalMachine().convert(String.join("", input)),
+                     String.join("", recorder._items));
+    }
+
+    @Test
+    public void convertsAsynchronousStream() throws InterruptedException {
+        List<String> input = chunks(20000, new Random(42));
+        EnigmaProcessor processor = new EnigmaProcessor(navalMachine());
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                super.onSubscribe(subscription);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(String item) {
+                super.onNext(item);
+                super._subscription.request(1);
+            }
+        };
+        processor.subscribe(recorder);
+        try (SubmissionPublisher<CharSequence> publisher =
+                 new SubmissionPublisher<CharSequence>(
+                     ForkJoinPool.commonPool(), 4)) {
+            publisher.subscribe(processor);
+            for (String chunk : input) {
+                publisher.submit(chunk);
+            }
+        }
+        assertTrue(recorder._finished.await(30, TimeUnit.SECONDS));
+        assertEquals(null, recorder._error);
+        assertEquals(navalMachine().convert(String.join("", input)),
+                     String.join("", recorder._items));
+    }
+
+    @Test
+    public void badInputEndsStreamWithError() {
+        EnigmaProcessor processor =
+            new EnigmaProcessor(navalMachine(), Runnable::run, 10, 10);
+        Recorder recorder = new Recorder();
+        processor.subscribe(recorder);
+        boolean[] cancelled = { false };
+        processor.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+                cancelled[0] = true;
+            }
+        });
+        recorder._subscription.request(5);
+        processor.onNext("HELLO WORLD 123");
+        assertTrue(recorder._error instanceof EnigmaException);
+        assertTrue(cancelled[0]);
+    }
+}
@@ -0,0 +1,102 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Scores ranges of packed keys (see KeySpace) against one ciphertext,
+ *  without a plugboard, by the index of coincidence of the decryption.
+ *  Each instance owns its machine, so one is needed per thread.
+ *  @author Frank Warren
+ */
+class KeySearch {
+
+    /** A search with machine M, whose rotors no other thread uses, over
+     *  keys of SPACE, scoring decryptions of CIPHERTEXT.  Characters of
+     *  CIPHERTEXT outside M's alphabet are ignored. */
+    KeySearch(Machine m, KeySpace space, String ciphertext) {
+        _machine = m;
+        _space = space;
+        Alphabet alpha = m.getAlphabet();
+        int n = 0;
+        int[] text = new int[ciphertext.length()];
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            if (alpha.contains(c)) {
+                text[n] = alpha.toInt(c);
+                n += 1;
+            }
+        }
+        _text = Arrays.copyOf(text, n);
+        _counts = new int[alpha.size()];
+        _rings = new int[m.numRotors() - 1];
+        _positions = new int[m.numRotors() - 1];
+    }
+
+    /** Return the packed keys, each with zero ring setting and start
+     *  position, of the rotor orders in SPACE that machine M accepts.
+     *  If ROTORS is non-null, only that order (as given to
+     *  Machine.insertRotors) is returned. */
+    static List<Long> validOrders(Machine m, KeySpace space, String rotors) {
+        List<Long> result = new ArrayList<Long>();
+        long perOrder = space.keysPerOrder();
+        for (long key = 0; key < space.size(); key += perOrder) {
+            String names = space.rotors(key);
+            if (rotors != null && !names.equals(rotors.trim())) {
+                continue;
+            }
+            try {
+                m.insertRotors(names);
+                result.add(key);
+            } catch (EnigmaException excp) {
+                continue;
+            }
+        }
+        return result;
+    }
+
+    /** Score every key in [START, END), which must share one rotor
+     *  order, offering each to STORE with an empty plugboard. */
+    void search(long start, long end, CandidateStore store) {
+        if (start >= end) {
+            return;
+        }
+        _machine.insertRotors(_space.rotors(start));
+        _machine.setPlugboard(new Permutation("", _machine.getAlphabet()));
+        for (long key = start; key < end; key += 1) {
+            _space.unpack(key, null, _rings, _positions);
+            _machine.setRotors(_positions, _rings);
+            store.offer(score(), key, 0);
+        }
+    }
+
+    /** Return the index of coincidence of my ciphertext decrypted from
+     *  the current state of my machine, advancing the machine. */
+    private float score() {
+        Arrays.fill(_counts, 0);
+        for (int c : _text) {
+            _counts[_machine.convert(c)] += 1;
+        }
+        long sum = 0;
+        for (int count : _counts) {
+            sum += (long) count * (count - 1);
+        }
+        long n = _text.length;
+        return n < 2 ? 0f : (float) sum / (n * (n - 1));
+    }
+
+    /** Machine used to decrypt. */
+    private final Machine _machine;
+
+    /** Space of the keys I search. */
+    private final KeySpace _space;
+
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _text;
+
+    /** Letter counts of the current decryption. */
+    private final int[] _counts;
+
+    /** Scratch ring settings and start positions of the current key. */
+    private final int[] _rings, _positions;
+}
@@ -0,0 +1,339 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The space of machine keys (rotor order, ring setting and start
+ *  position) for one configuration, packed into primitive longs so that
+ *  searches can store and pass around billions of keys without objects.
+ *  A key is a mixed-radix number whose least significant digits are the
+ *  start positions, then the ring settings, then the library indices of
+ *  the rotors in each slot.  Plugboards are packed separately by ranking
+ *  them among all involutions of the alphabet.
+ *  @author Frank Warren
+ */
+class KeySpace {
+
+    /** A key space over the rotors named ROTORNAMES for machines with
+     *  alphabet ALPHA and NUMROTORS slots.  Rotor indices in packed keys
+     *  refer to positions in ROTORNAMES. */
+    KeySpace(Alphabet alpha, int numRotors, List<String> rotorNames) {
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _rotorNames = new ArrayList<String>(rotorNames);
+        try {
+            long positions = 1;
+            for (int i = 1; i < numRotors; i += 1) {
+                positions = Math.multiplyExact(positions, alpha.size());
+            }
+            _positions = positions;
+            _rings = positions;
+            long size = Math.multiplyExact(positions, positions);
+            for (int i = 0; i < numRotors; i += 1) {
+                size = Math.multiplyExact(size, _rotorNames.size());
+            }
+            _size = size;
+        } catch (ArithmeticException excp) {
+            throw error("Key space too large to pack into a long.");
+        }
+        _involutions = involutionCounts(alpha.size());
+    }
+
+    /** A key space over every rotor available to machine M, in
+     *  lexicographic order of rotor name. */
+    KeySpace(Machine m) {
+        this(m.getAlphabet(), m.numRotors(), sortedNames(m));
+    }
+
+    /** Return the names of the rotors available to M, sorted. */
+    private static List<String> sortedNames(Machine m) {
+        List<String> names = new ArrayList<String>(m.getAllRotors().names());
+        Collections.sort(names);
+        return names;
+    }
+
+    /** Return the number of involutions of 0..N-1 for N from 0 to SIZE.
+     *  Index I of the result is the number of plugboards on I letters. */
+    private static long[] involutionCounts(int size) {
+        long[] counts = new long[size + 1];
+        counts[0] = 1;
+        if (size > 0) {
+            counts[1] = 1;
+        }
+        try {
+            for (int n = 2; n <= size; n += 1) {
+                counts[n] = Math.addExact(counts[n - 1],
+                        Math.multiplyExact(n - 1, counts[n - 2]));
+            }
+        } catch (ArithmeticException excp) {
+            throw error("Alphabet too large to pack plugboards.");
+        }
+        return counts;
+    }
+
+    /** Return the number of slots in my machines. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the rotor names that rotor indices refer to. */
+    List<String> rotorNames() {
+        return Collections.unmodifiableList(_rotorNames);
+    }
+
+    /** Return the number of distinct packed keys, including those whose
+     *  rotor orders no machine would accept. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the number of start positions (and of ring settings) for
+     *  each rotor order. */
+    long positions() {
+        return _positions;
+    }
+
+    /** Return the number of packed keys that share one rotor order. */
+    long keysPerOrder() {
+        return _positions * _rings;
+    }
+
+    /** Return the packed key for the rotors with library indices ORDER
+     *  (ORDER[0] being the reflector), ring settings RINGS and start
+     *  positions POSITIONS.  RINGS and POSITIONS have numRotors() - 1
+     *  entries, leftmost first. */
+    long pack(int[] order, int[] rings, int[] positions) {
+        long key = 0;
+        for (int i = 0; i < _numRotors; i += 1) {
+            key = key * _rotorNames.size() + order[i];
+        }
+        for (int i = 0; i < _numRotors - 1; i += 1) {
+            key = key * _alphabet.size() + rings[i];
+        }
+        for (int i = 0; i < _numRotors - 1; i += 1) {
+            key = key * _alphabet.size() + positions[i];
+        }
+        return key;
+    }
+
+    /** Unpack KEY into ORDER, RINGS and POSITIONS, laid out as for
+     *  pack().  Any of the arrays may be null if not wanted. */
+    void unpack(long key, int[] order, int[] rings, int[] positions) {
+        int size = _alphabet.size();
+        for (int i = _numRotors - 2; i >= 0; i -= 1) {
+            if (positions != null) {
+                positions[i] = (int) (key % size);
+            }
+            key /= size;
+        }
+        for (int i = _numRotors - 2; i >= 0; i -= 1) {
+            if (rings != null) {
+                rings[i] = (int) (key % size);
+            }
+            key /= size;
+        }
+        for (int i = _numRotors - 1; i >= 0; i -= 1) {
+            if (order != null) {
+                order[i] = (int) (key % _rotorNames.size());
+            }
+            key /= _rotorNames.size();
+        }
+    }
+
+    /** Return the rotor order of KEY as a string of rotor names
+     *  separated by blanks, as accepted by Machine.insertRotors. */
+    String rotors(long key) {
+        int[] order = new int[_numRotors];
+        unpack(key, order, null, null);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < _numRotors; i += 1) {
+            if (i > 0) {
+                result.append(' ');
+            }
+            result.append(_rotorNames.get(order[i]));
+        }
+        return result.toString();
+    }
+
+    /** Return the ring setting of KEY as a string of letters. */
+    String ringSetting(long key) {
+        int[] rings = new int[_numRotors - 1];
+        unpack(key, null, rings, null);
+        return letters(rings);
+    }
+
+    /** Return the start position of KEY as a string of letters. */
+    String setting(long key) {
+        int[] positions = new int[_numRotors - 1];
+        unpack(key, null, null, positions);
+        return letters(positions);
+    }
+
+    /** Return the letters of my alphabet with indices INDICES. */
+    private String letters(int[] indices) {
+        char[] result = new char[indices.length];
+        for (int i = 0; i < indices.length; i += 1) {
+            result[i] = _alphabet.toChar(indices[i]);
+        }
+        return new String(result);
+    }
+
+    /** Return the packed key of the rotors inserted in M, their ring
+     *  settings and their current positions (as shown in their windows,
+     *  which is the setting plus the ring setting). */
+    long key(Machine m) {
+        int[] order = new int[_numRotors];
+        int[] rings = new int[_numRotors - 1];
+        int[] positions = new int[_numRotors - 1];
+        Rotor[] rotors = m.getRotors();
+        for (int i = 0; i < _numRotors; i += 1) {
+            order[i] = _rotorNames.indexOf(rotors[i].name());
+            if (order[i] < 0) {
+                throw error("Rotor %s not in key space.", rotors[i].name());
+            }
+            if (i > 0) {
+                rings[i - 1] = rotors[i].ringSetting();
+                positions[i - 1] = (rotors[i].setting()
+                                    + rotors[i].ringSetting())
+                    % _alphabet.size();
+            }
+        }
+        return pack(order, rings, positions);
+    }
+
+    /** Insert and set the rotors of M as described by KEY. */
+    void apply(Machine m, long key) {
+        m.insertRotors(rotors(key));
+        m.setRotors(setting(key), ringSetting(key));
+    }
+
+    /** Return the number of distinct packed plugboards. */
+    long plugboards() {
+        return _involutions[_alphabet.size()];
+    }
+
+    /** Return the packed form of the plugboard MAP, where MAP[i] is the
+     *  index that i is plugged to (i itself if unplugged).  The result is
+     *  the rank of MAP among all involutions of my alphabet. */
+    long packPlugboard(int[] map) {
+        int[] remaining = new int[map.length];
+        int n = map.length;
+        for (int i = 0; i < n; i += 1) {
+            remaining[i] = i;
+        }
+        long rank = 0;
+        while (n > 0) {
+            int first = remaining[0];
+            if (map[first] == first) {
+                n = remove(remaining, n, 0);
+            } else {
+                int j = indexOf(remaining, n, map[first]);
+                rank += _involutions[n - 1]
+                        + (long) (j - 1) * _involutions[n - 2];
+                n = remove(remaining, n, j);
+                n = remove(remaining, n, 0);
+            }
+        }
+        return rank;
+    }
+
+    /** Return the packed form of the plugboard of M. */
+    long packPlugboard(Machine m) {
+        int[] map = new int[_alphabet.size()];
+        for (int i = 0; i < map.length; i += 1) {
+            map[i] = m.getPlugboard().permute(i);
+        }
+        return packPlugboard(map);
+    }
+
+    /** Fill MAP with the plugboard whose packed form is PLUGS. */
+    void unpackPlugboard(long plugs, int[] map) {
+        unpackPlugboard(plugs, map, new int[map.length]);
+    }
+
+    /** Fill MAP with the plugboard whose packed form is PLUGS, using
+     *  REMAINING, of the same length as MAP, as scratch space. */
+    void unpackPlugboard(long plugs, int[] map, int[] remaining) {
+        int n = map.length;
+        for (int i = 0; i < n; i += 1) {
+            remaining[i] = i;
+        }
+        while (n > 0) {
+            int first = remaining[0];
+            if (plugs < _involutions[n - 1]) {
+                map[first] = first;
+                n = remove(remaining, n, 0);
+            } else {
+                plugs -= _involutions[n - 1];
+                int j = 1 + (int) (plugs / _involutions[n - 2]);
+                plugs %= _involutions[n - 2];
+                int partner = remaining[j];
+                map[first] = partner;
+                map[partner] = first;
+                n = remove(remaining, n, j);
+                n = remove(remaining, n, 0);
+            }
+        }
+    }
+
+    /** Return the plugboard whose packed form is PLUGS in the cycle
+     *  notation accepted by Permutation. */
+    String plugboardCycles(long plugs) {
+        int[] map = new int[_alphabet.size()];
+        unpackPlugboard(plugs, map);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < map.length; i += 1) {
+            if (map[i] > i) {
+                if (result.length() > 0) {
+                    result.append(' ');
+                }
+                result.append('(').append(_alphabet.toChar(i))
+                    .append(_alphabet.toChar(map[i])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Remove entry K from the first N entries of ARR, shifting the rest
+     *  down, and return N - 1. */
+    private static int remove(int[] arr, int n, int k) {
+        System.arraycopy(arr, k + 1, arr, k, n - k - 1);
+        return n - 1;
+    }
+
+    /** Return the index of VALUE among the first N entries of ARR. */
+    private static int indexOf(int[] arr, int n, int value) {
+        for (int i = 0; i < n; i += 1) {
+            if (arr[i] == value) {
+                return i;
+            }
+        }
+        throw error("Plugboard is not an involution.");
+    }
+
+    /** Alphabet of my machines. */
+    private final Alphabet _alphabet;
+
+    /** Number of rotor slots in my machines. */
+    private final int _numRotors;
+
+    /** Rotor names, indexed by the rotor indices of packed keys. */
+    private final List<String> _rotorNames;
+
+    /** Number of start positions, and of ring settings, per order. */
+    private final long _positions, _rings;
+
+    /** Number of distinct packed keys. */
+    private final long _size;
+
+    /** _involutions[n] is the number of involutions of n letters. */
+    private final long[] _involutions;
+}
@@ -0,0 +1,370 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Converts one message under many keys in a single run.  The keys are
+ *  either the setting lines of a file, each read as Main reads it, or a
+ *  range of the packed keys of one rotor order (see KeySpace), optionally
+ *  just its canonical keys (see CanonicalKeys).  For each key, in key
+ *  order, it writes the key as a setting line and then the converted
+ *  message on one line in groups of five, as Main prints message lines.
+ *
+ *  The configuration is read once, and each thread gets a machine whose
+ *  rotors share its wiring (Machine.freshCopy) and, for each rotor order,
+ *  an engine: a SpecializedEngine where one can be built, whatever the
+ *  setting of Machine.SPECIALIZE, since a sweep converts far more than it
+ *  costs to compile, and otherwise a CompositeEngine.  SpecializedEngine
+ *  caches its classes by rotor layout, so each order is compiled once
+ *  and the threads construct their engines from the same class.  Keys
+ *  are handled in batches; a batch is converted from alphabet indices
+ *  straight into a byte buffer, with no per-key parsing or strings, the
+ *  plugboard going from its packed form to the engine's table without a
+ *  Permutation, and the buffers are written out in order.
+ *  @author Frank Warren
+ */
+public final class KeySweep {
+
+    /** Keys per batch. */
+    static final int BATCH = 256;
+
+    /** Run as specified by ARGS:
+     *      CONFIG MESSAGE OUTPUT --keys=FILE
+     *      CONFIG MESSAGE OUTPUT --rotors=ORDER [--from=N] [--count=N]
+     *                            [--plugboard=CYCLES] [--canonical]
+     *  with --threads=N (default all cores) allowed in either.  MESSAGE
+     *  is a file holding the message; its whitespace is ignored.  With
+     *  --keys, each line of FILE that contains a '*' is a setting line.
+     *  With --rotors, the keys are the packed keys of rotor order ORDER
+     *  (e.g. "B Beta III IV I") from offset N (default 0) within the
+     *  order, COUNT of them (default 1000), all with plugboard CYCLES;
+     *  --canonical skips keys that are equivalent to an earlier one over
+     *  a message of this length. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4) {
+                throw error("Usage: KeySweep CONFIG MESSAGE OUTPUT "
+                        + "(--keys=FILE | --rotors=ORDER [--from=N] "
+                        + "[--count=N] [--plugboard=CYCLES] [--canonical])"
+                        + " [--threads=N]");
+            }
+            String keys = null, rotors = null, plugboard = "";
+            long from = 0, count = 1000;
+            boolean canonical = false;
+            int threads = Runtime.getRuntime().availableProcessors();
+            for (int i = 3; i < args.length; i += 1) {
+                String arg = args[i];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--keys=")) {
+                    keys = value;
+                } else if (arg.startsWith("--rotors=")) {
+                    rotors = value;
+                } else if (arg.startsWith("--from=")) {
+                    from = Long.parseLong(value);
+                } else if (arg.startsWith("--count=")) {
+                    count = Long.parseLong(value);
+                } else if (arg.startsWith("--plugboard=")) {
+                    plugboard = value;
+                } else if (arg.equals("--canonical")) {
+                    canonical = true;
+                } else if (arg.startsWith("--threads=")) {
+                    threads = Integer.parseInt(value);
+                } else {
+                    throw error("Unknown option %s", arg);
+                }
+            }
+            if ((keys == null) == (rotors == null)) {
+                throw error("Give exactly one of --keys and --rotors.");
+            }
+            Machine m = Main.readConfig(args[0]);
+            KeySweep sweep = new KeySweep(m, readText(args[1]));
+            if (keys != null) {
+                sweep.parseKeys(readText(keys));
+            } else {
+                sweep.rangeKeys(rotors, from, count, plugboard, canonical);
+            }
+            try (OutputStream out = new BufferedOutputStream(
+                    new FileOutputStream(args[2]), 1 << 16)) {
+                sweep.run(out, threads);
+            } catch (IOException excp) {
+                throw error("could not write %s", args[2]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private static String readText(String name) {
+        try {
+            return Files.readString(Paths.get(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** A sweep of MESSAGE over keys for machines like M, whose rotors
+     *  are used only to read keys. */
+    KeySweep(Machine m, String message) {
+        _machine = m;
+        _space = new KeySpace(m);
+        Alphabet alpha = m.getAlphabet();
+        int[] text = new int[message.length()];
+        int n = 0;
+        for (int i = 0; i < message.length(); i += 1) {
+            char c = message.charAt(i);
+            if (alpha.contains(c)) {
+                text[n] = alpha.toInt(c);
+                n += 1;
+            } else if (!Character.isWhitespace(c)) {
+                throw error("Can't convert character that's not "
+                        + "in alphabet.");
+            }
+        }
+        _message = Arrays.copyOf(text, n);
+        _letters = new byte[alpha.size()];
+        for (int i = 0; i < alpha.size(); i += 1) {
+            if (alpha.toChar(i) > 127) {
+                throw error("Sweeps need an ASCII alphabet.");
+            }
+            _letters[i] = (byte) alpha.toChar(i);
+        }
+        _keys = new long[0];
+        _plugs = new long[0];
+    }
+
+    /** Use as my keys the setting lines in TEXT, read as Main reads
+     *  them. */
+    void parseKeys(String text) {
+        List<String> lines = text.lines().filter(s -> s.indexOf('*') >= 0)
+            .toList();
+        _keys = new long[lines.size()];
+        _plugs = new long[lines.size()];
+        for (int i = 0; i < lines.size(); i += 1) {
+            String line = lines.get(i);
+            _machine.setPlugboard(new Permutation("", _machine.getAlphabet()));
+            Main.configure(_machine, line.substring(line.indexOf('*') + 1));
+            _keys[i] = _space.key(_machine);
+            _plugs[i] = _space.packPlugboard(_machine);
+        }
+    }
+
+    /** Use as my keys COUNT packed keys of the rotor order ROTORS from
+     *  offset FROM within the order, all with plugboard CYCLES, skipping
+     *  non-canonical keys if CANONICAL. */
+    void rangeKeys(String rotors, long from, long count, String cycles,
+                   boolean canonical) {
+        List<Long> orders = KeySearch.validOrders(_machine, _space, rotors);
+        if (orders.isEmpty()) {
+            throw error("Invalid rotor order %s", rotors);
+        }
+        long first = orders.get(0) + from;
+        long end = orders.get(0) + _space.keysPerOrder();
+        if (from < 0 || count < 0 || count > Integer.MAX_VALUE) {
+            throw error("bad key range");
+        }
+        _machine.setPlugboard(new Permutation(cycles, _machine.getAlphabet()));
+        long plugs = _space.packPlugboard(_machine);
+        CanonicalKeys canon = canonical ? new CanonicalKeys(
+                _machine.freshCopy(), _space, _message.length) : null;
+        long[] keys = new long[(int) Math.min(count, 1 << 16)];
+        int n = 0;
+        for (long key = first; key < end && n < count; key += 1) {
+            if (canon == null || canon.isCanonical(key)) {
+                if (n == keys.length) {
+                    keys = Arrays.copyOf(keys, 2 * n);
+                }
+                keys[n] = key;
+                n += 1;
+            }
+        }
+        _keys = Arrays.copyOf(keys, n);
+        _plugs = new long[n];
+        Arrays.fill(_plugs, plugs);
+    }
+
+    /** Write the setting line and conversion of my message for each of
+     *  my keys to OUT, using THREADS threads. */
+    void run(OutputStream out, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        ThreadLocal<Worker> workers =
+            ThreadLocal.withInitial(() -> new Worker(_machine.freshCopy()));
+        ArrayDeque<Future<byte[]>> pending = new ArrayDeque<Future<byte[]>>();
+        try {
+            for (int start = 0; start < _keys.length; start += BATCH) {
+                int from = start, to = Math.min(_keys.length, start + BATCH);
+                pending.add(pool.submit(() -> workers.get().batch(from, to)));
+                if (pending.size() >= 2 * threads) {
+                    out.write(pending.remove().get());
+                }
+            }
+            while (!pending.isEmpty()) {
+                out.write(pending.remove().get());
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("sweep failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** The per-thread state of a sweep. */
+    private class Worker {
+
+        /** A worker converting with M. */
+        Worker(Machine m) {
+            int n = m.getAlphabet().size();
+            _m = m;
+            _rings = new int[m.numRotors() - 1];
+            _positions = new int[m.numRotors() - 1];
+            _plugMap = new int[n];
+            _scratch = new int[n];
+            _out = new byte[1024];
+            _order = -1;
+            _lastPlugs = -1;
+        }
+
+        /** Return the output for keys FROM through TO - 1. */
+        byte[] batch(int from, int to) {
+            _size = 0;
+            for (int i = from; i < to; i += 1) {
+                convert(_keys[i], _plugs[i]);
+            }
+            return Arrays.copyOf(_out, _size);
+        }
+
+        /** Append the setting line of KEY with packed plugboard PLUGS and
+         *  my message converted under it. */
+        private void convert(long key, long plugs) {
+            long order = key / _space.keysPerOrder();
+            if (order != _order) {
+                _m.insertRotors(_space.rotors(key));
+                _engine = SpecializedEngine.forLayout(_m);
+                if (_engine == null) {
+                    _engine = new CompositeEngine(_m);
+                }
+                _order = order;
+                _lastPlugs = -1;
+                _header = ("* " + _space.rotors(key) + " ")
+                    .getBytes(StandardCharsets.UTF_8);
+            }
+            _space.unpack(key, null, _rings, _positions);
+            if (plugs != _lastPlugs) {
+                _space.unpackPlugboard(plugs, _plugMap, _scratch);
+                _engine.loadPlugboard(_plugMap);
+                _lastPlugs = plugs;
+            }
+            int length = _message.length;
+            ensure(_header.length + 4 * _rings.length + 2 * _plugMap.length
+                   + length + length / 5 + 4);
+            System.arraycopy(_header, 0, _out, _size, _header.length);
+            _size += _header.length;
+            letters(_positions);
+            _out[_size++] = ' ';
+            letters(_rings);
+            for (int c = 0; c < _plugMap.length; c += 1) {
+                if (_plugMap[c] > c) {
+                    _out[_size++] = ' ';
+                    _out[_size++] = '(';
+                    _out[_size++] = _letters[c];
+                    _out[_size++] = _letters[_plugMap[c]];
+                    _out[_size++] = ')';
+                }
+            }
+            _out[_size++] = '\n';
+            _m.setRotors(_positions, _rings);
+            _engine.loadRotors(_m);
+            for (int i = 0; i < length; i += 1) {
+                int c = _engine.convert(_message[i]);
+                _out[_size++] = _letters[c];
+                if (i % 5 == 4) {
+                    _out[_size++] = ' ';
+                }
+            }
+            _out[_size++] = '\n';
+        }
+
+        /** Append the letters with indices VALUES. */
+        private void letters(int[] values) {
+            for (int v : values) {
+                _out[_size++] = _letters[v];
+            }
+        }
+
+        /** Make room for N more bytes of output. */
+        private void ensure(int n) {
+            if (_size + n > _out.length) {
+                _out = Arrays.copyOf(_out, Math.max(2 * _out.length,
+                                                    _size + n));
+            }
+        }
+
+        /** My machine. */
+        private final Machine _m;
+
+        /** Scratch ring settings and positions of the current key. */
+        private final int[] _rings, _positions;
+
+        /** Current plugboard and scratch space for unpacking it. */
+        private final int[] _plugMap, _scratch;
+
+        /** Output of the current batch is _out[0 .. _size - 1]. */
+        private byte[] _out;
+
+        /** Bytes of output in the current batch. */
+        private int _size;
+
+        /** Rotor order now inserted, or -1. */
+        private long _order;
+
+        /** Engine for the rotor order _order. */
+        private MachineEngine _engine;
+
+        /** Packed plugboard now set, or -1. */
+        private long _lastPlugs;
+
+        /** Start of the setting line of the rotor order _order. */
+        private byte[] _header;
+    }
+
+    /** Machine used to read keys and as the source of rotor wiring. */
+    private final Machine _machine;
+
+    /** Space my keys are packed in. */
+    private final KeySpace _space;
+
+    /** The message, as alphabet indices. */
+    private final int[] _message;
+
+    /** Output byte of each alphabet index. */
+    private final byte[] _letters;
+
+    /** Packed keys and plugboards to convert under. */
+    private long[] _keys, _plugs;
+}
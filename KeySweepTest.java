@@ -0,0 +1,87 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeySweep class.
+ *  @author Frank Warren
+ */
+public class KeySweepTest {
+
+    /** The message swept. */
+    private static final String MESSAGE = "FROM HIS SHOULDER HIAWATHA";
+
+    /** Return the output of Main converting INPUT with a naval
+     *  machine. */
+    private static String mainOutput(String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream print = new PrintStream(out);
+        Main.convert(Main.parseConfig(navalConfig()),
+                     new ByteArrayInputStream(input.getBytes()), print);
+        print.flush();
+        return out.toString();
+    }
+
+    /** Return the lines written by SWEEP run with THREADS threads. */
+    private static List<String> run(KeySweep sweep, int threads)
+        throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        sweep.run(out, threads);
+        return out.toString().lines().toList();
+    }
+
+    @Test
+    public void parsedKeysConvertAsMain() throws IOException {
+        String[] settings = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)",
+            "* B Gamma I II III AAAA",
+            "* C Beta V VI VII QRST (AZ)",
+        };
+        KeySweep sweep = new KeySweep(Main.parseConfig(navalConfig()),
+                                      MESSAGE);
+        sweep.parseKeys(String.join("\n", settings) + "\n");
+        List<String> lines = run(sweep, 2);
+        assertEquals(2 * settings.length, lines.size());
+        for (int i = 0; i < settings.length; i += 1) {
+            String expected = mainOutput(settings[i] + "\n" + MESSAGE + "\n");
+            assertEquals(expected,
+                    lines.get(2 * i + 1) + System.lineSeparator());
+            assertEquals(expected,
+                    mainOutput(lines.get(2 * i) + "\n" + MESSAGE + "\n"));
+        }
+    }
+
+    @Test
+    public void canonicalKeysInRange() throws IOException {
+        String order = "B Beta III IV I";
+        KeySweep canonical = new KeySweep(navalMachine(), "HELLO");
+        canonical.rangeKeys(order, 0, 200, "(AQ)", true);
+        List<String> canonicalLines = run(canonical, 2);
+        assertEquals(400, canonicalLines.size());
+
+        Machine m = navalMachine();
+        KeySpace space = new KeySpace(m);
+        long first = KeySearch.validOrders(m, space, order).get(0);
+        long previous = -1;
+        for (int i = 0; i < canonicalLines.size(); i += 2) {
+            String[] setting = canonicalLines.get(i).split(" ");
+            m.setRotors(setting[6], setting[7]);
+            long offset = space.key(m) - first;
+            assertTrue(offset > previous);
+            previous = offset;
+            KeySweep all = new KeySweep(navalMachine(), "HELLO");
+            all.rangeKeys(order, offset, 1, "(AQ)", false);
+            assertEquals(canonicalLines.subList(i, i + 2), run(all, 1));
+        }
+        assertTrue(previous >= 200);
+    }
+}
@@ -0,0 +1,200 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** Checks candidate keys, packed as by KeySpace (a key plus a packed
+ *  plugboard), against known plaintext/ciphertext pairs.  The letters of
+ *  all pairs are merged in order of their position in the message, and a
+ *  key is rejected at the first letter that does not match, which for
+ *  wrong keys is almost always one of the first few.  The plugboard is
+ *  applied from an int array rather than by building a Permutation, and
+ *  the rotors are only reinserted when the rotor order changes, so
+ *  checking a key allocates nothing.  Each instance owns its machine, so
+ *  one is needed per thread; verify() runs one per core.
+ *  @author Frank Warren
+ */
+class KeyVerifier {
+
+    /** A known plaintext and its ciphertext, starting at some position
+     *  of a message. */
+    static final class Pair {
+
+        /** A pair whose PLAIN enciphers to CIPHER starting OFFSET letters
+         *  after a key's start position.  Characters outside the
+         *  machine's alphabet are ignored in both. */
+        Pair(long offset, String plain, String cipher) {
+            if (offset < 0) {
+                throw error("negative offset");
+            }
+            _offset = offset;
+            _plain = plain;
+            _cipher = cipher;
+        }
+
+        /** Position of the first letter after the start position. */
+        private final long _offset;
+
+        /** The plaintext and ciphertext. */
+        private final String _plain, _cipher;
+    }
+
+    /** A verifier using machine M, whose rotors no other thread uses,
+     *  for keys of SPACE against PAIRS. */
+    KeyVerifier(Machine m, KeySpace space, List<Pair> pairs) {
+        _machine = m;
+        _space = space;
+        Alphabet alpha = m.getAlphabet();
+        List<long[]> letters = new ArrayList<long[]>();
+        for (Pair pair : pairs) {
+            int[] plain = indices(alpha, pair._plain);
+            int[] cipher = indices(alpha, pair._cipher);
+            if (plain.length != cipher.length) {
+                throw error("plaintext and ciphertext differ in length");
+            }
+            for (int i = 0; i < plain.length; i += 1) {
+                letters.add(new long[] {
+                    pair._offset + i, plain[i], cipher[i]
+                });
+            }
+        }
+        letters.sort((a, b) -> Long.compare(a[0], b[0]));
+        _steps = new long[letters.size()];
+        _plain = new int[letters.size()];
+        _cipher = new int[letters.size()];
+        long at = 0;
+        for (int i = 0; i < _steps.length; i += 1) {
+            long[] letter = letters.get(i);
+            _steps[i] = letter[0] + 1 - at;
+            at = letter[0] + 1;
+            _plain[i] = (int) letter[1];
+            _cipher[i] = (int) letter[2];
+        }
+        _rings = new int[m.numRotors() - 1];
+        _positions = new int[m.numRotors() - 1];
+        _plugs = new int[alpha.size()];
+        _scratch = new int[alpha.size()];
+        _order = -1;
+        m.setPlugboard(new Permutation("", alpha));
+    }
+
+    /** Return the indices in ALPHA of the characters of TEXT that are in
+     *  ALPHA. */
+    private static int[] indices(Alphabet alpha, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (alpha.contains(text.charAt(i))) {
+                result[n] = alpha.toInt(text.charAt(i));
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return true iff KEY with the packed plugboard PLUGS enciphers
+     *  every one of my pairs. */
+    boolean consistent(long key, long plugs) {
+        long order = key / _space.keysPerOrder();
+        if (order != _order) {
+            _order = order;
+            try {
+                _machine.insertRotors(_space.rotors(key));
+                _orderValid = true;
+            } catch (EnigmaException excp) {
+                _orderValid = false;
+            }
+        }
+        if (!_orderValid) {
+            return false;
+        }
+        _space.unpack(key, null, _rings, _positions);
+        _machine.setRotors(_positions, _rings);
+        _space.unpackPlugboard(plugs, _plugs, _scratch);
+        for (int i = 0; i < _steps.length; i += 1) {
+            for (long k = 0; k < _steps[i]; k += 1) {
+                _machine.advance();
+            }
+            int c = _plugs[_machine.encipher(_plugs[_plain[i]])];
+            if (c != _cipher[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return, for each I, whether KEYS[I] with packed plugboard PLUGS[I]
+     *  is consistent with PAIRS, checking on THREADS threads with a
+     *  machine each from MACHINES.  Keys are best grouped by rotor
+     *  order. */
+    static boolean[] verify(Supplier<Machine> machines, KeySpace space,
+                            List<Pair> pairs, long[] keys, long[] plugs,
+                            int threads) {
+        if (keys.length != plugs.length) {
+            throw error("need one plugboard per key");
+        }
+        boolean[] result = new boolean[keys.length];
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> parts = new ArrayList<Future<?>>();
+            int per = (keys.length + threads - 1) / threads;
+            for (int start = 0; start < keys.length; start += per) {
+                int from = start, to = Math.min(keys.length, start + per);
+                parts.add(pool.submit(() -> {
+                    KeyVerifier verifier =
+                        new KeyVerifier(machines.get(), space, pairs);
+                    for (int i = from; i < to; i += 1) {
+                        result[i] = verifier.consistent(keys[i], plugs[i]);
+                    }
+                }));
+            }
+            for (Future<?> part : parts) {
+                part.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("verification failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdown();
+        }
+        return result;
+    }
+
+    /** Machine used to encipher. */
+    private final Machine _machine;
+
+    /** Space of the keys I check. */
+    private final KeySpace _space;
+
+    /** Letters of all pairs in message order: the machine steps to take
+     *  before each, and its plaintext and ciphertext indices. */
+    private final long[] _steps;
+
+    /** Plaintext and ciphertext of each letter in _steps. */
+    private final int[] _plain, _cipher;
+
+    /** Scratch ring settings and start positions of the current key. */
+    private final int[] _rings, _positions;
+
+    /** Current plugboard, and scratch space for unpacking it. */
+    private final int[] _plugs, _scratch;
+
+    /** Rotor order (key / keys per order) last inserted, or -1. */
+    private long _order;
+
+    /** True iff the machine accepted rotor order _order. */
+    private boolean _orderValid;
+}
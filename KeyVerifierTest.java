@@ -0,0 +1,61 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the KeyVerifier class.
+ *  @author Frank Warren
+ */
+public class KeyVerifierTest {
+
+    @Test
+    public void findsTheOneKey() {
+        Machine m = navalMachine();
+        KeySpace space = new KeySpace(m);
+        List<String> names = new ArrayList<String>(m.getAllRotors().names());
+        Collections.sort(names);
+        int[] order = new int[5];
+        String[] rotors = { "B", "Beta", "III", "IV", "I" };
+        for (int i = 0; i < 5; i += 1) {
+            order[i] = names.indexOf(rotors[i]);
+        }
+        long key = space.pack(order, new int[] { 1, 2, 3, 4 },
+                new int[] { 0, 23, 11, 4 });
+        space.apply(m, key);
+        m.setPlugboard(new Permutation("(HQ) (EX) (IP)", UPPER));
+        long plugs = space.packPlugboard(m);
+
+        Random random = new Random(38);
+        StringBuilder plain = new StringBuilder();
+        for (int i = 0; i < 200; i += 1) {
+            plain.append((char) ('A' + random.nextInt(26)));
+        }
+        String cipher = m.convert(plain.toString());
+        List<KeyVerifier.Pair> pairs = List.of(
+            new KeyVerifier.Pair(150, plain.substring(150, 170),
+                                 cipher.substring(150, 170)),
+            new KeyVerifier.Pair(0, plain.substring(0, 30),
+                                 cipher.substring(0, 30)));
+
+        long[] keys = new long[2000], plugboards = new long[2000];
+        for (int i = 0; i < keys.length; i += 1) {
+            keys[i] = (long) (random.nextDouble() * space.size());
+            plugboards[i] = plugs;
+        }
+        keys[1234] = key;
+        plugboards[17] = 0;
+        keys[17] = key;
+        boolean[] result = KeyVerifier.verify(TestUtils::navalMachine,
+                space, pairs, keys, plugboards, 4);
+        for (int i = 0; i < keys.length; i += 1) {
+            assertEquals("key " + i, i == 1234, result[i]);
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** A reader of the lines of a byte stream that knows the byte offset of
+ *  every line it returns, so that a run can record where it is in its
+ *  input and later resume there.  Lines end at "\n", "\r\n" or a lone
+ *  '\r', as they do for a Scanner.  Lines may be read whole (readLine)
+ *  or, so that a line of any length can be handled in bounded memory, in
+ *  parts of a bounded size (readPart), but the two must not be mixed
+ *  within a line.
+ *  @author Frank Warren
+ */
+class LineReader {
+
+    /** A reader of the lines of IN, which is positioned at byte OFFSET of
+     *  its source, decoding them in the default charset. */
+    LineReader(InputStream in, long offset) {
+        _in = in;
+        _offset = offset;
+        _buf = new byte[BUFFER_BYTES];
+        _line = new byte[128];
+        _charset = Charset.defaultCharset();
+        _decoder = _charset.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _lineEnded = true;
+    }
+
+    /** Return the byte offset, in my source, of the next unread byte. */
+    long offset() {
+        return _offset;
+    }
+
+    /** Return the next line without its terminator, or null at the end
+     *  of the input. */
+    String readLine() {
+        int len = 0;
+        boolean any = false;
+        while (true) {
+            if (_pos == _limit && !fill()) {
+                break;
+            }
+            any = true;
+            byte b = _buf[_pos];
+            _pos += 1;
+            _offset += 1;
+            if (b == '\n' || b == '\r') {
+                skipNewline(b);
+                break;
+            }
+            if (len == _line.length) {
+                _line = Arrays.copyOf(_line, 2 * len);
+            }
+            _line[len] = b;
+            len += 1;
+        }
+        if (!any) {
+            return null;
+        }
+        return new String(_line, 0, len, _charset);
+    }
+
+    /** Return the next part of the current line, decoded from at most
+     *  MAX bytes (MAX >= 16), or null at the end of the input if the
+     *  previous part ended its line.  After each call, lineEnded() tells
+     *  whether the part returned was the last of its line; a line that
+     *  fills its last part exactly is followed by an empty part.  Bytes
+     *  of a character split between parts are held over to the next
+     *  part. */
+    String readPart(int max) {
+        if (max < 16) {
+            throw new IllegalArgumentException("part too small");
+        }
+        if (_line.length < max) {
+            _line = Arrays.copyOf(_line, max);
+        }
+        boolean any = !_lineEnded || _carry > 0;
+        if (_lineEnded) {
+            _decoder.reset();
+        }
+        int len = _carry;
+        _carry = 0;
+        _lineEnded = false;
+        while (len < max) {
+            if (_pos == _limit && !fill()) {
+                _lineEnded = true;
+                break;
+            }
+            any = true;
+            byte b = _buf[_pos];
+            _pos += 1;
+            _offset += 1;
+            if (b == '\n' || b == '\r') {
+                skipNewline(b);
+                _lineEnded = true;
+                break;
+            }
+            _line[len] = b;
+            len += 1;
+        }
+        if (!any) {
+            return null;
+        }
+        ByteBuffer bytes = ByteBuffer.wrap(_line, 0, len);
+        CharBuffer chars = CharBuffer.allocate(
+            (int) (len * _decoder.maxCharsPerByte()) + 1);
+        _decoder.decode(bytes, chars, _lineEnded);
+        if (_lineEnded) {
+            _decoder.flush(chars);
+        }
+        int rest = bytes.remaining();
+        System.arraycopy(_line, len - rest, _line, 0, rest);
+        _carry = rest;
+        chars.flip();
+        return chars.toString();
+    }
+
+    /** Return true iff the last part returned by readPart ended its
+     *  line. */
+    boolean lineEnded() {
+        return _lineEnded;
+    }
+
+    /** Having just read the terminator TERMINATOR, read the '\n' that
+     *  follows it if it is a '\r' that is part of a "\r\n", so that my
+     *  offset is that of the next line. */
+    private void skipNewline(byte terminator) {
+        if (terminator == '\r' && (_pos < _limit || fill())
+            && _buf[_pos] == '\n') {
+            _pos += 1;
+            _offset += 1;
+        }
+    }
+
+    /** Refill my buffer; return false at the end of the input. */
+    private boolean fill() {
+        try {
+            int n = _in.read(_buf);
+            if (n <= 0) {
+                return false;
+            }
+            _pos = 0;
+            _limit = n;
+            return true;
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Bytes read from the source at a time. */
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /** Source of bytes. */
+    private final InputStream _in;
+
+    /** Byte offset in the source of _buf[_pos]. */
+    private long _offset;
+
+    /** Bytes read but not yet returned are _buf[_pos.._limit-1]. */
+    private final byte[] _buf;
+
+    /** Bounds of the unread part of _buf. */
+    private int _pos, _limit;
+
+    /** The line being assembled. */
+    private byte[] _line;
+
+    /** Charset the lines are decoded with. */
+    private final Charset _charset;
+
+    /** Decoder of the parts of lines, carrying the state of a character
+     *  split between parts. */
+    private final CharsetDecoder _decoder;
+
+    /** Bytes at the start of _line held over from the previous part. */
+    private int _carry;
+
+    /** True iff the last part returned ended its line (initially true). */
+    private boolean _lineEnded;
+}
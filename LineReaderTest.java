@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+/** The suite of all JUnit tests for the LineReader class.
+ *  @author Frank Warren
+ */
+public class LineReaderTest {
+
+    /** Part size used by these tests. */
+    private static final int MAX = 16;
+
+    /** Return a reader of TEXT that gets at most one byte from its source
+     *  at a time, so that every terminator straddles a refill. */
+    private static LineReader trickle(String text) {
+        ByteArrayInputStream bytes =
+            new ByteArrayInputStream(text.getBytes());
+        return new LineReader(new InputStream() {
+            @Override
+            public int read() {
+                return bytes.read();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                return len == 0 ? 0 : bytes.read(b, off, 1);
+            }
+        }, 0);
+    }
+
+    /** Return a reader of TEXT. */
+    private static LineReader reader(String text) {
+        return new LineReader(new ByteArrayInputStream(text.getBytes()), 0);
+    }
+
+    /** Check that the next part of IN is PART, ends its line iff END, and
+     *  leaves IN at byte OFFSET. */
+    private static void checkPart(LineReader in, String part, boolean end,
+                                  long offset) {
+        assertEquals(part, in.readPart(MAX));
+        assertEquals(end, in.lineEnded());
+        assertEquals(offset, in.offset());
+    }
+
+    @Test
+    public void partsSplitExactlyAtMax() {
+        String a = "A".repeat(MAX), b = "B".repeat(2 * MAX + 1);
+        for (LineReader in : new LineReader[] {
+                reader(a + "\n" + b + "\n"), trickle(a + "\n" + b + "\n") }) {
+            checkPart(in, a, false, MAX);
+            checkPart(in, "", true, MAX + 1);
+            checkPart(in, b.substring(0, MAX), false, 2 * MAX + 1);
+            checkPart(in, b.substring(MAX, 2 * MAX), false, 3 * MAX + 1);
+            checkPart(in, "B", true, 3 * MAX + 3);
+            assertNull(in.readPart(MAX));
+        }
+    }
+
+    @Test
+    public void crlfStraddlingSplit() {
+        String a = "A".repeat(MAX - 1), b = "B".repeat(MAX);
+        String text = a + "\r\n" + b + "\r\nC\r\n";
+        for (LineReader in
+                 : new LineReader[] { reader(text), trickle(text) }) {
+            checkPart(in, a, true, MAX + 1);
+            checkPart(in, b, false, 2 * MAX + 1);
+            checkPart(in, "", true, 2 * MAX + 3);
+            checkPart(in, "C", true, 2 * MAX + 6);
+            assertNull(in.readPart(MAX));
+        }
+        LineReader in = trickle(text);
+        assertEquals(a, in.readLine());
+        assertEquals(MAX + 1, in.offset());
+        assertEquals(b, in.readLine());
+        assertEquals("C", in.readLine());
+        assertEquals(2 * MAX + 6, in.offset());
+        assertNull(in.readLine());
+    }
+
+    @Test
+    public void loneCarriageReturnEndsLine() {
+        String text = "AB\rCD\n\rEF\r";
+        for (LineReader in
+                 : new LineReader[] { reader(text), trickle(text) }) {
+            checkPart(in, "AB", true, 3);
+            checkPart(in, "CD", true, 6);
+            checkPart(in, "", true, 7);
+            checkPart(in, "EF", true, 10);
+            assertNull(in.readPart(MAX));
+        }
+        LineReader in = reader(text);
+        assertEquals("AB", in.readLine());
+        assertEquals("CD", in.readLine());
+        assertEquals("", in.readLine());
+        assertEquals("EF", in.readLine());
+        assertNull(in.readLine());
+        assertEquals(10, in.offset());
+    }
+}
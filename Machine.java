@@ -14,6 +14,14 @@ class Machine {
      *  available rotors. */
     Machine(Alphabet alpha, int numRotors, int pawls,
             HashMap<String, Rotor> allRotors) {
+        this(alpha, numRotors, pawls, new RotorLibrary(allRotors));
+    }
+
+    /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  and 0 <= PAWLS < NUMROTORS pawls, whose available rotors are in
+     *  ALLROTORS. */
+    Machine(Alphabet alpha, int numRotors, int pawls,
+            RotorLibrary allRotors) {
         _alphabet = alpha;
         _numRotors = numRotors;
         _pawls = pawls;
@@ -22,6 +30,15 @@ class Machine {
         _plugboard = new Permutation("", _alphabet);
     }
 
+    /** Return a new machine with my alphabet, slots and pawls whose
+     *  rotors share the wiring of mine but have settings of their own, so
+     *  that it may run on another thread.  It has no rotors inserted and
+     *  an empty plugboard. */
+    Machine freshCopy() {
+        return new Machine(_alphabet, _numRotors, _pawls,
+                new RotorLibrary(_allRotors));
+    }
+
     /** Return the number of rotor slots I have. */
     int numRotors() {
         return _numRotors;
@@ -38,6 +55,18 @@ class Machine {
         return _rotors;
     }
 
+    /** _allRotors getter.
+     * @return _allRotors */
+    RotorLibrary getAllRotors() {
+        return _allRotors;
+    }
+
+    /** _alphabet getter.
+     * @return _alphabet */
+    Alphabet getAlphabet() {
+        return _alphabet;
+    }
+
     /** _plugboard getter.
      * @return _plugboard */
     Permutation getPlugboard() {
@@ -81,6 +110,8 @@ class Machine {
             }
             _rotors[i] = rotor;
         }
+        _engine = null;
+        _engineBuilt = false;
         if (pawlsAdded != numPawls()) {
             throw error("Machine must have the number of moving "
                     + "rotors specified in setting.");
@@ -110,6 +141,37 @@ class Machine {
         }
     }
 
+    /** Set my rotors to the start positions POSITIONS and ring settings
+     *  RINGS, given as indices into my alphabet, leftmost rotor first
+     *  (not counting the reflector).  Equivalent to setRotors(String,
+     *  String) without converting to and from characters. */
+    void setRotors(int[] positions, int[] rings) {
+        for (int i = 0; i < numRotors() - 1; i += 1) {
+            Rotor rotor = _rotors[i + 1];
+            rotor.setRing(rings[i]);
+            rotor.set(rotor.permutation().wrap(positions[i] - rings[i]));
+        }
+    }
+
+    /** Return the positions of my rotors (excluding the reflector)
+     *  packed into a long, leftmost rotor most significant. */
+    long packedPositions() {
+        long result = 0;
+        for (int i = 1; i < numRotors(); i += 1) {
+            result = result * _alphabet.size() + _rotors[i].setting();
+        }
+        return result;
+    }
+
+    /** Set my rotors to the positions PACKED, as returned by
+     *  packedPositions(). */
+    void setPackedPositions(long packed) {
+        for (int i = numRotors() - 1; i >= 1; i -= 1) {
+            _rotors[i].set((int) (packed % _alphabet.size()));
+            packed /= _alphabet.size();
+        }
+    }
+
     /** Set the plugboard to PLUGBOARD. */
     void setPlugboard(Permutation plugboard) {
         for (Character key: plugboard.getMap().keySet()) {
@@ -126,6 +188,12 @@ class Machine {
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        advance();
+        return encipher(c);
+    }
+
+    /** Advance my rotors as for one key press. */
+    void advance() {
         for (int i = numRotors() - numPawls(); i < numRotors(); i += 1) {
             if (i == numRotors() - 1 || getRotors()[i + 1].atNotch()) {
                 getRotors()[i].advance();
@@ -134,6 +202,12 @@ class Machine {
                 }
             }
         }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1) with my rotors in their
+     *  current positions, without advancing the machine. */
+    int encipher(int c) {
         c = _plugboard.permute(c);
         for (int i = getRotors().length - 1; i >= 0; i -= 1) {
             c = getRotors()[i].convertForward(c);
@@ -148,18 +222,77 @@ class Machine {
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String ret = "";
-        char[] arr = msg.toCharArray();
-        for (char c: arr) {
-            if (_alphabet.contains(c)) {
-                ret += _alphabet.toChar(convert(_alphabet.toInt(c)));
-            } else if (!Character.isWhitespace(c)) {
-                throw error("Can't convert character that's not in alphabet.");
+        MachineEngine engine = engine();
+        if (engine != null) {
+            engine.load(this);
+        }
+        StringBuilder ret = new StringBuilder(msg.length());
+        try {
+            for (int i = 0; i < msg.length(); i += 1) {
+                char c = msg.charAt(i);
+                if (_alphabet.contains(c)) {
+                    int in = _alphabet.toInt(c);
+                    int out = engine != null ? engine.convert(in)
+                        : convert(in);
+                    ret.append(_alphabet.toChar(out));
+                } else if (!Character.isWhitespace(c)) {
+                    throw error("Can't convert character that's not "
+                            + "in alphabet.");
+                }
+            }
+        } finally {
+            if (engine != null) {
+                engine.store(this);
             }
         }
-        return ret;
+        return ret.toString();
     }
 
+    /** Return the engine for my current rotors given to useEngine() or
+     *  else selected by ENGINE, building it on first use, or null if
+     *  there is none or the specialized one is unavailable for these
+     *  rotors. */
+    private MachineEngine engine() {
+        if (!_engineBuilt) {
+            if (SPECIALIZE) {
+                _engine = SpecializedEngine.forLayout(this);
+            } else if (COMPOSE) {
+                _engine = new CompositeEngine(this);
+            } else {
+                _engine = null;
+            }
+            _engineBuilt = true;
+        }
+        return _engine;
+    }
+
+    /** Convert messages through ENGINE, which must have been built for
+     *  my current rotors (e.g. by CoreTables.engine()), until rotors are
+     *  next inserted. */
+    void useEngine(MachineEngine engine) {
+        _engine = engine;
+        _engineBuilt = true;
+    }
+
+    /** Engine that machines convert messages through, chosen by the
+     *  system property enigma.engine: "specialized" for engines generated
+     *  for their rotor layouts, "composite" for CompositeEngine, and
+     *  anything else for none. */
+    static final String ENGINE = System.getProperty("enigma.engine", "");
+
+    /** True iff machines convert messages through engines generated for
+     *  their rotor layouts. */
+    static final boolean SPECIALIZE = ENGINE.equals("specialized");
+
+    /** True iff machines convert messages through CompositeEngines. */
+    static final boolean COMPOSE = ENGINE.equals("composite");
+
+    /** Engine for my current rotors, if built and available. */
+    private MachineEngine _engine;
+
+    /** True iff _engine reflects my current rotors. */
+    private boolean _engineBuilt;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -167,7 +300,7 @@ class Machine {
     private int _numRotors, _pawls;
 
     /** Map of rotor names to Rotor objects. */
-    private HashMap<String, Rotor> _allRotors;
+    private RotorLibrary _allRotors;
 
     /** Plugboard permutation. */
     private Permutation _plugboard;
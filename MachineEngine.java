@@ -0,0 +1,32 @@
+package enigma;
+
+/** An alternative implementation of a Machine's stepping and conversion
+ *  for one particular set of inserted rotors.  An engine keeps its own
+ *  copy of the machine state: load() takes it from the machine's rotors
+ *  and plugboard before a run of conversions, and store() writes the
+ *  rotor positions back afterwards.  Callers that change the plugboard
+ *  less often than the rotors, or hold it only as a table, may load the
+ *  two separately with loadRotors() and loadPlugboard().
+ *  @author Frank Warren
+ */
+interface MachineEngine {
+
+    /** Copy the rotor positions, ring settings and plugboard of M, which
+     *  must have the rotors I was built for, into me. */
+    void load(Machine m);
+
+    /** Copy the rotor positions and ring settings of M, which must have
+     *  the rotors I was built for, into me, keeping my plugboard. */
+    void loadRotors(Machine m);
+
+    /** Make PLUGS, whose element X is the image of alphabet index X, my
+     *  plugboard. */
+    void loadPlugboard(int[] plugs);
+
+    /** Copy my rotor positions back into the rotors of M. */
+    void store(Machine m);
+
+    /** Return the conversion of C (an index into the alphabet) after
+     *  advancing my rotors, exactly as Machine.convert(int) would. */
+    int convert(int c);
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import org.junit.Assume;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -72,4 +73,107 @@ public class MachineTest {
         machine.setPlugboard(new Permutation("(AB) (CD) (FG)", alphabet));
         assertEquals('D', (char) machine.getPlugboard().getMap().get('C'));
     }
+
+    @Test
+    public void specializedEngineMatches() {
+        standardRotorSet();
+        ((MovingRotor) rotorMap.get("III")).setNotches("V");
+        ((MovingRotor) rotorMap.get("IV")).setNotches("J");
+        ((MovingRotor) rotorMap.get("I")).setNotches("Q");
+        Machine machine = new Machine(alphabet, 5, 3, rotorMap);
+        machine.insertRotors("B Beta III IV I");
+        machine.setRotors("AXLE", "BCDE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP)", alphabet));
+        MachineEngine engine = SpecializedEngine.forLayout(machine);
+        Assume.assumeNotNull(engine);
+        engine.load(machine);
+        for (int i = 0; i < 20000; i += 1) {
+            int c = i % 26;
+            assertEquals(machine.convert(c), engine.convert(c));
+        }
+        int[] settings = new int[5];
+        for (int i = 1; i < 5; i += 1) {
+            settings[i] = machine.getRotors()[i].setting();
+        }
+        machine.setRotors("AAAA", "BCDE");
+        engine.store(machine);
+        for (int i = 2; i < 5; i += 1) {
+            assertEquals(settings[i], machine.getRotors()[i].setting());
+        }
+    }
+
+    @Test
+    public void specializedEnginesSharedByLayout() {
+        Machine first = Main.parseConfig(navalConfig());
+        first.insertRotors("B Beta III IV I");
+        Assume.assumeNotNull(SpecializedEngine.forLayout(first));
+        int compiled = SpecializedEngine.compiled();
+        Machine copy = first.freshCopy(), again = navalMachine();
+        copy.insertRotors("B Beta III IV I");
+        assertTrue(SpecializedEngine.forLayout(copy) != null);
+        assertTrue(SpecializedEngine.forLayout(again) != null);
+        assertEquals(compiled, SpecializedEngine.compiled());
+        again.insertRotors("B Beta IV III I");
+        SpecializedEngine.forLayout(again);
+        assertEquals(compiled + 1, SpecializedEngine.compiled());
+    }
+
+    @Test
+    public void compositeEngineMatches() {
+        standardRotorSet();
+        ((MovingRotor) rotorMap.get("III")).setNotches("V");
+        ((MovingRotor) rotorMap.get("IV")).setNotches("EJ");
+        ((MovingRotor) rotorMap.get("I")).setNotches("QZ");
+        Machine machine = new Machine(alphabet, 5, 3, rotorMap);
+        machine.insertRotors("B Beta III IV I");
+        machine.setRotors("AXDO", "BCDE");
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP)", alphabet));
+        MachineEngine engine = new CompositeEngine(machine);
+        engine.load(machine);
+        for (int i = 0; i < 50000; i += 1) {
+            int c = (i * 7) % 26;
+            assertEquals(machine.convert(c), engine.convert(c));
+        }
+        int[] settings = new int[5];
+        for (int i = 1; i < 5; i += 1) {
+            settings[i] = machine.getRotors()[i].setting();
+        }
+        machine.setRotors("AAAA", "BCDE");
+        engine.store(machine);
+        for (int i = 2; i < 5; i += 1) {
+            assertEquals(settings[i], machine.getRotors()[i].setting());
+        }
+    }
+
+    @Test
+    public void rotorsBuiltOnFirstUse() {
+        Machine machine = Main.parseConfig(UPPER_STRING + "\n 3 1\n"
+            + " BAD MQ (AA)\n"
+            + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+            + " Beta N (ALBEVFCYODJWUGNMQTZSKPR) (HIX)\n"
+            + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP)\n"
+            + "     (RX) (SZ) (TV)\n");
+        assertEquals(4, machine.getAllRotors().size());
+        machine.insertRotors("B Beta I");
+        assertEquals("I", machine.getRotors()[2].name());
+        assertEquals('E', machine.getRotors()[2].permutation().permute('A'));
+        assertTrue(machine.getRotors()[0].reflecting());
+    }
+
+    @Test
+    public void freshCopySharesWiringNotState() {
+        standardRotorSet();
+        ((MovingRotor) rotorMap.get("I")).setNotches("Q");
+        Machine machine = new Machine(alphabet, 5, 3, rotorMap);
+        Machine copy = machine.freshCopy();
+        machine.insertRotors("B Beta III IV I");
+        copy.insertRotors("B Beta III IV I");
+        assertTrue(machine.getRotors()[4] != copy.getRotors()[4]);
+        assertTrue(machine.getRotors()[4].permutation()
+                   == copy.getRotors()[4].permutation());
+        machine.setRotors("AXLE", null);
+        copy.setRotors("AXLE", null);
+        String first = machine.convert("HELLOWORLD");
+        assertEquals(first, copy.convert("HELLOWORLD"));
+    }
 }
@@ -1,10 +1,21 @@
 package enigma;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
 
-import java.util.HashMap;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
 
@@ -23,10 +34,27 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.
+     *
+     *  Options (arguments starting with "--") may appear anywhere:
+     *  --stats prints a throughput summary to the standard error.
+     *  --checkpoint=FILE records, every 64 MiB of input (or every
+     *  --checkpoint-interval=BYTES), the input and output offsets, the
+     *  current setting line and machine state in FILE; it needs named
+     *  input and output files.  --resume continues a run from the
+     *  checkpoint in FILE, appending to the output as it was at that
+     *  point.  --cache=SIZE (e.g. 64m) keeps the output of up to SIZE
+     *  bytes of recent '*' sections and prints a section that recurs
+     *  under the same machine state from there (see SectionCache);
+     *  --cache-spill=DIR keeps the sections it drops in DIR. */
     public static void main(String... args) {
         try {
-            new Main(args).process();
+            long start = System.nanoTime();
+            Main main = new Main(args);
+            main.process();
+            if (main._stats) {
+                Stats.print(System.err, System.nanoTime() - start);
+            }
             return;
         } catch (EnigmaException excp) {
             System.err.printf("Error: %s%n", excp.getMessage());
@@ -36,39 +64,148 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        args = options(args);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _config = readText(args[0]);
+        _events = EnigmaEvents.RECORDING || _stats
+            ? new EnigmaEvents.Recorder() : null;
+        if (_checkpoint != null && args.length < 3) {
+            throw error("Checkpoints need named input and output files");
+        }
+        _checkpointState = _resume ? Checkpoint.read(_checkpoint) : null;
+        long inputOffset = _resume ? _checkpointState.inputOffset() : 0;
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = new LineReader(openInput(args[1], inputOffset),
+                                    inputOffset);
         } else {
-            _input = new Scanner(System.in);
+            _input = new LineReader(System.in, 0);
         }
 
         if (args.length > 2) {
             _output = getOutput(args[2]);
         } else {
-            _output = System.out;
+            _output = new PrintStream(new CountingStream(System.out));
         }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** A Main converting the messages read from INPUT and printing them
+     *  on OUTPUT, without options (see convert). */
+    private Main(LineReader input, PrintStream output) {
+        _input = input;
+        _output = new PrintStream(new CountingStream(output));
+        _events = EnigmaEvents.RECORDING ? new EnigmaEvents.Recorder() : null;
+    }
+
+    /** Convert the messages read from INPUT with M, which no other thread
+     *  uses, and print them on OUTPUT, exactly as main does for a named
+     *  input and output file.  This lets callers that convert many files
+     *  configure machines from one parsed configuration. */
+    static void convert(Machine m, InputStream input, PrintStream output) {
+        new Main(new LineReader(input, 0), output).process(m);
+    }
+
+    /** Record the options among ARGS and return the remaining
+     *  arguments. */
+    private String[] options(String[] args) {
+        ArrayList<String> rest = new ArrayList<String>();
+        long cacheSize = 0;
+        File spill = null;
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                rest.add(arg);
+            } else if (arg.equals("--stats")) {
+                _stats = true;
+            } else if (arg.startsWith("--checkpoint=")) {
+                _checkpoint = new File(arg.substring(arg.indexOf('=') + 1));
+            } else if (arg.startsWith("--checkpoint-interval=")) {
+                try {
+                    _checkpointInterval = Long.parseLong(
+                            arg.substring(arg.indexOf('=') + 1));
+                } catch (NumberFormatException excp) {
+                    throw error("Bad checkpoint interval in %s", arg);
+                }
+            } else if (arg.equals("--resume")) {
+                _resume = true;
+            } else if (arg.startsWith("--cache=")) {
+                try {
+                    cacheSize = parseSize(
+                            arg.substring(arg.indexOf('=') + 1));
+                } catch (NumberFormatException excp) {
+                    throw error("Bad cache size in %s", arg);
+                }
+            } else if (arg.startsWith("--cache-spill=")) {
+                spill = new File(arg.substring(arg.indexOf('=') + 1));
+            } else {
+                throw error("Unknown option %s", arg);
+            }
+        }
+        if (_resume && _checkpoint == null) {
+            throw error("--resume needs --checkpoint=FILE");
+        }
+        if (spill != null && cacheSize == 0) {
+            throw error("--cache-spill needs --cache=SIZE");
+        }
+        if (cacheSize != 0 && _checkpoint != null) {
+            throw error("--cache cannot be used with --checkpoint");
+        }
+        if (cacheSize != 0) {
+            _cache = new SectionCache(cacheSize, spill);
+        }
+        return rest.toArray(new String[0]);
+    }
+
+    /** Return the byte count TEXT, a number optionally followed by k, m
+     *  or g. */
+    static long parseSize(String text) {
+        String lower = text.toLowerCase();
+        int shift = lower.endsWith("k") ? 10 : lower.endsWith("m") ? 20
+            : lower.endsWith("g") ? 30 : 0;
+        if (shift > 0) {
+            lower = lower.substring(0, lower.length() - 1);
+        }
+        return Long.parseLong(lower) << shift;
+    }
+
+    /** Return the contents of the file named NAME. */
+    private String readText(String name) {
         try {
-            return new Scanner(new File(name));
+            return new String(Files.readAllBytes(new File(name).toPath()),
+                    Charset.defaultCharset());
         } catch (IOException excp) {
             System.out.println(new File(name).getAbsolutePath());
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
+    /** Return a stream reading the file named NAME from byte OFFSET. */
+    private InputStream openInput(String name, long offset) {
+        try {
+            FileInputStream in = new FileInputStream(name);
+            in.getChannel().position(offset);
+            return in;
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Return a PrintStream writing to the file named NAME.  When
+     *  resuming, the file is cut back to its length at the checkpoint
+     *  and appended to. */
     private PrintStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            if (_resume) {
+                _outputFile = new FileOutputStream(name, true);
+                _outputFile.getChannel().truncate(
+                        _checkpointState.outputOffset());
+            } else {
+                _outputFile = new FileOutputStream(name);
+            }
+            return new PrintStream(new BufferedOutputStream(
+                    new CountingStream(_outputFile)));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -77,80 +214,281 @@ public final class Main {
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
      *  results to _output. */
-    private void process() {
-        Machine machine = readConfig();
-        String plugboard, rotors;
-        while (_input.hasNextLine()) {
-            if (_input.findInLine("\\*") != null) {
-                rotors = "";
-                try {
-                    for (int i = 0; i < machine.numRotors(); i++) {
-                        rotors += _input.next() + " ";
-                    }
-                } catch (NullPointerException e) {
-                    throw error("Not enough rotors in config line.");
-                }
-                String initialPos = _input.next();
-                String ringSetting = null;
-                if (_input.hasNext(" [^\\s\\(]{"
-                        + (machine.numRotors() - 1) + "}[\\s\\n\\r]?")) {
-                    ringSetting = _input.next("[^\\s\\(]{"
-                        + (machine.numRotors() - 1) + "}[\\s\\n\\r]?");
-                }
+    void process() {
+        process(readConfig());
+    }
 
-                plugboard = _input.findInLine("(\\(..\\)\\s*)+");
-                if (_input.hasNextLine()) {
-                    _input.nextLine();
-                }
-                setUp(machine, rotors, initialPos, ringSetting, plugboard);
+    /** Apply MACHINE to the messages in _input, sending the results to
+     *  _output. */
+    private void process(Machine machine) {
+        if (_resume) {
+            _setting = _checkpointState.setting();
+            _checkpointState.restore(machine);
+        }
+        _lastCheckpoint = _input.offset();
+        String part;
+        boolean continued = false;
+        while ((part = _input.readPart(PART_BYTES)) != null) {
+            boolean end = _input.lineEnded();
+            int star = part.indexOf('*');
+            if (star >= 0 && (continued || !end)) {
+                throw error("Setting lines must be shorter than %d bytes.",
+                        PART_BYTES);
+            } else if (star >= 0) {
+                endSection(machine);
+                endBatch();
+                _setting = part.substring(star + 1);
+                setUp(machine, _setting);
+                beginSection(machine);
+            } else if (_pending != null && end && !continued
+                       && _pendingChars + part.length()
+                          <= _cache.maxSection()) {
+                _pending.add(part);
+                _pendingChars += part.length();
             } else {
-                String message = _input.nextLine();
+                flushSection(machine);
                 try {
-                    String output = machine.convert(message);
-                    printMessageLine(output);
+                    convertPart(machine, part, end);
                 } catch (NullPointerException e) {
                     throw error("No configuration line found.");
                 }
             }
+            continued = !end;
+            if (end && _checkpoint != null
+                && _input.offset() - _lastCheckpoint >= _checkpointInterval) {
+                writeCheckpoint(machine);
+            }
+        }
+        endSection(machine);
+        endBatch();
+        _output.flush();
+    }
+
+    /** If caching, start collecting the message lines of a section that
+     *  M has just been set up for. */
+    private void beginSection(Machine m) {
+        if (_cache != null) {
+            _pending = new ArrayList<String>();
+            _pendingChars = 0;
+            _sectionState = sectionState(m);
+        }
+    }
+
+    /** Convert with M and print the message lines collected for the
+     *  current section, if any, and stop collecting them, as when the
+     *  section is too long to cache. */
+    private void flushSection(Machine m) {
+        if (_pending != null) {
+            for (String line : _pending) {
+                convertPart(m, line, true);
+            }
+            _pending = null;
+        }
+    }
+
+    /** End the current section, if collecting its message lines: print
+     *  its output from my cache or else convert them with M, printing
+     *  the output and caching it.  A cache entry is the number of
+     *  characters converted, as counted by account(), followed by the
+     *  output, so that a section printed from the cache is counted just
+     *  as if it had been converted. */
+    private void endSection(Machine m) {
+        if (_pending == null) {
+            return;
+        }
+        String key = SectionCache.key(_sectionState, _pending);
+        byte[] cached = _cache.get(key);
+        if (cached != null) {
+            _output.write(cached, ENTRY_HEADER,
+                          cached.length - ENTRY_HEADER);
+            account(ByteBuffer.wrap(cached).getLong(0), _pending.size());
+            _pending = null;
+            return;
+        }
+        PrintStream output = _output;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        _output = new PrintStream(captured);
+        _sectionCharacters = 0;
+        try {
+            flushSection(m);
+        } finally {
+            _output.flush();
+            _output = output;
+            _output.write(captured.toByteArray(), 0, captured.size());
+        }
+        _cache.put(key, ByteBuffer.allocate(ENTRY_HEADER + captured.size())
+                   .putLong(_sectionCharacters)
+                   .put(captured.toByteArray()).array());
+    }
+
+    /** Return a description of everything the conversion of a message
+     *  by M depends on besides the message: the configuration, M's rotors
+     *  with their settings and ring settings, and its plugboard.  The
+     *  latter two may be left over from earlier setting lines, so the
+     *  setting line alone does not determine them. */
+    private String sectionState(Machine m) {
+        if (_configKey == null) {
+            _configKey = SectionCache.key(_config == null ? "" : _config,
+                                          new ArrayList<String>());
+        }
+        StringBuilder state = new StringBuilder(_configKey);
+        for (Rotor rotor : m.getRotors()) {
+            state.append(' ').append(rotor.name()).append(':')
+                .append(rotor.setting()).append(':')
+                .append(rotor.ringSetting());
+        }
+        state.append(" |");
+        for (int x = 0; x < m.getAlphabet().size(); x += 1) {
+            state.append(' ').append(m.getPlugboard().permute(x));
+        }
+        return state.toString();
+    }
+
+    /** Set M according to SETTINGS, the part of a setting line after its
+     *  '*', which must have the format specified in the assignment. */
+    private void setUp(Machine m, String settings) {
+        if (_events != null) {
+            _events.beginSection();
+        }
+        configure(m, settings);
+        Stats.SECTIONS.increment();
+        if (_events != null) {
+            _events.endSection(settings);
+        }
+    }
+
+    /** Set M according to SETTINGS, the part of a setting line after its
+     *  '*', which must have the format specified in the assignment. */
+    static void configure(Machine m, String settings) {
+        Scanner line = new Scanner(settings);
+        String rotors = "";
+        try {
+            for (int i = 0; i < m.numRotors(); i++) {
+                rotors += line.next() + " ";
+            }
+        } catch (NoSuchElementException e) {
+            throw error("Not enough rotors in config line.");
+        }
+        String initialPos;
+        try {
+            initialPos = line.next();
+        } catch (NoSuchElementException e) {
+            throw error("No initial rotor positions in config line.");
+        }
+        String ringSetting = null;
+        if (line.hasNext(" [^\\s\\(]{"
+                + (m.numRotors() - 1) + "}[\\s\\n\\r]?")) {
+            ringSetting = line.next("[^\\s\\(]{"
+                + (m.numRotors() - 1) + "}[\\s\\n\\r]?");
+        }
+        String plugboard = line.findInLine("(\\(..\\)\\s*)+");
+        setUp(m, rotors, initialPos, ringSetting, plugboard);
+    }
+
+    /** Record the current input and output offsets, setting line and
+     *  the state of M in the checkpoint file. */
+    private void writeCheckpoint(Machine m) {
+        _output.flush();
+        try {
+            long outputOffset = _outputFile.getChannel().position();
+            new Checkpoint(_input.offset(), outputOffset, _setting, m)
+                .write(_checkpoint);
+        } catch (IOException excp) {
+            throw error("could not write checkpoint %s", _checkpoint);
+        }
+        _lastCheckpoint = _input.offset();
+    }
+
+    /** Convert PART, the next part of a message line, with M and print
+     *  the result, continuing the groups of five of the line so far and
+     *  ending the line if END, accounting for it in the current
+     *  conversion batch and the counters. */
+    private void convertPart(Machine m, String part, boolean end) {
+        String output = m.convert(part);
+        printMessagePart(output, end);
+        account(output.length(), end ? 1 : 0);
+    }
+
+    /** Account for CHARACTERS converted, ending LINES message lines, in
+     *  the current conversion batch, the counters and the current
+     *  section.  The bytes printed are counted by _output itself. */
+    private void account(long characters, int lines) {
+        Stats.CHARACTERS.add(characters);
+        _sectionCharacters += characters;
+        if (_events != null) {
+            _events.converted(characters, lines);
+        }
+    }
+
+    /** Commit the current conversion batch event, if any. */
+    private void endBatch() {
+        if (_events != null) {
+            _events.endBatch();
         }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
      *  file _config. */
     private Machine readConfig() {
-        try {
-            _alphabet = new Alphabet(_config.nextLine());
-            int numRotors = _config.nextInt();
-            int numPawls = _config.nextInt();
-            HashMap<String, Rotor> allRotors = new HashMap<String, Rotor>();
-            while (_config.hasNext()) {
-                String name = _config.next();
-                String type = _config.next();
-                String tempPerm = "";
-                while (_config.hasNext("\\((([^\\s+])|\\++)+\\)")) {
-                    tempPerm += _config.next();
-                }
-                Permutation perm = new Permutation(tempPerm,
-                        _alphabet);
-                switch (type.charAt(0)) {
-                case 'M':
-                    allRotors.put(name, new MovingRotor(name, perm,
-                            type.substring(1)));
-                    break;
-                case 'N':
-                    allRotors.put(name, new FixedRotor(name, perm));
-                    break;
-                case 'R':
-                    allRotors.put(name, new Reflector(name, perm));
-                    break;
-                default:
-                    break;
-                }
-            }
-            return new Machine(_alphabet, numRotors, numPawls, allRotors);
-        } catch (NoSuchElementException excp) {
+        if (_events != null) {
+            _events.beginConfig();
+        }
+        Machine machine = parseConfig(_config);
+        _alphabet = machine.getAlphabet();
+        if (_events != null) {
+            _events.endConfig(machine.getAllRotors().size());
+        }
+        return machine;
+    }
+
+    /** Return an Enigma machine configured from the configuration TEXT.
+     *  Only the header is parsed here; the rotor descriptions are indexed
+     *  and each is built the first time a setting line inserts it (see
+     *  RotorLibrary).  Every call builds its own rotors, so machines
+     *  returned by separate calls share no state. */
+    static Machine parseConfig(String text) {
+        int eol = text.indexOf('\n');
+        if (eol < 0) {
+            throw error("configuration file truncated");
+        }
+        String chars = text.substring(0, eol);
+        if (chars.endsWith("\r")) {
+            chars = chars.substring(0, chars.length() - 1);
+        }
+        Alphabet alphabet = new Alphabet(chars);
+        int[] pos = { eol + 1 };
+        int numRotors = nextInt(text, pos);
+        int numPawls = nextInt(text, pos);
+        return new Machine(alphabet, numRotors, numPawls,
+                new RotorLibrary(alphabet, text, pos[0]));
+    }
+
+    /** Return the integer token of TEXT at or after POS[0], and set
+     *  POS[0] just past it. */
+    private static int nextInt(String text, int[] pos) {
+        int start = RotorLibrary.skipSpace(text, pos[0]);
+        if (start == text.length()) {
             throw error("configuration file truncated");
         }
+        pos[0] = RotorLibrary.tokenEnd(text, start);
+        try {
+            return Integer.parseInt(text.substring(start, pos[0]));
+        } catch (NumberFormatException excp) {
+            throw error("bad number in configuration: %s",
+                    text.substring(start, pos[0]));
+        }
+    }
+
+    /** Return an Enigma machine configured from the configuration file
+     *  named NAME. */
+    static Machine readConfig(String name) {
+        try {
+            return parseConfig(new String(
+                    Files.readAllBytes(new File(name).toPath()),
+                    Charset.defaultCharset()));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
     }
 
     /** Set M according to the specification given on SETTINGS,
@@ -165,37 +503,124 @@ public final class Main {
      * @param ringSetting A string containing the ring setting of the rotors.
      * @param plugboard A string containing 0 or more 2-character cycles
      *                  representing the plugboard of the machine. */
-    private void setUp(Machine m, String rotors, String initialPos,
-                       String ringSetting, String plugboard) {
+    static void setUp(Machine m, String rotors, String initialPos,
+                      String ringSetting, String plugboard) {
         m.insertRotors(rotors);
         m.setRotors(initialPos, ringSetting);
         if (!(plugboard == null)) {
-            m.setPlugboard(new Permutation(plugboard, _alphabet));
+            m.setPlugboard(new Permutation(plugboard, m.getAlphabet()));
         }
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        char[] arr = msg.toCharArray();
-        for (int i = 0; i < arr.length; i += 1) {
-            _output.print(arr[i]);
-            if (i % 5 == 4) {
-                _output.print(' ');
+    /** Print MSG as the continuation of the current message line, in
+     *  groups of five (except that the last group of a line may have fewer
+     *  letters), and end the line if END. */
+    private void printMessagePart(String msg, boolean end) {
+        StringBuilder groups = new StringBuilder(msg.length() * 6 / 5 + 1);
+        for (int i = 0; i < msg.length(); i += 1) {
+            groups.append(msg.charAt(i));
+            _column += 1;
+            if (_column % 5 == 0) {
+                groups.append(' ');
             }
         }
-        _output.println();
+        _output.print(groups);
+        if (end) {
+            _output.println();
+            _column = 0;
+        }
     }
 
+    /** An output stream adding the bytes written through it to
+     *  Stats.BYTES, line terminators and all. */
+    private static class CountingStream extends FilterOutputStream {
+
+        /** A stream counting the bytes written to OUT. */
+        CountingStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            Stats.BYTES.increment();
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            Stats.BYTES.add(len);
+        }
+    }
+
+    /** Most bytes of a message line read and converted at a time, and
+     *  the length limit of setting lines. */
+    static final int PART_BYTES = 1 << 16;
+
+    /** Bytes of the character count at the start of a cache entry. */
+    private static final int ENTRY_HEADER = Long.BYTES;
+
+    /** True iff a throughput summary was requested with --stats. */
+    private boolean _stats;
+
+    /** Letters printed so far on the current message line. */
+    private long _column;
+
+    /** Recorder of this run's events, or null if not recording them.
+     *  Only a non-null one loads the event classes. */
+    private final EnigmaEvents.Recorder _events;
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private LineReader _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private String _config;
 
     /** File for encoded/decoded messages. */
     private PrintStream _output;
+
+    /** Underlying output file, or null for the standard output. */
+    private FileOutputStream _outputFile;
+
+    /** The part after '*' of the latest setting line, or null. */
+    private String _setting;
+
+    /** Checkpoint file, or null if not checkpointing. */
+    private File _checkpoint;
+
+    /** Input bytes between checkpoints. */
+    private long _checkpointInterval = 1L << 26;
+
+    /** Input offset at the latest checkpoint. */
+    private long _lastCheckpoint;
+
+    /** True iff resuming from _checkpoint. */
+    private boolean _resume;
+
+    /** The checkpoint resumed from, or null. */
+    private Checkpoint _checkpointState;
+
+    /** Output of recent sections, or null if not caching. */
+    private SectionCache _cache;
+
+    /** Message lines of the current section collected for lookup in
+     *  _cache, or null if not collecting them. */
+    private ArrayList<String> _pending;
+
+    /** Characters in _pending. */
+    private long _pendingChars;
+
+    /** Characters converted, as counted by account(), since
+     *  endSection() began converting a section to cache. */
+    private long _sectionCharacters;
+
+    /** Machine state at the start of the current section, as described
+     *  by sectionState(). */
+    private String _sectionState;
+
+    /** Digest of _config, computed on first use. */
+    private String _configKey;
 }
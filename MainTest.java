@@ -0,0 +1,154 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Frank Warren
+ */
+public class MainTest {
+
+    /** Sections whose later setting lines inherit the plugboard and ring
+     *  settings of earlier ones. */
+    private static final String[] INPUT = {
+        "* B Beta III IV I AXLE BCDE (HQ) (EX) (IP) (TR) (BY)\n",
+        "FROM HIS SHOULDER HIAWATHA\n",
+        "TOOK THE CAMERA OF ROSEWOOD\n",
+        "* B Beta II IV I QRST\n",
+        "MADE OF SLIDING FOLDING ROSEWOOD\n",
+        "NEATLY PUT IT ALL TOGETHER\n",
+        "IN ITS CASE IT LAY COMPACTLY\n",
+        "* B Gamma III IV I AAAA\n",
+        "FOLDED INTO NEARLY NOTHING\n"
+    };
+
+    /** Return the text of sections, some retransmitted at once and some
+     *  later, whose lines fit a cache of 1 KiB or overflow it, and some
+     *  of which inherit the plugboard of the section before. */
+    private static String sections() {
+        String[] keys = {
+            "* B Beta III IV I AXLE BCDE (HQ) (EX)",
+            "* B Beta II IV I QRST",
+            "* B Gamma I II III ZZZZ BBBB (AZ)",
+            "* B Beta III IV I AXLE BCDE (HQ) (EX)"
+        };
+        String[] bodies = {
+            "FROM HIS SHOULDER HIAWATHA\nTOOK THE CAMERA OF ROSEWOOD\n",
+            "MADE OF SLIDING FOLDING ROSEWOOD\n".repeat(3),
+            "NEATLY PUT IT ALL TOGETHER ".repeat(20) + "\n",
+            "IN ITS CASE IT LAY COMPACTLY\nFOLDED INTO NEARLY NOTHING\n"
+                .repeat(8)
+        };
+        StringBuilder text = new StringBuilder();
+        for (int round = 0; round < 3; round += 1) {
+            for (int i = 0; i < keys.length; i += 1) {
+                String section = keys[i] + "\n"
+                    + bodies[(i + round) % bodies.length];
+                text.append(section.repeat(1 + (i + round) % 2));
+            }
+        }
+        return text.toString();
+    }
+
+    /** Return a temporary file holding lines FROM to TO of INPUT. */
+    private static File input(int from, int to) throws IOException {
+        File file = File.createTempFile("input", ".txt");
+        file.deleteOnExit();
+        append(file, from, to);
+        return file;
+    }
+
+    /** Append lines FROM to TO of INPUT to FILE. */
+    private static void append(File file, int from, int to)
+        throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i += 1) {
+            text.append(INPUT[i]);
+        }
+        Files.writeString(file.toPath(),
+                          Files.readString(file.toPath()) + text);
+    }
+
+    /** Return a new temporary file name. */
+    private static File tempFile(String suffix) throws IOException {
+        File file = File.createTempFile("main", suffix);
+        file.deleteOnExit();
+        return file;
+    }
+
+    /** Run Main on ARGS. */
+    private static void run(String... args) {
+        new Main(args).process();
+    }
+
+    @Test
+    public void cachedOutputMatchesConverted() throws IOException {
+        String config = navalConfigFile().getPath();
+        File input = tempFile(".txt");
+        Files.writeString(input.toPath(), sections());
+        File spill = Files.createTempDirectory("spill").toFile();
+        String[][] options = {
+            {}, {"--cache=1k"}, {"--cache=1k", "--cache-spill=" + spill},
+            {"--cache=1k", "--cache-spill=" + spill}
+        };
+        String expected = null;
+        long characters = 0, bytes = 0;
+        for (String[] option : options) {
+            File output = tempFile(".out");
+            String[] args = new String[3 + option.length];
+            args[0] = config;
+            args[1] = input.getPath();
+            args[2] = output.getPath();
+            System.arraycopy(option, 0, args, 3, option.length);
+            long chars0 = Stats.CHARACTERS.sum(), bytes0 = Stats.BYTES.sum();
+            long hits0 = Stats.CACHE_HITS.sum();
+            run(args);
+            String text = Files.readString(output.toPath());
+            long chars1 = Stats.CHARACTERS.sum() - chars0;
+            long bytes1 = Stats.BYTES.sum() - bytes0;
+            if (expected == null) {
+                expected = text;
+                characters = chars1;
+                bytes = bytes1;
+            } else {
+                assertEquals(expected, text);
+                assertEquals(characters, chars1);
+                assertEquals(bytes, bytes1);
+                assertTrue(Stats.CACHE_HITS.sum() > hits0);
+            }
+        }
+        for (File file : spill.listFiles()) {
+            file.delete();
+        }
+        spill.delete();
+    }
+
+    @Test
+    public void resumeRestoresInheritedState() throws IOException {
+        String config = navalConfigFile().getPath();
+        File whole = input(0, INPUT.length);
+        File expected = tempFile(".out");
+        run(config, whole.getPath(), expected.getPath());
+        for (int cut = 1; cut < INPUT.length; cut += 1) {
+            File partial = input(0, cut);
+            File output = tempFile(".out");
+            File checkpoint = tempFile(".ck");
+            run(config, partial.getPath(), output.getPath(),
+                "--checkpoint=" + checkpoint.getPath(),
+                "--checkpoint-interval=1");
+            append(partial, cut, INPUT.length);
+            run(config, partial.getPath(), output.getPath(),
+                "--checkpoint=" + checkpoint.getPath(), "--resume");
+            assertEquals("resumed after line " + cut,
+                         Files.readString(expected.toPath()),
+                         Files.readString(output.toPath()));
+        }
+    }
+}
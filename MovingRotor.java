@@ -39,6 +39,12 @@ class MovingRotor extends Rotor {
         return (_notches.indexOf(setting) != -1);
     }
 
+    /** Getter method for _notches.
+     * @return _notches */
+    String notches() {
+        return _notches;
+    }
+
     /** Setter method for _notches.
      *
      * @param notches The notches on the rotor.
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.Arrays;
 import java.util.HashMap;
 
 import static enigma.EnigmaException.*;
@@ -139,6 +140,103 @@ class Permutation {
         return (_map.size() == alphabet().size());
     }
 
+    /** Fill DEST, of length size(), with my values as a table: DEST[X]
+     *  is permute(X).  The table is what the static methods below, which
+     *  never allocate, work on; DEST may be reused between calls. */
+    void table(int[] dest) {
+        for (int x = 0; x < size(); x += 1) {
+            dest[x] = permute(x);
+        }
+    }
+
+    /** Set DEST to the permutation applying table P and then table Q, so
+     *  that DEST[X] = Q[P[X]].  All have the same length; DEST may be P
+     *  but not Q. */
+    static void compose(int[] p, int[] q, int[] dest) {
+        for (int x = 0; x < p.length; x += 1) {
+            dest[x] = q[p[x]];
+        }
+    }
+
+    /** Set DEST, which must not be P, to the inverse of table P. */
+    static void inverse(int[] p, int[] dest) {
+        for (int x = 0; x < p.length; x += 1) {
+            dest[p[x]] = x;
+        }
+    }
+
+    /** Set DEST, which must not be P, to table P conjugated by a rotation
+     *  of K positions: DEST[X] = P[X + K] - K modulo the length, which is
+     *  how a rotor wired as P converts forward at setting K (see
+     *  Rotor.convertForward).  K may be any integer. */
+    static void shift(int[] p, int k, int[] dest) {
+        int n = p.length;
+        k = Math.floorMod(k, n);
+        for (int x = 0; x < n; x += 1) {
+            int y = x + k < n ? p[x + k] : p[x + k - n];
+            dest[x] = y >= k ? y - k : y - k + n;
+        }
+    }
+
+    /** Set DEST, which must not be P, to table P applied E times, or its
+     *  inverse applied -E times if E is negative.  Each cycle is walked
+     *  twice, in time linear in the length whatever E is; DEST serves as
+     *  the record of the elements already done. */
+    static void power(int[] p, int e, int[] dest) {
+        Arrays.fill(dest, -1);
+        for (int x = 0; x < p.length; x += 1) {
+            if (dest[x] != -1) {
+                continue;
+            }
+            int len = 1;
+            for (int c = p[x]; c != x; c = p[c]) {
+                len += 1;
+            }
+            int y = x;
+            for (int i = Math.floorMod(e, len); i > 0; i -= 1) {
+                y = p[y];
+            }
+            int c = x;
+            do {
+                dest[c] = y;
+                c = p[c];
+                y = p[y];
+            } while (c != x);
+        }
+    }
+
+    /** Return a hash of the cycle type of table P: the multiset of the
+     *  lengths of its cycles.  Permutations that are conjugate (e.g. a
+     *  rotor at any two settings, or the same core under two plugboards)
+     *  have the same cycle type and so the same hash; different types
+     *  almost always hash differently.  Each cycle is counted at its
+     *  least element, found by walking it, so the time is at worst
+     *  quadratic in the length, but no memory is needed. */
+    static long cycleType(int[] p) {
+        long hash = 0;
+        for (int x = 0; x < p.length; x += 1) {
+            int len = 1;
+            boolean least = true;
+            for (int c = p[x]; c != x && least; c = p[c]) {
+                least = c > x;
+                len += 1;
+            }
+            if (least) {
+                hash += mix(len);
+            }
+        }
+        return hash;
+    }
+
+    /** Return the 64-bit finalizer of SplitMix64 applied to V, so that
+     *  sums of the results of distinct values rarely collide. */
+    private static long mix(long v) {
+        long z = v * 0x9e3779b97f4a7c15L;
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
     /** _map getter.
      * @return _map*/
     HashMap<Character, Character> getMap() {
@@ -173,4 +173,72 @@ public class PermutationTest {
             Permutation perm = getNewPermutation("", getNewAlphabet(s));
         }
     }
+
+    @Test
+    public void testTableAlgebra() {
+        Alphabet alpha = getNewAlphabet();
+        int[] p = new int[26], q = new int[26], pq = new int[26];
+        int[] inv = new int[26], pow = new int[26], tmp = new int[26];
+        getNewPermutation(NAVALA.get("I"), alpha).table(p);
+        getNewPermutation(NAVALA.get("Beta"), alpha).table(q);
+        Permutation.compose(p, q, pq);
+        Permutation.inverse(p, inv);
+        for (int x = 0; x < 26; x += 1) {
+            assertEquals(q[p[x]], pq[x]);
+            assertEquals(x, inv[p[x]]);
+        }
+        for (int e = -30; e <= 30; e += 1) {
+            Permutation.power(p, e, pow);
+            for (int x = 0; x < 26; x += 1) {
+                int y = x;
+                for (int i = 0; i < Math.abs(e); i += 1) {
+                    y = e > 0 ? p[y] : inv[y];
+                }
+                assertEquals(msg("power", "%d of %d", e, x), y, pow[x]);
+            }
+        }
+        System.arraycopy(p, 0, tmp, 0, 26);
+        Permutation.compose(tmp, q, tmp);
+        for (int x = 0; x < 26; x += 1) {
+            assertEquals(pq[x], tmp[x]);
+        }
+    }
+
+    @Test
+    public void testShiftMatchesRotor() {
+        Alphabet alpha = getNewAlphabet();
+        Permutation perm = getNewPermutation(NAVALA.get("III"), alpha);
+        MovingRotor rotor = new MovingRotor("III", perm, "V");
+        int[] p = new int[26], shifted = new int[26];
+        perm.table(p);
+        for (int k = -26; k < 52; k += 1) {
+            rotor.set(Math.floorMod(k, 26));
+            Permutation.shift(p, k, shifted);
+            for (int x = 0; x < 26; x += 1) {
+                assertEquals(rotor.convertForward(x), shifted[x]);
+            }
+        }
+    }
+
+    @Test
+    public void testCycleType() {
+        Alphabet alpha = getNewAlphabet();
+        int[] p = new int[26], q = new int[26], tmp = new int[26];
+        getNewPermutation(NAVALA.get("I"), alpha).table(p);
+        long type = Permutation.cycleType(p);
+        for (int k = 1; k < 26; k += 1) {
+            Permutation.shift(p, k, q);
+            assertEquals(type, Permutation.cycleType(q));
+        }
+        getNewPermutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ)",
+                          alpha).table(q);
+        assertEquals(type, Permutation.cycleType(q));
+        getNewPermutation("(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IVJZ)",
+                          alpha).table(q);
+        assertFalse(type == Permutation.cycleType(q));
+        getNewPermutation(NAVALA.get("II"), alpha).table(q);
+        assertFalse(type == Permutation.cycleType(q));
+        Permutation.power(p, 2, tmp);
+        assertFalse(type == Permutation.cycleType(tmp));
+    }
 }
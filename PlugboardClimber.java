@@ -0,0 +1,412 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Hill-climbs the plugboard of one key against one ciphertext.  The
+ *  permutation of the rotors alone (without the plugboard) at each
+ *  position of the message is computed once, so decrypting position I
+ *  under plugboard P is just P(core_I(P(c_I))).  A move rewires at most
+ *  four plugs, and only changes the decryption at positions whose
+ *  ciphertext letter, or whose letter between the plugboard and the
+ *  rotors on the way out, is one of those four; positions are kept
+ *  listed under both letters, so a move is scored by redecrypting just
+ *  those positions and adjusting the running score, rather than
+ *  converting the whole message again.
+ *
+ *  The score is the index of coincidence of the decryption, as in
+ *  KeySearch, or, if bigram weights are given, the mean weight of its
+ *  adjacent letter pairs.  Each instance is used by one thread.
+ *  @author Frank Warren
+ */
+class PlugboardClimber {
+
+    /** A climber for CIPHERTEXT under the key M is set to.  Characters
+     *  of CIPHERTEXT outside M's alphabet are ignored.  Sets M's
+     *  plugboard to none and advances it once per letter. */
+    PlugboardClimber(Machine m, String ciphertext) {
+        Alphabet alpha = m.getAlphabet();
+        _n = alpha.size();
+        int[] text = new int[ciphertext.length()];
+        int len = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char c = ciphertext.charAt(i);
+            if (alpha.contains(c)) {
+                text[len] = alpha.toInt(c);
+                len += 1;
+            }
+        }
+        _len = len;
+        _text = Arrays.copyOf(text, len);
+        m.setPlugboard(new Permutation("", alpha));
+        _core = new int[len * _n];
+        for (int i = 0; i < len; i += 1) {
+            m.advance();
+            for (int x = 0; x < _n; x += 1) {
+                _core[i * _n + x] = m.encipher(x);
+            }
+        }
+        int[] counts = new int[_n];
+        for (int c : _text) {
+            counts[c] += 1;
+        }
+        _byCipher = new int[_n][];
+        for (int x = 0; x < _n; x += 1) {
+            _byCipher[x] = new int[counts[x]];
+            counts[x] = 0;
+        }
+        for (int i = 0; i < len; i += 1) {
+            _byCipher[_text[i]][counts[_text[i]]] = i;
+            counts[_text[i]] += 1;
+        }
+        _byMid = new int[_n][len];
+        _midCounts = new int[_n];
+        _midSlots = new int[len];
+        _mid = new int[len];
+        _out = new int[len];
+        _counts = new int[_n];
+        _plug = new int[_n];
+        _stamps = new int[len];
+        _pairStamps = new int[len];
+        _affected = new int[len];
+        _saved = new int[len];
+        _pairsTouched = new int[len];
+        setPlugboard(identity(_n));
+    }
+
+    /** Score by the mean of WEIGHTS[A * size + B] over adjacent letters
+     *  A, B of the decryption (e.g. log bigram frequencies), or, if
+     *  WEIGHTS is null, by the index of coincidence. */
+    void useBigrams(float[] weights) {
+        if (weights != null && weights.length != _n * _n) {
+            throw new IllegalArgumentException("need size * size weights");
+        }
+        _weights = weights;
+        setPlugboard(_plug.clone());
+    }
+
+    /** Return log bigram weights, with add-one smoothing, of the letters
+     *  of CORPUS in ALPHA, ignoring other characters. */
+    static float[] bigramWeights(Alphabet alpha, String corpus) {
+        int n = alpha.size();
+        long[] counts = new long[n * n];
+        long total = 0;
+        int prev = -1;
+        for (int i = 0; i < corpus.length(); i += 1) {
+            char c = Character.toUpperCase(corpus.charAt(i));
+            if (alpha.contains(c)) {
+                int x = alpha.toInt(c);
+                if (prev >= 0) {
+                    counts[prev * n + x] += 1;
+                    total += 1;
+                }
+                prev = x;
+            }
+        }
+        float[] result = new float[n * n];
+        for (int k = 0; k < result.length; k += 1) {
+            result[k] = (float) Math.log((counts[k] + 1.0)
+                                         / (total + n * n));
+        }
+        return result;
+    }
+
+    /** Return the plugboard mapping X to X for every letter of an
+     *  alphabet of N letters. */
+    static int[] identity(int n) {
+        int[] result = new int[n];
+        for (int x = 0; x < n; x += 1) {
+            result[x] = x;
+        }
+        return result;
+    }
+
+    /** Make PLUGS, an involution on alphabet indices, my plugboard, and
+     *  decrypt and score my whole ciphertext under it. */
+    void setPlugboard(int[] plugs) {
+        System.arraycopy(plugs, 0, _plug, 0, _n);
+        _pairs = 0;
+        for (int x = 0; x < _n; x += 1) {
+            if (_plug[_plug[x]] != x) {
+                throw new IllegalArgumentException("plugboard not an "
+                        + "involution");
+            }
+            if (_plug[x] > x) {
+                _pairs += 1;
+            }
+        }
+        Arrays.fill(_counts, 0);
+        Arrays.fill(_midCounts, 0);
+        for (int i = 0; i < _len; i += 1) {
+            int mid = _core[i * _n + _plug[_text[i]]];
+            _mid[i] = mid;
+            _midSlots[i] = _midCounts[mid];
+            _byMid[mid][_midCounts[mid]] = i;
+            _midCounts[mid] += 1;
+            _out[i] = _plug[mid];
+            _counts[_out[i]] += 1;
+        }
+        _coincidences = 0;
+        for (int count : _counts) {
+            _coincidences += (long) count * (count - 1);
+        }
+        _pairSum = 0;
+        if (_weights != null) {
+            for (int i = 0; i + 1 < _len; i += 1) {
+                _pairSum += _weights[_out[i] * _n + _out[i + 1]];
+            }
+        }
+    }
+
+    /** Return my current plugboard, as alphabet indices. */
+    int[] plugboard() {
+        return _plug.clone();
+    }
+
+    /** Return the score of the decryption under my current plugboard. */
+    double score() {
+        if (_weights != null) {
+            return _len < 2 ? 0 : _pairSum / (_len - 1);
+        }
+        return _len < 2 ? 0 : (double) _coincidences / _len / (_len - 1);
+    }
+
+    /** Return my current decryption, as alphabet indices. */
+    int[] decryption() {
+        return _out.clone();
+    }
+
+    /** Starting from my current plugboard, repeatedly apply any move
+     *  that improves my score, using at most MAXPAIRS plug pairs, until
+     *  none does, and return the final score.  A move on letters A and B
+     *  unplugs them if they are plugged together, and otherwise frees
+     *  both from their partners and plugs them together. */
+    double climb(int maxPairs) {
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (int a = 0; a < _n; a += 1) {
+                for (int b = a + 1; b < _n; b += 1) {
+                    if (tryMove(a, b, maxPairs)) {
+                        improved = true;
+                    }
+                }
+            }
+        }
+        return score();
+    }
+
+    /** Apply the move on letters A and B if it keeps to MAXPAIRS pairs
+     *  and improves my score, returning true iff it did. */
+    boolean tryMove(int a, int b, int maxPairs) {
+        int pa = _plug[a], pb = _plug[b];
+        int newPairs;
+        if (pa == b) {
+            newPairs = _pairs - 1;
+        } else {
+            newPairs = _pairs + 1 - (pa != a ? 1 : 0) - (pb != b ? 1 : 0);
+            if (newPairs > maxPairs) {
+                return false;
+            }
+        }
+        int[] letters = { a, b, pa, pb };
+        int[] old = { _plug[a], _plug[b], _plug[pa], _plug[pb] };
+        if (pa == b) {
+            _plug[a] = a;
+            _plug[b] = b;
+        } else {
+            _plug[pa] = pa;
+            _plug[pb] = pb;
+            _plug[a] = b;
+            _plug[b] = a;
+        }
+        double before = score();
+        int m = redecrypt(letters);
+        if (score() > before + EPSILON) {
+            _pairs = newPairs;
+            for (int q = 0; q < m; q += 1) {
+                int i = _affected[q];
+                moveMid(i, _core[i * _n + _plug[_text[i]]]);
+            }
+            return true;
+        }
+        for (int k = 3; k >= 0; k -= 1) {
+            _plug[letters[k]] = old[k];
+        }
+        restore(m);
+        return false;
+    }
+
+    /** Redecrypt, under my (just changed) plugboard, every position whose
+     *  ciphertext or middle letter is among LETTERS, updating my running
+     *  score and saving the old decryption for restore(); return the
+     *  number of positions redecrypted, which are listed in _affected. */
+    private int redecrypt(int[] letters) {
+        _generation += 1;
+        int m = 0;
+        for (int s : letters) {
+            for (int i : _byCipher[s]) {
+                if (_stamps[i] != _generation) {
+                    _stamps[i] = _generation;
+                    _affected[m] = i;
+                    m += 1;
+                }
+            }
+            for (int t = 0; t < _midCounts[s]; t += 1) {
+                int i = _byMid[s][t];
+                if (_stamps[i] != _generation) {
+                    _stamps[i] = _generation;
+                    _affected[m] = i;
+                    m += 1;
+                }
+            }
+        }
+        _touched = 0;
+        if (_weights != null) {
+            for (int q = 0; q < m; q += 1) {
+                touchPair(_affected[q] - 1);
+                touchPair(_affected[q]);
+            }
+            for (int p = 0; p < _touched; p += 1) {
+                int j = _pairsTouched[p];
+                _pairSum -= _weights[_out[j] * _n + _out[j + 1]];
+            }
+        }
+        for (int q = 0; q < m; q += 1) {
+            int i = _affected[q];
+            _saved[q] = _out[i];
+            setOut(i, _plug[_core[i * _n + _plug[_text[i]]]]);
+        }
+        if (_weights != null) {
+            for (int p = 0; p < _touched; p += 1) {
+                int j = _pairsTouched[p];
+                _pairSum += _weights[_out[j] * _n + _out[j + 1]];
+            }
+        }
+        return m;
+    }
+
+    /** Undo the last redecrypt(), which redecrypted M positions. */
+    private void restore(int m) {
+        if (_weights != null) {
+            for (int p = 0; p < _touched; p += 1) {
+                int j = _pairsTouched[p];
+                _pairSum -= _weights[_out[j] * _n + _out[j + 1]];
+            }
+        }
+        for (int q = 0; q < m; q += 1) {
+            setOut(_affected[q], _saved[q]);
+        }
+        if (_weights != null) {
+            for (int p = 0; p < _touched; p += 1) {
+                int j = _pairsTouched[p];
+                _pairSum += _weights[_out[j] * _n + _out[j + 1]];
+            }
+        }
+    }
+
+    /** Add the pair of positions J and J + 1, if both exist, to the pairs
+     *  touched by the current redecrypt(). */
+    private void touchPair(int j) {
+        if (j >= 0 && j + 1 < _len && _pairStamps[j] != _generation) {
+            _pairStamps[j] = _generation;
+            _pairsTouched[_touched] = j;
+            _touched += 1;
+        }
+    }
+
+    /** Set the decryption at position I to X, keeping the letter counts
+     *  and coincidence count up to date. */
+    private void setOut(int i, int x) {
+        int y = _out[i];
+        if (x != y) {
+            _counts[y] -= 1;
+            _coincidences -= 2L * _counts[y];
+            _coincidences += 2L * _counts[x];
+            _counts[x] += 1;
+            _out[i] = x;
+        }
+    }
+
+    /** Move position I to the list of middle letter MID. */
+    private void moveMid(int i, int mid) {
+        int old = _mid[i];
+        if (old == mid) {
+            return;
+        }
+        int last = _byMid[old][_midCounts[old] - 1];
+        _byMid[old][_midSlots[i]] = last;
+        _midSlots[last] = _midSlots[i];
+        _midCounts[old] -= 1;
+        _mid[i] = mid;
+        _midSlots[i] = _midCounts[mid];
+        _byMid[mid][_midCounts[mid]] = i;
+        _midCounts[mid] += 1;
+    }
+
+    /** Least score gain for a move to count as an improvement. */
+    private static final double EPSILON = 1e-12;
+
+    /** Alphabet size and ciphertext length. */
+    private final int _n, _len;
+
+    /** Ciphertext, as alphabet indices. */
+    private final int[] _text;
+
+    /** Rotor permutation at each position: _core[I * _n + X]. */
+    private final int[] _core;
+
+    /** Positions with each ciphertext letter. */
+    private final int[][] _byCipher;
+
+    /** Positions with each middle letter (_mid), in the first
+     *  _midCounts entries of each row. */
+    private final int[][] _byMid;
+
+    /** Number of positions listed under each middle letter. */
+    private final int[] _midCounts;
+
+    /** Index of each position in its _byMid row. */
+    private final int[] _midSlots;
+
+    /** Letter between the rotors and the plugboard on the way out, at
+     *  each position. */
+    private final int[] _mid;
+
+    /** Decryption at each position. */
+    private final int[] _out;
+
+    /** Letter counts of the decryption. */
+    private final int[] _counts;
+
+    /** Current plugboard. */
+    private final int[] _plug;
+
+    /** Generation at which each position, and each pair of positions
+     *  starting there, was last touched by redecrypt(). */
+    private final int[] _stamps, _pairStamps;
+
+    /** Positions redecrypted by the last redecrypt(), and their previous
+     *  decryptions. */
+    private final int[] _affected, _saved;
+
+    /** Pairs (by first position) touched by the last redecrypt(). */
+    private final int[] _pairsTouched;
+
+    /** Number of entries in _pairsTouched. */
+    private int _touched;
+
+    /** Current redecrypt() generation. */
+    private int _generation;
+
+    /** Number of plug pairs in _plug. */
+    private int _pairs;
+
+    /** Sum over letters of count * (count - 1). */
+    private long _coincidences;
+
+    /** Sum of the bigram weights of adjacent decrypted letters. */
+    private double _pairSum;
+
+    /** Bigram weights, or null to score by index of coincidence. */
+    private float[] _weights;
+}
@@ -0,0 +1,102 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PlugboardClimber class.
+ *  @author Frank Warren
+ */
+public class PlugboardClimberTest {
+
+    /** Relative letter frequencies of English, A to Z, in percent. */
+    private static final double[] ENGLISH = {
+        8.2, 1.5, 2.8, 4.3, 12.7, 2.2, 2.0, 6.1, 7.0, 0.2, 0.8, 4.0, 2.4,
+        6.7, 7.5, 1.9, 0.1, 6.0, 6.3, 9.1, 2.8, 1.0, 2.4, 0.2, 2.0, 0.1
+    };
+
+    /** Return N letters drawn from RANDOM with English frequencies. */
+    private static String english(int n, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            double r = random.nextDouble() * 100.4;
+            int c = 0;
+            while (c < 25 && r >= ENGLISH[c]) {
+                r -= ENGLISH[c];
+                c += 1;
+            }
+            result.append((char) ('A' + c));
+        }
+        return result.toString();
+    }
+
+    /** Return the plugboard PLUGS in cycle notation. */
+    private static String cycles(int[] plugs) {
+        StringBuilder result = new StringBuilder();
+        for (int x = 0; x < plugs.length; x += 1) {
+            if (plugs[x] > x) {
+                result.append('(').append((char) ('A' + x))
+                    .append((char) ('A' + plugs[x])).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the decryption of CIPHER by a fresh machine with
+     *  plugboard PLUGS. */
+    private static String decrypt(String cipher, int[] plugs) {
+        Machine m = navalMachine();
+        m.setPlugboard(new Permutation(cycles(plugs), UPPER));
+        return m.convert(cipher);
+    }
+
+    @Test
+    public void incrementalScoresMatchFullDecryption() {
+        Random random = new Random(45);
+        String cipher = navalMachine().convert(english(1500, random));
+        PlugboardClimber climber =
+            new PlugboardClimber(navalMachine(), cipher);
+        float[] weights = new float[26 * 26];
+        for (int k = 0; k < weights.length; k += 1) {
+            weights[k] = random.nextFloat();
+        }
+        for (int round = 0; round < 2; round += 1) {
+            climber.useBigrams(round == 0 ? null : weights);
+            for (int t = 0; t < 300; t += 1) {
+                climber.tryMove(random.nextInt(13), 13 + random.nextInt(13),
+                                10);
+                if (t % 30 == 0) {
+                    double score = climber.score();
+                    int[] plugs = climber.plugboard();
+                    String plain = decrypt(cipher, plugs);
+                    int[] out = climber.decryption();
+                    for (int i = 0; i < out.length; i += 1) {
+                        assertEquals((char) ('A' + out[i]), plain.charAt(i));
+                    }
+                    climber.setPlugboard(plugs);
+                    assertEquals(climber.score(), score, 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void recoversPlugboard() {
+        Random random = new Random(46);
+        Machine m = navalMachine();
+        m.setPlugboard(new Permutation("(AQ) (EX) (TZ) (OJ) (NK)", UPPER));
+        String cipher = m.convert(english(3000, random));
+        PlugboardClimber climber =
+            new PlugboardClimber(navalMachine(), cipher);
+        double start = climber.score();
+        double end = climber.climb(10);
+        assertTrue(end > start);
+        int[] plugs = climber.plugboard();
+        assertEquals('Q' - 'A', plugs[0]);
+        assertEquals('X' - 'A', plugs['E' - 'A']);
+        assertEquals('Z' - 'A', plugs['T' - 'A']);
+    }
+}
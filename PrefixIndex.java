@@ -0,0 +1,469 @@
+package enigma;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** An index from the ciphertext of the first letters of a fixed
+ *  plaintext header to the keys (rotor order and start position, for one
+ *  ring setting and no plugboard) that produce it, so that a message
+ *  known to start with the header can be keyed by a lookup rather than by
+ *  replaying every key.
+ *
+ *  The index file is a 32-byte header (magic number, number K of
+ *  letters indexed, number N of rotor orders, record count), the N
+ *  packed keys (see KeySpace) of the first start position of each order,
+ *  and then one 8-byte record per key, sorted: the ciphertext prefix, as
+ *  a K-digit number in the alphabet's base, times N * P, plus the order's
+ *  index times P, plus the start position's offset within the order,
+ *  where P is the number of start positions per order.  Records carry no
+ *  separate key field, so the file is 8 bytes a key; it is
+ *  memory-mapped, and a lookup is a binary search for the first record
+ *  of a prefix followed by a scan of its (typically few) records.
+ *  @author Frank Warren
+ */
+public final class PrefixIndex {
+
+    /** Magic number at the start of every index file ("ENIGMAP1"). */
+    static final long MAGIC = 0x454e49474d415031L;
+
+    /** Bytes in the index header and in each record. */
+    static final int HEADER_BYTES = 32, RECORD_BYTES = 8;
+
+    /** Run as specified by ARGS, one of
+     *      build CONFIG INDEX HEADER [--rotors ORDER] [--rings SETTING]
+     *            [--letters K]
+     *      lookup CONFIG INDEX HEADER CIPHERTEXT
+     *  "build" writes the index of the first K letters (default as many
+     *  as fit, at most the length of HEADER) of plaintext HEADER for every
+     *  rotor order of configuration file CONFIG (or just ORDER) with ring
+     *  setting SETTING (default all first letters), using all cores.
+     *  "lookup" prints, as setting lines, the keys that encipher HEADER
+     *  as the start of CIPHERTEXT; letters of HEADER beyond those indexed
+     *  are checked by replaying the candidates. */
+    public static void main(String... args) {
+        try {
+            if (args.length >= 4 && args[0].equals("build")) {
+                String rotors = null, rings = null;
+                int letters = 0;
+                for (int i = 4; i + 1 < args.length; i += 2) {
+                    if (args[i].equals("--rotors")) {
+                        rotors = args[i + 1];
+                    } else if (args[i].equals("--rings")) {
+                        rings = args[i + 1];
+                    } else if (args[i].equals("--letters")) {
+                        letters = Integer.parseInt(args[i + 1]);
+                    } else {
+                        throw error("Unknown option %s", args[i]);
+                    }
+                }
+                build(args[1], new File(args[2]), args[3], letters, rotors,
+                        rings, Runtime.getRuntime().availableProcessors());
+            } else if (args.length == 5 && args[0].equals("lookup")) {
+                Machine m = Main.readConfig(args[1]);
+                KeySpace space = new KeySpace(m);
+                PrefixIndex index = new PrefixIndex(new File(args[2]));
+                for (long key : index.find(m, space, args[3], args[4])) {
+                    System.out.printf("* %s %s %s%n", space.rotors(key),
+                            space.setting(key), space.ringSetting(key));
+                }
+            } else {
+                throw error("Usage: PrefixIndex build CONFIG INDEX HEADER "
+                        + "[--rotors ORDER] [--rings SETTING] [--letters K]"
+                        + " | lookup CONFIG INDEX HEADER CIPHERTEXT");
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Open the index in FILE for lookups, mapping it into memory. */
+    PrefixIndex(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            long length = channel.size();
+            _chunks = new MappedByteBuffer[(int) (length / CHUNK_BYTES) + 1];
+            for (int i = 0; i < _chunks.length; i += 1) {
+                long start = (long) i * CHUNK_BYTES;
+                _chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        start, Math.min(CHUNK_BYTES, length - start));
+            }
+            if (length < HEADER_BYTES || _chunks[0].getLong(0) != MAGIC) {
+                throw error("%s is not a prefix index", file);
+            }
+            _letters = (int) _chunks[0].getLong(8);
+            _bases = new long[(int) _chunks[0].getLong(16)];
+            _size = _chunks[0].getLong(24);
+            for (int i = 0; i < _bases.length; i += 1) {
+                _bases[i] = _chunks[0].getLong(HEADER_BYTES + 8 * i);
+            }
+            _records = HEADER_BYTES + 8L * _bases.length;
+        } catch (IOException excp) {
+            throw error("could not open %s", file);
+        }
+    }
+
+    /** Return the number of letters of the header that I index. */
+    int letters() {
+        return _letters;
+    }
+
+    /** Return the number of keys in the index. */
+    long size() {
+        return _size;
+    }
+
+    /** Return the packed keys, of SPACE, whose first letters()
+     *  ciphertext letters are PREFIX, as a number in base SPACE's alphabet
+     *  size (see prefix()), in increasing order of rotor order index and
+     *  start position. */
+    long[] lookup(KeySpace space, long prefix) {
+        long perOrder = space.positions();
+        long lo = prefix * _bases.length * perOrder;
+        long hi = lo + _bases.length * perOrder;
+        long first = 0, last = _size;
+        while (first < last) {
+            long mid = (first + last) >>> 1;
+            if (record(mid) < lo) {
+                first = mid + 1;
+            } else {
+                last = mid;
+            }
+        }
+        List<Long> result = new ArrayList<Long>();
+        for (long i = first; i < _size && record(i) < hi; i += 1) {
+            long rest = record(i) - lo;
+            result.add(_bases[(int) (rest / perOrder)] + rest % perOrder);
+        }
+        long[] keys = new long[result.size()];
+        for (int i = 0; i < keys.length; i += 1) {
+            keys[i] = result.get(i);
+        }
+        return keys;
+    }
+
+    /** Return the keys of my index under which plaintext HEADER
+     *  enciphers, with no plugboard, to the start of CIPHERTEXT, checking
+     *  any letters beyond those indexed by replaying the candidates on M,
+     *  whose rotors and plugboard no other thread uses.  Characters of
+     *  either string outside SPACE's alphabet are ignored. */
+    long[] find(Machine m, KeySpace space, String header, String ciphertext) {
+        int[] plain = indices(space.alphabet(), header);
+        int[] cipher = indices(space.alphabet(), ciphertext);
+        int n = Math.min(plain.length, cipher.length);
+        if (n < _letters) {
+            throw error("need at least %d letters of header and ciphertext",
+                    _letters);
+        }
+        long prefix = 0;
+        for (int i = 0; i < _letters; i += 1) {
+            prefix = prefix * space.alphabet().size() + cipher[i];
+        }
+        long[] candidates = lookup(space, prefix);
+        m.setPlugboard(new Permutation("", space.alphabet()));
+        int[] rings = new int[m.numRotors() - 1];
+        int[] positions = new int[m.numRotors() - 1];
+        int count = 0;
+        for (long key : candidates) {
+            m.insertRotors(space.rotors(key));
+            space.unpack(key, null, rings, positions);
+            m.setRotors(positions, rings);
+            boolean match = true;
+            for (int i = 0; i < n && match; i += 1) {
+                m.advance();
+                match = m.encipher(plain[i]) == cipher[i];
+            }
+            if (match) {
+                candidates[count] = key;
+                count += 1;
+            }
+        }
+        return Arrays.copyOf(candidates, count);
+    }
+
+    /** Return record I. */
+    private long record(long i) {
+        long pos = _records + i * RECORD_BYTES;
+        return _chunks[(int) (pos / CHUNK_BYTES)]
+            .getLong((int) (pos % CHUNK_BYTES));
+    }
+
+    /** Return the indices in ALPHA of the characters of TEXT that are in
+     *  ALPHA. */
+    private static int[] indices(Alphabet alpha, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            if (alpha.contains(text.charAt(i))) {
+                result[n] = alpha.toInt(text.charAt(i));
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return the ciphertext of the first LETTERS letters of PLAIN, as a
+     *  number in base M's alphabet size, from M's current setting and
+     *  with no plugboard.  Advances M LETTERS times. */
+    static long prefix(Machine m, int[] plain, int letters) {
+        int size = m.getAlphabet().size();
+        long result = 0;
+        for (int i = 0; i < letters; i += 1) {
+            m.advance();
+            result = result * size + m.encipher(plain[i]);
+        }
+        return result;
+    }
+
+    /** Write to OUT the index of the first LETTERS letters (or as many
+     *  as fit, if 0) of plaintext HEADER for every rotor order accepted by
+     *  the machine of configuration file CONFIG (or only ORDER, if
+     *  non-null) with ring setting RINGS (all zero if null), computed by
+     *  THREADS threads.  Each order is computed, sorted and written as a
+     *  run of its own, and the runs are then merged. */
+    static void build(String config, File out, String header, int letters,
+                      String order, String rings, int threads) {
+        Machine m = Main.readConfig(config);
+        KeySpace space = new KeySpace(m);
+        int size = m.getAlphabet().size();
+        int[] plain = indices(m.getAlphabet(), header);
+        int[] ringIndices = new int[m.numRotors() - 1];
+        if (rings != null) {
+            for (int i = 0; i < ringIndices.length; i += 1) {
+                ringIndices[i] = rings.length() == ringIndices.length
+                    ? m.getAlphabet().toInt(rings.charAt(i)) : -1;
+                if (ringIndices[i] < 0) {
+                    throw error("Bad ring setting %s", rings);
+                }
+            }
+        }
+        long ringBase = space.pack(new int[m.numRotors()], ringIndices,
+                new int[m.numRotors() - 1]);
+        List<Long> orders = KeySearch.validOrders(m, space, order);
+        if (orders.isEmpty()) {
+            throw error("no valid rotor order");
+        }
+        long keys = orders.size() * space.positions();
+        int fit = 0;
+        for (long p = keys; p <= Long.MAX_VALUE / size; p *= size) {
+            fit += 1;
+        }
+        if (letters == 0) {
+            letters = Math.min(fit, plain.length);
+        }
+        if (letters < 1 || letters > fit || letters > plain.length) {
+            throw error("cannot index %d letters of this header", letters);
+        }
+        int k = letters;
+        ThreadLocal<Machine> machines =
+            ThreadLocal.withInitial(() -> Main.readConfig(config));
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<File>> runs = new ArrayList<Future<File>>();
+        long[] bases = new long[orders.size()];
+        for (int i = 0; i < bases.length; i += 1) {
+            bases[i] = orders.get(i) + ringBase;
+            long base = bases[i], offset = i * space.positions();
+            runs.add(pool.submit(() -> writeRun(machines.get(), space,
+                    base, offset, keys, plain, k, out)));
+        }
+        List<File> files = new ArrayList<File>();
+        try {
+            for (Future<File> f : runs) {
+                files.add(f.get());
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("index build failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdown();
+        }
+        while (files.size() > MERGE_FAN_IN) {
+            List<File> merged = new ArrayList<File>();
+            for (int i = 0; i < files.size(); i += MERGE_FAN_IN) {
+                File run = tempRun(out);
+                merge(files.subList(i, Math.min(files.size(),
+                        i + MERGE_FAN_IN)), run, null, 0);
+                merged.add(run);
+            }
+            files = merged;
+        }
+        merge(files, out, bases, k);
+    }
+
+    /** Compute the prefixes of the first LETTERS letters of PLAIN for
+     *  every start position of the keys starting at BASE (one rotor order
+     *  and ring setting) with machine M, and return a temporary file, next
+     *  to OUT, holding their sorted records, in which the order's keys
+     *  are numbered from OFFSET among KEYS keys in all. */
+    private static File writeRun(Machine m, KeySpace space, long base,
+                                 long offset, long keys, int[] plain,
+                                 int letters, File out) throws IOException {
+        int slots = m.numRotors() - 1;
+        int[] rings = new int[slots], positions = new int[slots];
+        int count = (int) space.positions();
+        m.insertRotors(space.rotors(base));
+        space.unpack(base, null, rings, null);
+        long[] records = new long[count];
+        for (int p = 0; p < count; p += 1) {
+            space.unpack(base + p, null, null, positions);
+            m.setRotors(positions, rings);
+            records[p] = prefix(m, plain, letters) * keys + offset + p;
+        }
+        Arrays.sort(records);
+        File run = tempRun(out);
+        try (DataOutputStream data = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run)))) {
+            for (long r : records) {
+                data.writeLong(r);
+            }
+        }
+        return run;
+    }
+
+    /** Return a new, empty temporary file next to OUT. */
+    private static File tempRun(File out) {
+        try {
+            File dir = out.getAbsoluteFile().getParentFile();
+            File run = File.createTempFile("prefix", ".run", dir);
+            run.deleteOnExit();
+            return run;
+        } catch (IOException excp) {
+            throw error("could not create run file for %s", out);
+        }
+    }
+
+    /** Merge the sorted record files RUNS into OUT, and delete RUNS.  If
+     *  BASES is non-null, OUT gets the index header for LETTERS letters
+     *  and rotor orders starting at BASES. */
+    private static void merge(List<File> runs, File out, long[] bases,
+                              int letters) {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        try {
+            long total = 0;
+            for (File f : runs) {
+                total += f.length() / RECORD_BYTES;
+                Run run = new Run(f);
+                if (run.next()) {
+                    queue.add(run);
+                } else {
+                    run.close();
+                }
+            }
+            try (DataOutputStream data = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(out)))) {
+                if (bases != null) {
+                    data.writeLong(MAGIC);
+                    data.writeLong(letters);
+                    data.writeLong(bases.length);
+                    data.writeLong(total);
+                    for (long base : bases) {
+                        data.writeLong(base);
+                    }
+                }
+                while (!queue.isEmpty()) {
+                    Run run = queue.poll();
+                    data.writeLong(run._record);
+                    if (run.next()) {
+                        queue.add(run);
+                    } else {
+                        run.close();
+                    }
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s", out);
+        } finally {
+            for (File f : runs) {
+                f.delete();
+            }
+        }
+    }
+
+    /** A sorted run of records being merged. */
+    private static class Run implements Comparable<Run> {
+
+        /** A run reading the records of FILE. */
+        Run(File file) throws IOException {
+            _data = new DataInputStream(new BufferedInputStream(
+                    new FileInputStream(file)));
+        }
+
+        /** Read the next record; return false at the end of the run. */
+        boolean next() throws IOException {
+            try {
+                _record = _data.readLong();
+                return true;
+            } catch (EOFException excp) {
+                return false;
+            }
+        }
+
+        /** Close my file. */
+        void close() throws IOException {
+            _data.close();
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return Long.compare(_record, other._record);
+        }
+
+        /** Source of records. */
+        private final DataInputStream _data;
+
+        /** The current record. */
+        private long _record;
+    }
+
+    /** Bytes per mapped chunk of an index; a multiple of RECORD_BYTES
+     *  (and the header is too) so that no record straddles two chunks. */
+    private static final long CHUNK_BYTES = 1L << 30;
+
+    /** Most runs merged at once, to bound open files. */
+    private static final int MERGE_FAN_IN = 256;
+
+    /** The mapped index file. */
+    private final MappedByteBuffer[] _chunks;
+
+    /** Number of header letters indexed. */
+    private final int _letters;
+
+    /** Packed key of the first start position of each rotor order. */
+    private final long[] _bases;
+
+    /** Byte offset of the first record. */
+    private final long _records;
+
+    /** Number of records. */
+    private final long _size;
+}
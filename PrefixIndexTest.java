@@ -0,0 +1,66 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the PrefixIndex class.
+ *  @author Frank Warren
+ */
+public class PrefixIndexTest {
+
+    @Test
+    public void findsKeysOfHeader() throws IOException {
+        File config = navalConfigFile();
+        File index = File.createTempFile("prefix", ".idx");
+        index.deleteOnExit();
+        String header = "ANXOBERKOMMANDO";
+        PrefixIndex.build(config.getPath(), index, header, 5,
+                "B Beta III IV I", "BCDE", 2);
+        PrefixIndex prefixes = new PrefixIndex(index);
+        assertEquals(5, prefixes.letters());
+        assertEquals(26L * 26 * 26 * 26, prefixes.size());
+
+        Machine m = Main.readConfig(config.getPath());
+        KeySpace space = new KeySpace(m);
+        Random random = new Random(44);
+        for (int trial = 0; trial < 20; trial += 1) {
+            String start = "";
+            for (int i = 0; i < 4; i += 1) {
+                start += (char) ('A' + random.nextInt(26));
+            }
+            m.insertRotors("B Beta III IV I");
+            m.setRotors(start, "BCDE");
+            m.setPlugboard(new Permutation("", UPPER));
+            long key = space.key(m);
+            String cipher = m.convert(header + "XYZ");
+            long[] found = prefixes.find(m, space, header, cipher);
+            boolean present = false;
+            for (long k : found) {
+                present |= k == key;
+                Machine check = Main.readConfig(config.getPath());
+                space.apply(check, k);
+                assertEquals(cipher.substring(0, header.length()),
+                             check.convert(header));
+            }
+            assertTrue(present);
+            long[] candidates = prefixes.lookup(space,
+                    prefixOf(cipher, 5));
+            assertTrue(candidates.length >= found.length);
+        }
+    }
+
+    /** Return the first N letters of TEXT as a number in base 26. */
+    private static long prefixOf(String text, int n) {
+        long result = 0;
+        for (int i = 0; i < n; i += 1) {
+            result = result * 26 + (text.charAt(i) - 'A');
+        }
+        return result;
+    }
+}
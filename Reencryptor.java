@@ -0,0 +1,212 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static enigma.EnigmaException.*;
+
+/** Updates the ciphertext of a large document after edits to its
+ *  plaintext without converting the whole document again.  Letter K of
+ *  the ciphertext depends only on letter K of the plaintext and on the
+ *  rotor positions after K steps from the initial key, so letters outside
+ *  the edits are copied from the old ciphertext, and each edited span is
+ *  converted by a machine started directly at the span, from the nearest
+ *  of a table of rotor positions recorded every SNAPSHOT_INTERVAL
+ *  letters.  An edit that changes the number of letters shifts everything
+ *  after it; that suffix is converted in parallel pieces.
+ *
+ *  As with Machine.convert(String), whitespace in the plaintext takes no
+ *  position and does not appear in the ciphertext.
+ *  @author Frank Warren
+ */
+class Reencryptor {
+
+    /** A reencryptor for documents converted from one key.  MACHINES
+     *  returns a new machine, with rotors of its own, set up with that key
+     *  each time it is called. */
+    Reencryptor(Supplier<Machine> machines) {
+        _machines = machines;
+        _machine = machines.get();
+        _snapshots = new long[] { _machine.packedPositions() };
+    }
+
+    /** An edit replacing characters START (inclusive) through END
+     *  (exclusive) of a plaintext with REPLACEMENT. */
+    static final class Edit {
+
+        /** An edit replacing characters START..END - 1 with
+         *  REPLACEMENT. */
+        Edit(int start, int end, String replacement) {
+            if (start < 0 || end < start) {
+                throw error("bad edit span %d..%d", start, end);
+            }
+            _start = start;
+            _end = end;
+            _replacement = replacement;
+        }
+
+        /** Bounds of the replaced characters. */
+        private final int _start, _end;
+
+        /** Replacing text. */
+        private final String _replacement;
+    }
+
+    /** Return the ciphertext of OLDPLAIN with EDITS applied, where
+     *  OLDCIPHER is the ciphertext of OLDPLAIN.  EDITS are in increasing
+     *  order, do not overlap and are in the coordinates of OLDPLAIN. */
+    String reencrypt(String oldPlain, String oldCipher, List<Edit> edits) {
+        StringBuilder letters = new StringBuilder(oldCipher.length());
+        int[] starts = new int[edits.size()];
+        int[] lengths = new int[edits.size()];
+        int suffix = -1;
+        int at = 0;
+        for (int i = 0; i < edits.size(); i += 1) {
+            Edit edit = edits.get(i);
+            if (edit._start < at || edit._end > oldPlain.length()) {
+                throw error("edits out of order or out of range");
+            }
+            appendLetters(letters, oldPlain, at, edit._start);
+            starts[i] = letters.length();
+            appendLetters(letters, edit._replacement, 0,
+                    edit._replacement.length());
+            lengths[i] = letters.length() - starts[i];
+            if (suffix < 0 && lengths[i] != countLetters(oldPlain,
+                    edit._start, edit._end)) {
+                suffix = starts[i];
+            }
+            at = edit._end;
+        }
+        appendLetters(letters, oldPlain, at, oldPlain.length());
+        if (suffix < 0 && letters.length() != oldCipher.length()) {
+            throw error("ciphertext does not match plaintext");
+        }
+
+        char[] result = new char[letters.length()];
+        int copied = suffix < 0 ? result.length : suffix;
+        oldCipher.getChars(0, copied, result, 0);
+        for (int i = 0; i < edits.size() && starts[i] < copied; i += 1) {
+            convert(_machine, letters, starts[i], starts[i] + lengths[i],
+                    result);
+        }
+        if (suffix >= 0) {
+            convertParallel(letters, suffix, result);
+        }
+        return new String(result);
+    }
+
+    /** Convert LETTERS[FROM..LETTERS.length() - 1] into the same
+     *  positions of RESULT, in pieces of PARALLEL_PIECE letters on all
+     *  cores, each thread with a machine of its own. */
+    private void convertParallel(CharSequence letters, int from,
+                                 char[] result) {
+        snapshot(letters.length());
+        ExecutorService pool = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors());
+        ThreadLocal<Machine> machines = ThreadLocal.withInitial(_machines);
+        try {
+            List<Future<?>> pieces = new ArrayList<Future<?>>();
+            for (int k = from; k < letters.length(); k += PARALLEL_PIECE) {
+                int start = k;
+                int end = (int) Math.min(letters.length(),
+                        (long) k + PARALLEL_PIECE);
+                pieces.add(pool.submit(() -> convert(machines.get(), letters,
+                        start, end, result)));
+            }
+            for (Future<?> piece : pieces) {
+                piece.get();
+            }
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof EnigmaException) {
+                throw (EnigmaException) excp.getCause();
+            }
+            throw error("reencryption failed: %s", excp.getCause());
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /** Convert LETTERS[FROM..TO - 1] with M, started at position FROM
+     *  from my key, into the same positions of RESULT. */
+    private void convert(Machine m, CharSequence letters, int from, int to,
+                         char[] result) {
+        if (from == to) {
+            return;
+        }
+        long[] snapshots = snapshot(from);
+        m.setPackedPositions(snapshots[from / SNAPSHOT_INTERVAL]);
+        for (int k = from - from % SNAPSHOT_INTERVAL; k < from; k += 1) {
+            m.advance();
+        }
+        String converted = m.convert(letters.subSequence(from, to)
+                                     .toString());
+        converted.getChars(0, converted.length(), result, from);
+    }
+
+    /** Return my snapshot table, first extending it to cover position
+     *  LETTER: entry I holds the packed rotor positions after
+     *  I * SNAPSHOT_INTERVAL steps from my key. */
+    private synchronized long[] snapshot(int letter) {
+        int needed = letter / SNAPSHOT_INTERVAL + 1;
+        if (needed > _snapshots.length) {
+            int have = _snapshots.length;
+            _snapshots = Arrays.copyOf(_snapshots, needed);
+            _machine.setPackedPositions(_snapshots[have - 1]);
+            for (int i = have; i < needed; i += 1) {
+                for (int k = 0; k < SNAPSHOT_INTERVAL; k += 1) {
+                    _machine.advance();
+                }
+                _snapshots[i] = _machine.packedPositions();
+            }
+        }
+        return _snapshots;
+    }
+
+    /** Append the non-whitespace characters of TEXT[FROM..TO - 1] to
+     *  RESULT. */
+    private static void appendLetters(StringBuilder result, String text,
+                                      int from, int to) {
+        for (int i = from; i < to; i += 1) {
+            char c = text.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                result.append(c);
+            }
+        }
+    }
+
+    /** Return the number of non-whitespace characters in
+     *  TEXT[FROM..TO - 1]. */
+    private static int countLetters(String text, int from, int to) {
+        int result = 0;
+        for (int i = from; i < to; i += 1) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Letters between recorded rotor positions. */
+    static final int SNAPSHOT_INTERVAL = 4096;
+
+    /** Letters converted by each task of a parallel suffix. */
+    static final int PARALLEL_PIECE = 1 << 16;
+
+    /** Source of new machines set to my key. */
+    private final Supplier<Machine> _machines;
+
+    /** Machine for the snapshot table and sequential conversions. */
+    private final Machine _machine;
+
+    /** Packed rotor positions every SNAPSHOT_INTERVAL letters. */
+    private long[] _snapshots;
+}
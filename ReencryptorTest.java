@@ -0,0 +1,63 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Reencryptor class.
+ *  @author Frank Warren
+ */
+public class ReencryptorTest {
+
+    /** Return N random upper-case letters with a space after every
+     *  seventh, drawn from RANDOM. */
+    private static String text(int n, Random random) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+            if (i % 7 == 6) {
+                result.append(' ');
+            }
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void sameLengthEdits() {
+        Random random = new Random(34);
+        String plain = text(100000, random);
+        String cipher = navalMachine().convert(plain);
+        Reencryptor.Edit a = new Reencryptor.Edit(10, 13, "XYZ");
+        Reencryptor.Edit b = new Reencryptor.Edit(50000, 50001, "Q");
+        String edited = plain.substring(0, 10) + "XYZ"
+            + plain.substring(13, 50000) + "Q" + plain.substring(50001);
+        assertEquals(navalMachine().convert(edited),
+                new Reencryptor(TestUtils::navalMachine)
+                .reencrypt(plain, cipher, List.of(a, b)));
+    }
+
+    @Test
+    public void insertionsAndDeletions() {
+        Random random = new Random(35);
+        String plain = text(300000, random);
+        String cipher = navalMachine().convert(plain);
+        Reencryptor reencryptor =
+            new Reencryptor(TestUtils::navalMachine);
+        Reencryptor.Edit a = new Reencryptor.Edit(5000, 5003, "QQ");
+        Reencryptor.Edit b = new Reencryptor.Edit(9000, 9000, "HELLO");
+        Reencryptor.Edit c = new Reencryptor.Edit(200000, 200100, "");
+        String edited = plain.substring(0, 5000) + "QQ"
+            + plain.substring(5003, 9000) + "HELLO"
+            + plain.substring(9000, 200000) + plain.substring(200100);
+        assertEquals(navalMachine().convert(edited),
+                reencryptor.reencrypt(plain, cipher, List.of(a, b, c)));
+        Reencryptor.Edit d = new Reencryptor.Edit(3, 4, " ");
+        assertEquals(navalMachine().convert(plain.substring(0, 3) + " "
+                        + plain.substring(4)),
+                reencryptor.reencrypt(plain, cipher, List.of(d)));
+    }
+}
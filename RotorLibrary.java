@@ -0,0 +1,179 @@
+package enigma;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Set;
+
+import static enigma.EnigmaException.*;
+
+/** The rotors available to a machine, by name.  A library read from a
+ *  configuration only indexes where each rotor's description lies in
+ *  the text; the rotor's Permutation and Rotor objects are built the
+ *  first time it is asked for, so loading a library of many thousands of
+ *  rotors costs one scan of its text, however few of them are used.
+ *  @author Frank Warren
+ */
+class RotorLibrary {
+
+    /** A library holding exactly the rotors in ROTORS. */
+    RotorLibrary(HashMap<String, Rotor> rotors) {
+        _alphabet = null;
+        _text = null;
+        _source = null;
+        _index = new HashMap<String, int[]>();
+        _rotors = new HashMap<String, Rotor>(rotors);
+        for (String name : rotors.keySet()) {
+            _index.put(name, null);
+        }
+    }
+
+    /** A library of the rotor descriptions in TEXT from character FROM
+     *  on, in the configuration file format, over alphabet ALPHA. */
+    RotorLibrary(Alphabet alpha, String text, int from) {
+        _alphabet = alpha;
+        _text = text;
+        _source = null;
+        _index = new HashMap<String, int[]>();
+        _rotors = new HashMap<String, Rotor>();
+        int pos = skipSpace(text, from);
+        while (pos < text.length()) {
+            int nameEnd = tokenEnd(text, pos);
+            String name = text.substring(pos, nameEnd);
+            int typeStart = skipSpace(text, nameEnd);
+            if (typeStart == text.length()) {
+                throw error("configuration file truncated");
+            }
+            int typeEnd = tokenEnd(text, typeStart);
+            int cyclesStart = skipSpace(text, typeEnd);
+            int cyclesEnd = typeEnd;
+            pos = cyclesStart;
+            while (pos < text.length() && isCycles(text, pos)) {
+                cyclesEnd = tokenEnd(text, pos);
+                pos = skipSpace(text, cyclesEnd);
+            }
+            if ("MNR".indexOf(text.charAt(typeStart)) >= 0) {
+                _index.put(name, new int[] {
+                    typeStart, typeEnd, cyclesStart,
+                    Math.max(cyclesStart, cyclesEnd)
+                });
+            }
+        }
+    }
+
+    /** A library of the same rotors as SOURCE, sharing their wiring (which
+     *  is never modified) but each with a setting of its own, so that
+     *  machines on different threads can use the two libraries at once. */
+    RotorLibrary(RotorLibrary source) {
+        _alphabet = null;
+        _text = null;
+        _source = source;
+        _index = source._index;
+        _rotors = new HashMap<String, Rotor>();
+    }
+
+    /** Return the rotor named NAME, building it if this is the first
+     *  request for it, or null if I have no such rotor.  Libraries made
+     *  from me may call this from other threads, hence the lock. */
+    synchronized Rotor get(String name) {
+        Rotor result = _rotors.get(name);
+        if (result == null && _source != null) {
+            Rotor wiring = _source.get(name);
+            result = wiring == null ? null : copy(wiring);
+        } else if (result == null && _index.get(name) != null) {
+            result = build(name, _index.get(name));
+        }
+        if (result != null) {
+            _rotors.put(name, result);
+        }
+        return result;
+    }
+
+    /** Return a new rotor of the same kind, name, wiring and notches as
+     *  ROTOR, at its initial setting. */
+    private static Rotor copy(Rotor rotor) {
+        if (rotor instanceof MovingRotor) {
+            return new MovingRotor(rotor.name(), rotor.permutation(),
+                    ((MovingRotor) rotor).notches());
+        } else if (rotor instanceof Reflector) {
+            return new Reflector(rotor.name(), rotor.permutation());
+        } else if (rotor instanceof FixedRotor) {
+            return new FixedRotor(rotor.name(), rotor.permutation());
+        } else {
+            return new Rotor(rotor.name(), rotor.permutation());
+        }
+    }
+
+    /** Return the names of all my rotors. */
+    Set<String> names() {
+        return Collections.unmodifiableSet(_index.keySet());
+    }
+
+    /** Return the number of rotors I hold. */
+    int size() {
+        return _index.size();
+    }
+
+    /** Return the rotor NAME described at the text positions in ENTRY
+     *  (type start and end, cycles start and end). */
+    private Rotor build(String name, int[] entry) {
+        String type = _text.substring(entry[0], entry[1]);
+        StringBuilder cycles = new StringBuilder();
+        for (int pos = entry[2]; pos < entry[3];
+             pos = skipSpace(_text, tokenEnd(_text, pos))) {
+            cycles.append(_text, pos, tokenEnd(_text, pos));
+        }
+        Permutation perm = new Permutation(cycles.toString(), _alphabet);
+        switch (type.charAt(0)) {
+        case 'M':
+            return new MovingRotor(name, perm, type.substring(1));
+        case 'N':
+            return new FixedRotor(name, perm);
+        default:
+            return new Reflector(name, perm);
+        }
+    }
+
+    /** Return true iff the token of TEXT at POS is a group of cycles,
+     *  such as "(ABC)" or "(AB)(CD)". */
+    private static boolean isCycles(String text, int pos) {
+        int end = tokenEnd(text, pos);
+        return end - pos >= 3 && text.charAt(pos) == '('
+            && text.charAt(end - 1) == ')';
+    }
+
+    /** Return the position of the first non-whitespace character of TEXT
+     *  at or after POS, or its length if none. */
+    static int skipSpace(String text, int pos) {
+        while (pos < text.length()
+               && Character.isWhitespace(text.charAt(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Return the position just past the token of TEXT starting at
+     *  POS. */
+    static int tokenEnd(String text, int pos) {
+        while (pos < text.length()
+               && !Character.isWhitespace(text.charAt(pos))) {
+            pos += 1;
+        }
+        return pos;
+    }
+
+    /** Alphabet of my rotors, or null if they were all given up front. */
+    private final Alphabet _alphabet;
+
+    /** Configuration text my rotors are described in, or null. */
+    private final String _text;
+
+    /** Library whose wiring I share, or null. */
+    private final RotorLibrary _source;
+
+    /** Text positions of the description of each rotor not yet built,
+     *  or null for those given up front. */
+    private final HashMap<String, int[]> _index;
+
+    /** Rotors built so far, by name. */
+    private final HashMap<String, Rotor> _rotors;
+}
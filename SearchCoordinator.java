@@ -0,0 +1,381 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** Coordinator of a key-space search spread over SearchWorker processes
+ *  on this machine.  The space of rotor orders, ring settings and start
+ *  positions is cut into leases (contiguous ranges of packed keys, see
+ *  KeySpace), which are handed to workers connecting over a loopback
+ *  socket.  Workers report their best candidates and a checkpoint after
+ *  each chunk of a lease; results are only committed with a checkpoint,
+ *  so when a worker dies, its lease is reissued from the last checkpoint
+ *  without losing or duplicating candidates.
+ *
+ *  The protocol is line-based text.  On connecting, the coordinator
+ *  sends "JOB TOP CHECKPOINT" and then the configuration and ciphertext
+ *  file names, one per line.  The worker then repeatedly sends "READY"
+ *  and receives either "LEASE ID START END" or "DONE".  While working on
+ *  a lease it sends "RESULT SCORE KEY PLUGS" lines followed by
+ *  "PROGRESS ID NEXT", meaning all keys before NEXT are done.
+ *  @author Frank Warren
+ */
+public final class SearchCoordinator {
+
+    /** Run a search as specified by ARGS:
+     *      CONFIG CIPHERTEXT [--workers N] [--port N] [--lease N]
+     *                        [--checkpoint N] [--top N] [--rotors ORDER]
+     *                        [--rings SETTING]
+     *  CONFIG and CIPHERTEXT name the configuration and ciphertext files.
+     *  --workers starts N local worker JVMs (default: none; start them by
+     *  hand with "java enigma.SearchWorker PORT").  --port fixes the
+     *  listening port (default: any free port, printed on startup).
+     *  --lease and --checkpoint give the keys per lease and per
+     *  checkpoint, and --top the number of candidates to report; these
+     *  and --workers must be at least 1.  --rotors and --rings restrict
+     *  the search to one rotor order or ring setting.  The best
+     *  candidates are printed as setting lines preceded by their
+     *  scores. */
+    public static void main(String... args) {
+        try {
+            for (String line : new SearchCoordinator(args).run()) {
+                System.out.println(line);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Check and record ARGS (see comment on main). */
+    SearchCoordinator(String[] args) {
+        if (args.length < 2) {
+            throw error("Usage: SearchCoordinator CONFIG CIPHERTEXT "
+                    + "[options]");
+        }
+        _config = new File(args[0]).getAbsolutePath();
+        _ciphertext = new File(args[1]).getAbsolutePath();
+        for (int i = 2; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                throw error("Missing value for %s", args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+            case "--workers":
+                _numWorkers = number(args[i], value, 1, Integer.MAX_VALUE);
+                break;
+            case "--port":
+                _port = number(args[i], value, 0, MAX_PORT);
+                break;
+            case "--lease":
+                _leaseSize = number(args[i], value, 1, Integer.MAX_VALUE);
+                break;
+            case "--checkpoint":
+                _checkpoint = number(args[i], value, 1, Integer.MAX_VALUE);
+                break;
+            case "--top":
+                _top = number(args[i], value, 1, Integer.MAX_VALUE);
+                break;
+            case "--rotors":
+                _rotors = value;
+                break;
+            case "--rings":
+                _rings = value;
+                break;
+            default:
+                throw error("Unknown option %s", args[i]);
+            }
+        }
+    }
+
+    /** Return VALUE, the value of OPTION, as an int in [MIN, MAX]. */
+    private static int number(String option, String value, int min,
+                              int max) {
+        try {
+            int result = Integer.parseInt(value);
+            if (result >= min && result <= max) {
+                return result;
+            }
+        } catch (NumberFormatException excp) {
+            /* Reported below. */
+        }
+        throw error("Bad value for %s: %s", option, value);
+    }
+
+    /** Cut the search space into leases, serve them to workers until all
+     *  are done, and return the best candidates, best first, as setting
+     *  lines preceded by their scores. */
+    List<String> run() {
+        makeLeases(Main.readConfig(_config));
+        _store = new CandidateStore(_top, 1);
+        try (ServerSocket server = new ServerSocket(_port, 50,
+                InetAddress.getLoopbackAddress())) {
+            System.err.printf("coordinator: %d leases, port %d%n",
+                    _outstanding, server.getLocalPort());
+            List<Process> workers = startWorkers(server.getLocalPort());
+            Thread acceptor = new Thread(() -> accept(server));
+            acceptor.setDaemon(true);
+            acceptor.start();
+            awaitLeases();
+            for (Process p : workers) {
+                p.waitFor();
+            }
+        } catch (IOException excp) {
+            throw error("coordinator socket failed: %s", excp.getMessage());
+        } catch (InterruptedException excp) {
+            throw error("coordinator interrupted");
+        }
+        return results();
+    }
+
+    /** Fill _pending with the leases covering every key of a rotor order
+     *  that M accepts, restricted by _rotors and _rings. */
+    void makeLeases(Machine m) {
+        _space = new KeySpace(m);
+        long positions = _space.positions();
+        long ringBase = 0, ringCount = _space.keysPerOrder();
+        if (_rings != null) {
+            if (_rings.length() != m.numRotors() - 1) {
+                throw error("Ring setting must have %d letters",
+                        m.numRotors() - 1);
+            }
+            int[] rings = new int[m.numRotors() - 1];
+            for (int i = 0; i < rings.length; i += 1) {
+                rings[i] = m.getAlphabet().toInt(_rings.charAt(i));
+                if (rings[i] < 0) {
+                    throw error("Ring setting must be in the alphabet");
+                }
+            }
+            ringBase = _space.pack(new int[m.numRotors()], rings,
+                    new int[m.numRotors() - 1]);
+            ringCount = positions;
+        }
+        for (long order : KeySearch.validOrders(m, _space, _rotors)) {
+            long start = order + ringBase, end = start + ringCount;
+            for (long s = start; s < end; s += _leaseSize) {
+                _pending.add(new Lease(_outstanding, s,
+                        Math.min(end, s + _leaseSize)));
+                _outstanding += 1;
+            }
+        }
+        if (_outstanding == 0) {
+            throw error("No rotor order to search.");
+        }
+    }
+
+    /** Return the first and one past the last key of each lease not yet
+     *  handed out, in the order they will be. */
+    synchronized List<long[]> pendingLeases() {
+        List<long[]> result = new ArrayList<long[]>();
+        for (Lease lease : _pending) {
+            result.add(new long[] { lease._next, lease._end });
+        }
+        return result;
+    }
+
+    /** Start _numWorkers worker JVMs connecting to PORT, sharing my
+     *  class path and standard streams, and return them. */
+    private List<Process> startWorkers(int port) throws IOException {
+        String java = System.getProperty("java.home")
+            + File.separator + "bin" + File.separator + "java";
+        List<Process> result = new ArrayList<Process>();
+        for (int i = 0; i < _numWorkers; i += 1) {
+            result.add(new ProcessBuilder(java, "-cp",
+                    System.getProperty("java.class.path"),
+                    "enigma.SearchWorker", Integer.toString(port))
+                .inheritIO().start());
+        }
+        return result;
+    }
+
+    /** Accept worker connections on SERVER, serving each on its own
+     *  thread, until SERVER is closed. */
+    private void accept(ServerSocket server) {
+        while (true) {
+            try {
+                Socket socket = server.accept();
+                new Thread(() -> serve(socket)).start();
+            } catch (IOException excp) {
+                return;
+            }
+        }
+    }
+
+    /** Conduct the protocol with the worker on SOCKET.  A lease the
+     *  worker holds when it disconnects or misbehaves is reissued from
+     *  its last checkpoint. */
+    private void serve(Socket socket) {
+        Lease lease = null;
+        List<String> uncommitted = new ArrayList<String>();
+        try (socket;
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream()));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                               true)) {
+            out.printf("JOB %d %d%n%s%n%s%n", _top, _checkpoint,
+                    _config, _ciphertext);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(" ");
+                if (fields[0].equals("READY") && lease == null) {
+                    lease = takeLease();
+                    if (lease == null) {
+                        out.println("DONE");
+                        return;
+                    }
+                    out.printf("LEASE %d %d %d%n", lease._id, lease._next,
+                            lease._end);
+                } else if (fields[0].equals("RESULT") && lease != null) {
+                    uncommitted.add(line);
+                } else if (fields[0].equals("PROGRESS") && lease != null
+                        && Integer.parseInt(fields[1]) == lease._id) {
+                    if (commit(lease, Long.parseLong(fields[2]),
+                            uncommitted)) {
+                        lease = null;
+                    }
+                    uncommitted.clear();
+                } else {
+                    throw error("bad worker message: %s", line);
+                }
+            }
+        } catch (IOException | EnigmaException | NumberFormatException
+                 | ArrayIndexOutOfBoundsException excp) {
+            System.err.printf("coordinator: worker failed: %s%n",
+                    excp.getMessage());
+        } catch (InterruptedException excp) {
+            return;
+        } finally {
+            if (lease != null) {
+                reissue(lease);
+            }
+        }
+    }
+
+    /** Return the next pending lease, waiting while other leases are
+     *  still held by workers (and so may yet be reissued).  Returns null
+     *  once every lease is done. */
+    private synchronized Lease takeLease() throws InterruptedException {
+        while (_pending.isEmpty() && _outstanding > 0) {
+            wait();
+        }
+        return _pending.poll();
+    }
+
+    /** Commit the RESULT lines RESULTS for LEASE, which is now done up
+     *  to key NEXT.  Returns true iff LEASE is complete. */
+    private synchronized boolean commit(Lease lease, long next,
+                                        List<String> results) {
+        if (next <= lease._next || next > lease._end) {
+            throw error("bad checkpoint for lease %d", lease._id);
+        }
+        for (String r : results) {
+            String[] fields = r.split(" ");
+            _store.offer(Float.parseFloat(fields[1]),
+                    Long.parseLong(fields[2]), Long.parseLong(fields[3]));
+        }
+        lease._next = next;
+        if (next == lease._end) {
+            _outstanding -= 1;
+            notifyAll();
+            return true;
+        }
+        return false;
+    }
+
+    /** Return the unfinished part of LEASE to the pending leases. */
+    private synchronized void reissue(Lease lease) {
+        System.err.printf("coordinator: reissuing lease %d from %d%n",
+                lease._id, lease._next);
+        _pending.addFirst(lease);
+        notifyAll();
+    }
+
+    /** Wait until every lease is done. */
+    private synchronized void awaitLeases() throws InterruptedException {
+        while (_outstanding > 0) {
+            wait();
+        }
+    }
+
+    /** Return the best candidates found, best first, as setting lines
+     *  preceded by their scores. */
+    private List<String> results() {
+        float[] scores = new float[_top];
+        long[] keys = new long[_top], plugs = new long[_top];
+        int n = _store.drain(scores, keys, plugs);
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < n; i += 1) {
+            result.add(String.format("%.5f\t* %s %s %s", scores[i],
+                    _space.rotors(keys[i]), _space.setting(keys[i]),
+                    _space.ringSetting(keys[i])));
+        }
+        return result;
+    }
+
+    /** A contiguous range of packed keys handed to one worker at a time.
+     *  Keys before _next are done. */
+    private static class Lease {
+        /** A lease numbered ID of the keys in [START, END). */
+        Lease(int id, long start, long end) {
+            _id = id;
+            _next = start;
+            _end = end;
+        }
+
+        /** Lease number. */
+        private final int _id;
+
+        /** First key not yet checkpointed. */
+        private long _next;
+
+        /** One past the last key. */
+        private final long _end;
+    }
+
+    /** Largest port number. */
+    private static final int MAX_PORT = 65535;
+
+    /** Absolute names of the configuration and ciphertext files. */
+    private final String _config, _ciphertext;
+
+    /** Number of local workers to start. */
+    private int _numWorkers = 0;
+
+    /** Listening port, or 0 for any free port. */
+    private int _port = 0;
+
+    /** Keys per lease and per checkpoint. */
+    private int _leaseSize = 100000, _checkpoint = 10000;
+
+    /** Number of candidates reported. */
+    private int _top = 10;
+
+    /** Rotor order and ring setting searched, or null for all. */
+    private String _rotors, _rings;
+
+    /** Space of the keys searched. */
+    private KeySpace _space;
+
+    /** Committed candidates from all workers. */
+    private CandidateStore _store;
+
+    /** Leases waiting for a worker, reissued ones first. */
+    private final ArrayDeque<Lease> _pending = new ArrayDeque<Lease>();
+
+    /** Number of leases not yet done. */
+    private int _outstanding;
+}
@@ -0,0 +1,173 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+import java.nio.file.Files;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the SearchCoordinator and
+ *  SearchWorker classes.
+ *  @author Frank Warren
+ */
+public class SearchCoordinatorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /** English plaintext. */
+    private static final String PLAIN =
+        "ITWASTHEBESTOFTIMESITWASTHEWORSTOFTIMESITWASTHEAGEOFWISDOM"
+        + "ITWASTHEAGEOFFOOLISHNESSITWASTHEEPOCHOFBELIEFITWASTHEEPOCH"
+        + "OFINCREDULITYITWASTHESEASONOFLIGHTITWASTHESEASONOFDARKNESS";
+
+    /** Return a temporary configuration file of a three-slot machine
+     *  with the naval rotors, one of them moving. */
+    private static File smallConfig() throws IOException {
+        File file = File.createTempFile("small", ".conf");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(),
+                          navalConfig().replace(" 5 3\n", " 3 1\n"));
+        return file;
+    }
+
+    /** Return a temporary file holding PLAIN enciphered by the machine of
+     *  configuration file CONFIG set by SETTING. */
+    private static File ciphertext(File config, String setting)
+        throws IOException {
+        Machine m = Main.readConfig(config.getPath());
+        Main.configure(m, setting);
+        File file = File.createTempFile("cipher", ".txt");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), m.convert(PLAIN));
+        return file;
+    }
+
+    /** Return a free port on the loopback interface. */
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1,
+                InetAddress.getLoopbackAddress())) {
+            return socket.getLocalPort();
+        }
+    }
+
+    /** Wait until something listens on PORT. */
+    private static void awaitListener(int port) throws Exception {
+        while (true) {
+            try {
+                new Socket(InetAddress.getLoopbackAddress(), port).close();
+                return;
+            } catch (IOException excp) {
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    @Test
+    public void leasesCoverSpaceInOrder() throws IOException {
+        File config = smallConfig();
+        SearchCoordinator coordinator = new SearchCoordinator(new String[] {
+            config.getPath(), "cipher", "--rotors", "B Beta I",
+            "--rings", "AC", "--lease", "100"
+        });
+        Machine m = Main.readConfig(config.getPath());
+        coordinator.makeLeases(m);
+        List<long[]> leases = coordinator.pendingLeases();
+        assertEquals(7, leases.size());
+        KeySpace space = new KeySpace(m);
+        long next = leases.get(0)[0];
+        assertEquals("B Beta I", space.rotors(next));
+        assertEquals("AC", space.ringSetting(next));
+        assertEquals("AA", space.setting(next));
+        for (long[] lease : leases) {
+            assertEquals(next, lease[0]);
+            assertTrue(lease[1] - lease[0] <= 100);
+            assertTrue(lease[1] > lease[0]);
+            next = lease[1];
+        }
+        assertEquals(26 * 26, next - leases.get(0)[0]);
+    }
+
+    @Test
+    public void rejectsNonPositiveOptions() {
+        String[][] bad = {
+            {"--lease", "0"}, {"--checkpoint", "0"}, {"--top", "0"},
+            {"--workers", "0"}, {"--port", "-1"}, {"--port", "65536"},
+            {"--lease", "x"}
+        };
+        for (String[] option : bad) {
+            try {
+                new SearchCoordinator(new String[] {
+                    "config", "cipher", option[0], option[1]
+                });
+                fail(option[0] + " " + option[1] + " accepted");
+            } catch (EnigmaException excp) {
+                assertTrue(excp.getMessage().startsWith("Bad value"));
+            }
+        }
+    }
+
+    @Test
+    public void reissuesLeaseOfLostWorker() throws Exception {
+        File config = smallConfig();
+        File cipher = ciphertext(config, " B Beta I QZ AA");
+        int port = freePort();
+        SearchCoordinator coordinator = new SearchCoordinator(new String[] {
+            config.getPath(), cipher.getPath(), "--rotors", "B Beta I",
+            "--rings", "AA", "--lease", "300", "--checkpoint", "50",
+            "--top", "3", "--port", Integer.toString(port)
+        });
+        ExecutorService pool = Executors.newCachedThreadPool();
+        try {
+            Future<List<String>> results = pool.submit(coordinator::run);
+            awaitListener(port);
+            try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                            port);
+                 BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream()));
+                 PrintWriter out = new PrintWriter(socket.getOutputStream(),
+                                                   true)) {
+                assertEquals("JOB 3 50", in.readLine());
+                assertEquals(config.getAbsolutePath(), in.readLine());
+                assertEquals(cipher.getAbsolutePath(), in.readLine());
+                out.println("READY");
+                String[] lease = in.readLine().split(" ");
+                assertEquals("LEASE", lease[0]);
+                long start = Long.parseLong(lease[2]);
+                out.printf("RESULT 2.0 %d 0%n", start + 1);
+                out.printf("PROGRESS %s %d%n", lease[1], start + 10);
+                out.printf("RESULT 3.0 %d 0%n", start + 20);
+            }
+            Future<?> worker = pool.submit(() -> new SearchWorker().run(port));
+            List<String> lines = results.get();
+            worker.get();
+            assertEquals(3, lines.size());
+            assertEquals("2.00000\t* B Beta I AB AA", lines.get(0));
+            assertTrue(lines.get(1).endsWith("* B Beta I QZ AA"));
+            for (String line : lines) {
+                assertFalse(line.startsWith("3.0"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+
+import java.net.InetAddress;
+import java.net.Socket;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static enigma.EnigmaException.*;
+
+/** A worker process of a key-space search, which takes leases of packed
+ *  keys from a SearchCoordinator on this machine and reports the best
+ *  candidates of each checkpointed chunk.  See SearchCoordinator for the
+ *  protocol.
+ *  @author Frank Warren
+ */
+public final class SearchWorker {
+
+    /** Work for the coordinator listening on port ARGS[0] of the loopback
+     *  interface until it has no more leases. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 1) {
+                throw error("Usage: SearchWorker PORT");
+            }
+            new SearchWorker().run(Integer.parseInt(args[0]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad port %s%n", args[0]);
+        }
+        System.exit(1);
+    }
+
+    /** Connect to the coordinator on PORT and work through leases. */
+    void run(int port) {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+                                        port);
+             BufferedReader in = new BufferedReader(
+                 new InputStreamReader(socket.getInputStream()));
+             PrintWriter out = new PrintWriter(socket.getOutputStream())) {
+            String[] job = in.readLine().split(" ");
+            int top = Integer.parseInt(job[1]);
+            int checkpoint = Integer.parseInt(job[2]);
+            if (!job[0].equals("JOB") || top < 1 || checkpoint < 1) {
+                throw error("bad job from coordinator");
+            }
+            Machine machine = Main.readConfig(in.readLine());
+            String ciphertext = Files.readString(Paths.get(in.readLine()));
+            KeySpace space = new KeySpace(machine);
+            KeySearch search = new KeySearch(machine, space, ciphertext);
+            CandidateStore best = new CandidateStore(top, 1);
+            float[] scores = new float[top];
+            long[] keys = new long[top], plugs = new long[top];
+            while (true) {
+                out.println("READY");
+                out.flush();
+                String[] lease = in.readLine().split(" ");
+                if (!lease[0].equals("LEASE")) {
+                    return;
+                }
+                long end = Long.parseLong(lease[3]);
+                for (long s = Long.parseLong(lease[2]); s < end;
+                     s += checkpoint) {
+                    long chunkEnd = Math.min(end, s + checkpoint);
+                    search.search(s, chunkEnd, best);
+                    int n = best.drain(scores, keys, plugs);
+                    for (int i = 0; i < n; i += 1) {
+                        out.printf("RESULT %s %d %d%n", scores[i], keys[i],
+                                plugs[i]);
+                    }
+                    out.printf("PROGRESS %s %d%n", lease[1], chunkEnd);
+                    out.flush();
+                }
+            }
+        } catch (IOException | NullPointerException
+                 | ArrayIndexOutOfBoundsException excp) {
+            throw error("lost connection to coordinator");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package enigma;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static enigma.EnigmaException.*;
+
+/** The converted output of recently seen '*' sections, keyed by a
+ *  SHA-256 digest of the machine state a section starts in and its
+ *  message lines, so that a retransmitted section is printed from here
+ *  rather than converted again.  At most a fixed number of bytes is held
+ *  in memory; the least recently used sections are dropped beyond that,
+ *  or, given a spill directory, written there as one file per digest and
+ *  read back (and counted as hits) when they recur.  Since the file name
+ *  is the digest of everything the output depends on, a spill directory
+ *  may be kept and shared between runs.
+ *  @author Frank Warren
+ */
+class SectionCache {
+
+    /** A cache holding at most BUDGET bytes of output in memory and
+     *  spilling to directory SPILL, or dropping if SPILL is null. */
+    SectionCache(long budget, File spill) {
+        if (budget < 1) {
+            throw error("cache size must be positive");
+        }
+        if (spill != null && !spill.isDirectory() && !spill.mkdirs()) {
+            throw error("could not create %s", spill);
+        }
+        _budget = budget;
+        _spill = spill;
+    }
+
+    /** Return the most characters of message lines a cached section may
+     *  have; longer sections are converted as they are read. */
+    long maxSection() {
+        return Math.max(_budget / 4, 1);
+    }
+
+    /** Return the key of a section whose machine is in the state
+     *  described by STATE and whose message lines are LINES. */
+    static String key(String state, Iterable<String> lines) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(state.getBytes(StandardCharsets.UTF_8));
+            for (String line : lines) {
+                digest.update((byte) '\n');
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : digest.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw error("SHA-256 unavailable");
+        }
+    }
+
+    /** Return the output stored under KEY, or null if there is none,
+     *  counting a hit or a miss. */
+    byte[] get(String key) {
+        byte[] output = _entries.get(key);
+        if (output == null && _spill != null) {
+            File file = new File(_spill, key);
+            if (file.isFile()) {
+                try {
+                    output = Files.readAllBytes(file.toPath());
+                } catch (IOException excp) {
+                    throw error("could not read %s", file);
+                }
+                put(key, output);
+            }
+        }
+        if (output == null) {
+            Stats.CACHE_MISSES.increment();
+        } else {
+            Stats.CACHE_HITS.increment();
+        }
+        return output;
+    }
+
+    /** Store OUTPUT under KEY, making room for it by dropping or
+     *  spilling the least recently used entries. */
+    void put(String key, byte[] output) {
+        byte[] old = _entries.put(key, output);
+        if (old != null) {
+            _bytes -= old.length + ENTRY_BYTES;
+        }
+        _bytes += output.length + ENTRY_BYTES;
+        Iterator<Map.Entry<String, byte[]>> eldest =
+            _entries.entrySet().iterator();
+        while (_bytes > _budget && eldest.hasNext()) {
+            Map.Entry<String, byte[]> entry = eldest.next();
+            spill(entry.getKey(), entry.getValue());
+            _bytes -= entry.getValue().length + ENTRY_BYTES;
+            eldest.remove();
+        }
+    }
+
+    /** Return the number of bytes of output I hold in memory, counting
+     *  ENTRY_BYTES for each entry. */
+    long bytes() {
+        return _bytes;
+    }
+
+    /** Write OUTPUT to the spill file for KEY, if spilling and there is
+     *  none yet.  The file is written under a temporary name and renamed,
+     *  so that a crash never leaves a partial one. */
+    private void spill(String key, byte[] output) {
+        if (_spill == null) {
+            return;
+        }
+        File file = new File(_spill, key);
+        if (file.isFile()) {
+            return;
+        }
+        File temp = new File(_spill, key + ".tmp");
+        try {
+            Files.write(temp.toPath(), output);
+            Files.move(temp.toPath(), file.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s", file);
+        }
+    }
+
+    /** Bytes charged for each entry beyond its output, for its key and
+     *  map node. */
+    static final int ENTRY_BYTES = 256;
+
+    /** Most bytes held in memory. */
+    private final long _budget;
+
+    /** Spill directory, or null. */
+    private final File _spill;
+
+    /** Entries, least recently used first. */
+    private final LinkedHashMap<String, byte[]> _entries =
+        new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+    /** Bytes held in _entries, counting ENTRY_BYTES for each. */
+    private long _bytes;
+}
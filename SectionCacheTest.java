@@ -0,0 +1,73 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.util.Arrays;
+
+/** The suite of all JUnit tests for the SectionCache class.
+ *  @author Frank Warren
+ */
+public class SectionCacheTest {
+
+    /** Return a byte array of N copies of C. */
+    private static byte[] bytes(int n, char c) {
+        byte[] result = new byte[n];
+        Arrays.fill(result, (byte) c);
+        return result;
+    }
+
+    @Test
+    public void keysDependOnStateAndLines() {
+        String key = SectionCache.key("B I II III AAA", Arrays.asList("AB"));
+        assertEquals(64, key.length());
+        assertEquals(key,
+                     SectionCache.key("B I II III AAA", Arrays.asList("AB")));
+        assertFalse(key.equals(
+                SectionCache.key("B I II III AAB", Arrays.asList("AB"))));
+        assertFalse(key.equals(
+                SectionCache.key("B I II III AAA", Arrays.asList("A", "B"))));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        int entry = 1000;
+        SectionCache cache =
+            new SectionCache(3 * (entry + SectionCache.ENTRY_BYTES), null);
+        cache.put("a", bytes(entry, 'a'));
+        cache.put("b", bytes(entry, 'b'));
+        cache.put("c", bytes(entry, 'c'));
+        assertEquals('a', cache.get("a")[0]);
+        cache.put("d", bytes(entry, 'd'));
+        assertTrue(cache.get("b") == null);
+        assertEquals('a', cache.get("a")[0]);
+        assertEquals('c', cache.get("c")[0]);
+        assertEquals('d', cache.get("d")[0]);
+        assertTrue(cache.bytes() <= 3 * (entry + SectionCache.ENTRY_BYTES));
+    }
+
+    @Test
+    public void spillsEvictedSections() throws IOException {
+        File dir = Files.createTempDirectory("sections").toFile();
+        try {
+            SectionCache cache =
+                new SectionCache(100 + SectionCache.ENTRY_BYTES, dir);
+            cache.put("a", bytes(100, 'a'));
+            cache.put("b", bytes(100, 'b'));
+            assertTrue(new File(dir, "a").isFile());
+            assertEquals(100, cache.get("a").length);
+            assertEquals('b', new SectionCache(1, dir).get("b")[0]);
+            assertTrue(new SectionCache(1, dir).get("c") == null);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+}
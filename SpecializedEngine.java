@@ -0,0 +1,314 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+import java.net.URI;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+/** Builds MachineEngines specialized to one exact rotor layout.  For each
+ *  distinct set of inserted rotors, it writes the source of a class whose
+ *  stepping logic is unrolled slot by slot, with the slot count, pawl
+ *  count and notch positions as literals and the rotor tables in static
+ *  final fields, compiles it in memory and defines it as a hidden class
+ *  in this package.  The JIT then sees monomorphic, straight-line code
+ *  with constant table references instead of the loops and virtual calls
+ *  of Machine.convert(int).
+ *
+ *  Classes are cached by layout: the wiring tables, notch positions and
+ *  pawl count, not the Rotor objects, so that fresh copies of a machine
+ *  and machines parsed again from the same configuration share one
+ *  class.  Only the most recently used MAX_LAYOUTS are kept, and a class
+ *  is compiled outside the cache's lock, other threads wanting the same
+ *  layout waiting for it rather than compiling it again.
+ *
+ *  Specialization needs the system Java compiler and an alphabet of at
+ *  most 32 characters; when either is missing, forLayout() returns null
+ *  and the machine keeps its generic path.
+ *  @author Frank Warren
+ */
+final class SpecializedEngine {
+
+    /** Not instantiable. */
+    private SpecializedEngine() {
+    }
+
+    /** Return a new engine for the rotors currently inserted in M, or
+     *  null if this layout cannot be specialized. */
+    static MachineEngine forLayout(Machine m) {
+        int size = m.getAlphabet().size();
+        if (size > MAX_ALPHABET || COMPILER == null) {
+            return null;
+        }
+        String key = layout(m);
+        CompletableFuture<MethodHandle> built, mine = null;
+        synchronized (CACHE) {
+            built = CACHE.get(key);
+            if (built == null) {
+                mine = built = new CompletableFuture<MethodHandle>();
+                CACHE.put(key, mine);
+            }
+        }
+        if (mine != null) {
+            try {
+                mine.complete(define(m));
+            } finally {
+                mine.complete(NONE);
+            }
+        }
+        MethodHandle ctor = built.join();
+        if (ctor == NONE) {
+            return null;
+        }
+        try {
+            return (MachineEngine) ctor.invoke();
+        } catch (Throwable excp) {
+            return null;
+        }
+    }
+
+    /** Return a description of everything the class specialized to the
+     *  rotors of M depends on: the alphabet size, the pawl count, and the
+     *  notch mask and forward table of each slot. */
+    private static String layout(Machine m) {
+        int n = m.getAlphabet().size();
+        StringBuilder result = new StringBuilder();
+        result.append(n).append(' ').append(m.numPawls());
+        Rotor[] rotors = m.getRotors();
+        for (int i = 0; i < rotors.length; i += 1) {
+            result.append(String.format("|%x:", notchMask(m, i)));
+            Permutation perm = rotors[i].permutation();
+            for (int x = 0; x < n; x += 1) {
+                result.append(perm.permute(x)).append(',');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return the constructor of a new hidden class specialized to the
+     *  rotors of M, or NONE if it could not be built. */
+    private static MethodHandle define(Machine m) {
+        try {
+            byte[] bytes = compile(source(m));
+            if (bytes == null) {
+                return NONE;
+            }
+            COMPILED.incrementAndGet();
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                .defineHiddenClassWithClassData(bytes, tables(m), true);
+            return lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class));
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return NONE;
+        }
+    }
+
+    /** Return the rotor tables of M: for each slot I, forward and
+     *  backward tables at indices 2I and 2I + 1, each of twice the
+     *  alphabet size so that adding a position needs no wrap-around. */
+    private static int[][] tables(Machine m) {
+        int n = m.getAlphabet().size();
+        Rotor[] rotors = m.getRotors();
+        int[][] result = new int[2 * rotors.length][2 * n];
+        for (int i = 0; i < rotors.length; i += 1) {
+            Permutation perm = rotors[i].permutation();
+            for (int x = 0; x < 2 * n; x += 1) {
+                result[2 * i][x] = perm.permute(x);
+                result[2 * i + 1][x] = perm.invert(x);
+            }
+        }
+        return result;
+    }
+
+    /** Return a mask with bit K set iff the rotor in slot I of M is at a
+     *  notch when its setting plus ring setting is K, for K < 2 * alphabet
+     *  size. */
+    private static long notchMask(Machine m, int i) {
+        Rotor rotor = m.getRotors()[i];
+        Alphabet alpha = m.getAlphabet();
+        long mask = 0;
+        if (rotor instanceof MovingRotor) {
+            String notches = ((MovingRotor) rotor).notches();
+            for (int k = 0; k < 2 * alpha.size(); k += 1) {
+                if (notches.indexOf(alpha.toChar(k % alpha.size())) != -1) {
+                    mask |= 1L << k;
+                }
+            }
+        }
+        return mask;
+    }
+
+    /** Return the source of the engine class for the rotors of M. */
+    private static String source(Machine m) {
+        int n = m.numRotors(), size = m.getAlphabet().size();
+        int first = n - m.numPawls();
+        StringBuilder src = new StringBuilder();
+        src.append("package enigma;\n")
+            .append("final class ").append(CLASS_NAME)
+            .append(" implements MachineEngine {\n")
+            .append("  private static final int[][] T;\n")
+            .append("  static {\n    try {\n")
+            .append("      T = java.lang.invoke.MethodHandles.classData(")
+            .append("java.lang.invoke.MethodHandles.lookup(), \"_\", ")
+            .append("int[][].class);\n")
+            .append("    } catch (IllegalAccessException e) {\n")
+            .append("      throw new ExceptionInInitializerError(e);\n")
+            .append("    }\n  }\n");
+        for (int i = 0; i < n; i += 1) {
+            src.append(String.format("  private static final int[] F%d = "
+                    + "T[%d], B%d = T[%d];%n", i, 2 * i, i, 2 * i + 1));
+            if (i > 0) {
+                src.append(String.format("  private int s%d, r%d;%n", i, i));
+            }
+        }
+        src.append(String.format("  private final int[] p = new int[%d];%n",
+                size));
+        src.append("  public void load(Machine m) {\n")
+            .append("    loadRotors(m);\n")
+            .append("    m.getPlugboard().table(p);\n  }\n");
+        src.append("  public void loadRotors(Machine m) {\n")
+            .append("    Rotor[] r = m.getRotors();\n");
+        for (int i = 1; i < n; i += 1) {
+            src.append(String.format("    s%d = r[%d].setting(); r%d = "
+                    + "r[%d].ringSetting();%n", i, i, i, i));
+        }
+        src.append("  }\n");
+        src.append("  public void loadPlugboard(int[] q) {\n")
+            .append(String.format("    System.arraycopy(q, 0, p, 0, %d);%n",
+                    size))
+            .append("  }\n");
+        src.append("  public void store(Machine m) {\n")
+            .append("    Rotor[] r = m.getRotors();\n");
+        for (int i = first; i < n; i += 1) {
+            src.append(String.format("    r[%d].set(s%d);%n", i, i));
+        }
+        src.append("  }\n");
+        src.append("  public int convert(int c) {\n");
+        for (int i = first; i < n; i += 1) {
+            if (i < n - 1) {
+                src.append("    if (").append(notch(m, i + 1)).append(") {\n");
+            } else {
+                src.append("    {\n");
+            }
+            src.append(String.format("      s%d = s%d == %d ? 0 : s%d + 1;%n",
+                    i, i, size - 1, i));
+            if (i < n - 2) {
+                src.append("      if (!").append(notch(m, i + 2))
+                    .append(String.format(") {%n        s%d = s%d == %d ? 0 "
+                            + ": s%d + 1;%n      }%n", i + 1, i + 1,
+                            size - 1, i + 1));
+            }
+            src.append("    }\n");
+        }
+        src.append("    c = p[c];\n");
+        for (int i = n - 1; i > 0; i -= 1) {
+            src.append(String.format("    c = F%d[c + s%d] - s%d; if (c < 0)"
+                    + " { c += %d; }%n", i, i, i, size));
+        }
+        src.append("    c = F0[c];\n");
+        for (int i = 1; i < n; i += 1) {
+            src.append(String.format("    c = B%d[c + s%d] - s%d; if (c < 0)"
+                    + " { c += %d; }%n", i, i, i, size));
+        }
+        src.append("    return p[c];\n  }\n}\n");
+        return src.toString();
+    }
+
+    /** Return a Java expression that is true iff slot I of M is at a
+     *  notch, with its notch positions as a literal. */
+    private static String notch(Machine m, int i) {
+        return String.format("(((0x%xL >>> (s%d + r%d)) & 1L) != 0)",
+                notchMask(m, i), i, i);
+    }
+
+    /** Return the class file compiled from SOURCE, or null on failure. */
+    private static byte[] compile(String source) {
+        ByteArrayOutputStream classFile = new ByteArrayOutputStream();
+        JavaFileObject input = new SimpleJavaFileObject(
+                URI.create("string:///" + CLASS_NAME + ".java"),
+                JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreErrors) {
+                return source;
+            }
+        };
+        JavaFileManager files = new ForwardingJavaFileManager<
+            JavaFileManager>(COMPILER.getStandardFileManager(null, null,
+                                                             null)) {
+            @Override
+            public JavaFileObject getJavaFileForOutput(Location location,
+                    String className, JavaFileObject.Kind kind,
+                    FileObject sibling) {
+                return new SimpleJavaFileObject(URI.create("bytes:///"
+                        + className + ".class"), kind) {
+                    @Override
+                    public OutputStream openOutputStream() {
+                        return classFile;
+                    }
+                };
+            }
+        };
+        List<String> options = Arrays.asList("-classpath",
+                System.getProperty("java.class.path"), "-g:none");
+        boolean ok = COMPILER.getTask(new StringWriter(), files,
+                diagnostic -> { }, options, null, List.of(input)).call();
+        return ok ? classFile.toByteArray() : null;
+    }
+
+    /** Simple name of every generated class. */
+    private static final String CLASS_NAME = "SpecializedMachine";
+
+    /** Largest alphabet whose notch masks fit in a long. */
+    private static final int MAX_ALPHABET = 32;
+
+    /** The system Java compiler, or null if this is not a JDK. */
+    private static final JavaCompiler COMPILER =
+        ToolProvider.getSystemJavaCompiler();
+
+    /** Marker for layouts that could not be specialized. */
+    private static final MethodHandle NONE = MethodHandles.constant(
+            Object.class, null);
+
+    /** Most layouts whose classes are cached. */
+    static final int MAX_LAYOUTS = 64;
+
+    /** Constructors of the engine classes built or being built, keyed by
+     *  layout(), least recently used first.  Guarded by itself. */
+    private static final LinkedHashMap<String,
+                                       CompletableFuture<MethodHandle>>
+        CACHE = new LinkedHashMap<String, CompletableFuture<MethodHandle>>(
+                16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, CompletableFuture<MethodHandle>> e) {
+                return size() > MAX_LAYOUTS;
+            }
+        };
+
+    /** Return the number of classes compiled so far. */
+    static int compiled() {
+        return COMPILED.get();
+    }
+
+    /** Number of classes compiled so far. */
+    private static final AtomicInteger COMPILED = new AtomicInteger();
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/** Process-wide throughput counters for the encryption pipeline.  They
+ *  are striped (LongAdder) so that concurrent machines do not contend,
+ *  and are bumped once per line, section or buffered write rather than
+ *  per character.
+ *  @author Frank Warren
+ */
+final class Stats {
+
+    /** Not instantiable. */
+    private Stats() {
+    }
+
+    /** Characters converted by Main. */
+    static final LongAdder CHARACTERS = new LongAdder();
+
+    /** '*' sections set up by Main. */
+    static final LongAdder SECTIONS = new LongAdder();
+
+    /** Bytes of output written by Main, line terminators included. */
+    static final LongAdder BYTES = new LongAdder();
+
+    /** Sections Main printed from its SectionCache. */
+    static final LongAdder CACHE_HITS = new LongAdder();
+
+    /** Sections Main looked up in its SectionCache and converted. */
+    static final LongAdder CACHE_MISSES = new LongAdder();
+
+    /** Print to OUT a summary of the counters for a run that took
+     *  NANOS nanoseconds. */
+    static void print(PrintStream out, long nanos) {
+        double seconds = Math.max(nanos, 1) / 1e9;
+        long chars = CHARACTERS.sum();
+        out.printf("sections:   %d%n", SECTIONS.sum());
+        out.printf("characters: %d%n", chars);
+        out.printf("bytes out:  %d%n", BYTES.sum());
+        out.printf("elapsed:    %.3f s%n", seconds);
+        out.printf("throughput: %.0f chars/s%n", chars / seconds);
+        out.printf("gc time:    %d ms%n", gcMillis());
+        long hits = CACHE_HITS.sum(), lookups = hits + CACHE_MISSES.sum();
+        if (lookups > 0) {
+            out.printf("cache hits: %d of %d (%.1f%%)%n", hits, lookups,
+                       100.0 * hits / lookups);
+        }
+        long peak = peakResidentKiB();
+        if (peak >= 0) {
+            out.printf("peak rss:   %d KiB%n", peak);
+        }
+    }
+
+    /** Return the total time, in milliseconds, this JVM has spent in
+     *  garbage collection. */
+    static long gcMillis() {
+        long result = 0;
+        for (GarbageCollectorMXBean gc
+                 : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result += Math.max(gc.getCollectionTime(), 0);
+        }
+        return result;
+    }
+
+    /** Return the peak resident set size of this process in KiB, or -1
+     *  where the system does not report it (it is read from
+     *  /proc/self/status, so only Linux does). */
+    static long peakResidentKiB() {
+        try {
+            for (String line
+                     : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+                }
+            }
+        } catch (IOException | NumberFormatException excp) {
+            return -1;
+        }
+        return -1;
+    }
+}
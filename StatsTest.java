@@ -0,0 +1,97 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.nio.file.Files;
+
+import java.util.List;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Stats counters and the
+ *  EnigmaEvents recorded by Main.
+ *  @author Frank Warren
+ */
+public class StatsTest {
+
+    /** Input of two sections. */
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n"
+        + "TOOK THE CAMERA OF ROSEWOOD\n"
+        + "* B Gamma I II III AAAA\n"
+        + "HELLO\n";
+
+    /** Return the output of Main converting INPUT with a naval
+     *  machine. */
+    private static String convert(String input) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream print = new PrintStream(out);
+        Main.convert(Main.parseConfig(navalConfig()),
+                     new ByteArrayInputStream(input.getBytes()), print);
+        print.flush();
+        return out.toString();
+    }
+
+    @Test
+    public void countersRecordConversion() {
+        long sections = Stats.SECTIONS.sum();
+        long chars = Stats.CHARACTERS.sum();
+        long bytes = Stats.BYTES.sum();
+        String output = convert(INPUT);
+        assertEquals(2, Stats.SECTIONS.sum() - sections);
+        assertEquals(23 + 23 + 5, Stats.CHARACTERS.sum() - chars);
+        assertEquals(output.length(), Stats.BYTES.sum() - bytes);
+    }
+
+    @Test
+    public void eventsRecorded() throws IOException {
+        File file = File.createTempFile("enigma", ".jfr");
+        file.deleteOnExit();
+        File input = File.createTempFile("input", ".txt");
+        input.deleteOnExit();
+        Files.writeString(input.toPath(), INPUT);
+        File output = File.createTempFile("output", ".txt");
+        output.deleteOnExit();
+        try (Recording recording = new Recording()) {
+            recording.enable("enigma.Section");
+            recording.enable("enigma.Conversion");
+            recording.start();
+            new Main(new String[] {
+                navalConfigFile().getPath(), input.getPath(),
+                output.getPath(), "--stats"
+            }).process();
+            recording.stop();
+            recording.dump(file.toPath());
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(
+                file.toPath());
+        int sections = 0, lines = 0;
+        long chars = 0;
+        for (RecordedEvent event : events) {
+            String name = event.getEventType().getName();
+            if (name.equals("enigma.Section")) {
+                assertTrue(event.getString("setting").contains(
+                        sections == 0 ? "AXLE (HQ) (EX)" : "AAAA"));
+                sections += 1;
+            } else if (name.equals("enigma.Conversion")) {
+                chars += event.getLong("characters");
+                lines += event.getInt("lines");
+            }
+        }
+        assertEquals(2, sections);
+        assertEquals(3, lines);
+        assertEquals(23 + 23 + 5, chars);
+    }
+}
@@ -1,5 +1,10 @@
 package enigma;
 
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -18,6 +23,50 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return a configuration of the naval machine (five slots, three
+     *  pawls) with every rotor of NAVALA; rotor I has its notch at Q and
+     *  the other moving rotors theirs at E and V. */
+    static String navalConfig() {
+        StringBuilder config = new StringBuilder(UPPER_STRING + "\n 5 3\n");
+        for (String name : NAVALA.keySet()) {
+            String type;
+            switch (name) {
+            case "B": case "C":
+                type = "R";
+                break;
+            case "Beta": case "Gamma":
+                type = "N";
+                break;
+            case "I":
+                type = "MQ";
+                break;
+            default:
+                type = "MEV";
+                break;
+            }
+            config.append(String.format(" %s %s %s%n", name, type,
+                    NAVALA.get(name)));
+        }
+        return config.toString();
+    }
+
+    /** Return a temporary file, deleted on exit, holding navalConfig(). */
+    static File navalConfigFile() throws IOException {
+        File file = File.createTempFile("naval", ".conf");
+        file.deleteOnExit();
+        Files.writeString(file.toPath(), navalConfig());
+        return file;
+    }
+
+    /** Return a machine configured by navalConfig(), with rotors
+     *  B Beta III IV I at AXLE and ring setting BCDE, and no plugboard. */
+    static Machine navalMachine() {
+        Machine machine = Main.parseConfig(navalConfig());
+        machine.insertRotors("B Beta III IV I");
+        machine.setRotors("AXLE", "BCDE");
+        return machine;
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
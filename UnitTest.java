@@ -12,7 +12,27 @@ public class UnitTest {
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
                                       MovingRotorTest.class,
-                                      MachineTest.class));
+                                      MachineTest.class,
+                                      CandidateStoreTest.class,
+                                      CribScannerTest.class,
+                                      CycleCatalogTest.class,
+                                      ReencryptorTest.class,
+                                      KeyVerifierTest.class,
+                                      CanonicalKeysTest.class,
+                                      EnigmaProcessorTest.class,
+                                      PrefixIndexTest.class,
+                                      PlugboardClimberTest.class,
+                                      CoreTablesTest.class,
+                                      SectionCacheTest.class,
+                                      DepthFinderTest.class,
+                                      SearchCoordinatorTest.class,
+                                      StatsTest.class,
+                                      MainTest.class,
+                                      LineReaderTest.class,
+                                      ContainerTest.class,
+                                      BatchTest.class,
+                                      KeySweepTest.class,
+                                      WorkloadTest.class));
     }
 
 }
@@ -0,0 +1,321 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Synthetic inputs for Main, and a driver that measures Main on them.
+ *  A workload is a series of sections, each a random valid setting line
+ *  for a given configuration (rotors, positions, ring setting and a
+ *  plugboard of up to a given number of pairs) followed by a number of
+ *  message lines of random words of a given length.  It is generated as
+ *  a stream, so any size costs constant memory, and is determined
+ *  entirely by its seed and parameters.
+ *  @author Frank Warren
+ */
+public final class Workload {
+
+    /** A generator of workloads for the machine of configuration file
+     *  CONFIG, drawing from seed SEED, with message lines of LINELENGTH
+     *  characters, LINES message lines per section and at most PLUGS
+     *  plugboard pairs. */
+    Workload(String config, long seed, int lineLength, int lines,
+             int plugs) {
+        if (lineLength < 1 || lines < 1 || plugs < 0) {
+            throw error("bad workload parameters");
+        }
+        Machine m = Main.readConfig(config);
+        _alphabet = m.getAlphabet();
+        _numRotors = m.numRotors();
+        _numPawls = m.numPawls();
+        _reflectors = new ArrayList<String>();
+        _fixed = new ArrayList<String>();
+        _moving = new ArrayList<String>();
+        List<String> names = new ArrayList<String>(m.getAllRotors().names());
+        Collections.sort(names);
+        for (String name : names) {
+            Rotor rotor = m.getAllRotors().get(name);
+            if (rotor.reflecting()) {
+                _reflectors.add(name);
+            } else if (rotor.rotates()) {
+                _moving.add(name);
+            } else {
+                _fixed.add(name);
+            }
+        }
+        if (_reflectors.isEmpty() || _moving.size() < _numPawls
+            || _fixed.size() < _numRotors - 1 - _numPawls) {
+            throw error("%s has too few rotors of some kind", config);
+        }
+        _random = new Random(seed);
+        _lineLength = lineLength;
+        _lines = lines;
+        _plugs = Math.min(plugs, _alphabet.size() / 2);
+    }
+
+    /** Run as specified by ARGS, one of
+     *      generate CONFIG [OPTIONS]
+     *      run CONFIG [OPTIONS] [MIX...]
+     *  "generate" writes a workload for configuration file CONFIG to the
+     *  standard output.  Its OPTIONS are --seed=N (default 1), --bytes=N
+     *  (default 1e8; suffixes k, m and g are allowed), --line=N
+     *  characters per message line (default 60), --lines=N message lines
+     *  per section (default 100) and --plugs=N most plugboard pairs
+     *  (default 10).  "run" generates a workload of --bytes for each MIX,
+     *  written LINE/LINES/PLUGS (default one of the defaults), runs Main
+     *  over it with --stats in a fresh JVM (with the options in --jvm=,
+     *  space-separated), and prints the throughput, peak resident set size
+     *  and GC time of each. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 2
+                || !(args[0].equals("generate") || args[0].equals("run"))) {
+                throw error("Usage: Workload generate CONFIG [--seed=N] "
+                        + "[--bytes=N] [--line=N] [--lines=N] [--plugs=N] "
+                        + "| run CONFIG [--seed=N] [--bytes=N] [--jvm=OPTS]"
+                        + " [LINE/LINES/PLUGS...]");
+            }
+            long seed = 1, bytes = 100_000_000L;
+            int line = 60, lines = 100, plugs = 10;
+            String jvm = "";
+            List<String> mixes = new ArrayList<String>();
+            for (int i = 2; i < args.length; i += 1) {
+                String arg = args[i];
+                String value = arg.substring(arg.indexOf('=') + 1);
+                if (arg.startsWith("--seed=")) {
+                    seed = Long.parseLong(value);
+                } else if (arg.startsWith("--bytes=")) {
+                    bytes = Main.parseSize(value);
+                } else if (arg.startsWith("--line=")) {
+                    line = Integer.parseInt(value);
+                } else if (arg.startsWith("--lines=")) {
+                    lines = Integer.parseInt(value);
+                } else if (arg.startsWith("--plugs=")) {
+                    plugs = Integer.parseInt(value);
+                } else if (arg.startsWith("--jvm=")) {
+                    jvm = value;
+                } else if (arg.startsWith("--")) {
+                    throw error("Unknown option %s", arg);
+                } else {
+                    mixes.add(arg);
+                }
+            }
+            if (args[0].equals("generate")) {
+                Writer out = new BufferedWriter(new OutputStreamWriter(
+                        System.out, Charset.defaultCharset()), 1 << 16);
+                new Workload(args[1], seed, line, lines, plugs)
+                    .write(out, bytes);
+                out.flush();
+            } else {
+                if (mixes.isEmpty()) {
+                    mixes.add(line + "/" + lines + "/" + plugs);
+                }
+                run(args[1], seed, bytes, jvm, mixes);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        } catch (NumberFormatException excp) {
+            System.err.printf("Error: bad number %s%n", excp.getMessage());
+        } catch (IOException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Write sections to OUT until at least BYTES characters have been
+     *  written. */
+    void write(Writer out, long bytes) throws IOException {
+        long written = 0;
+        StringBuilder text = new StringBuilder();
+        while (written < bytes) {
+            text.setLength(0);
+            settingLine(text);
+            for (int i = 0; i < _lines; i += 1) {
+                messageLine(text);
+            }
+            out.append(text);
+            written += text.length();
+        }
+    }
+
+    /** Append a random setting line, with its newline, to TEXT. */
+    void settingLine(StringBuilder text) {
+        text.append("* ").append(pick(_reflectors, 1).get(0));
+        for (String name : pick(_fixed, _numRotors - 1 - _numPawls)) {
+            text.append(' ').append(name);
+        }
+        for (String name : pick(_moving, _numPawls)) {
+            text.append(' ').append(name);
+        }
+        text.append(' ');
+        letters(text, _numRotors - 1);
+        text.append(' ');
+        letters(text, _numRotors - 1);
+        int[] order = shuffled(_alphabet.size());
+        int pairs = _random.nextInt(_plugs + 1);
+        for (int i = 0; i < pairs; i += 1) {
+            text.append(" (").append(_alphabet.toChar(order[2 * i]))
+                .append(_alphabet.toChar(order[2 * i + 1])).append(')');
+        }
+        text.append('\n');
+    }
+
+    /** Append a message line of random words, _lineLength characters
+     *  long, with its newline, to TEXT.  Where only one column is left,
+     *  the last word gets one more letter instead of a space. */
+    void messageLine(StringBuilder text) {
+        int start = text.length();
+        while (text.length() - start < _lineLength) {
+            if (text.length() > start
+                && _lineLength - (text.length() - start) > 1) {
+                text.append(' ');
+            }
+            int room = _lineLength - (text.length() - start);
+            letters(text, Math.min(2 + _random.nextInt(8), room));
+        }
+        text.append('\n');
+    }
+
+    /** Append N random letters of my alphabet to TEXT. */
+    private void letters(StringBuilder text, int n) {
+        for (int i = 0; i < n; i += 1) {
+            text.append(_alphabet.toChar(_random.nextInt(_alphabet.size())));
+        }
+    }
+
+    /** Return N distinct random members of CHOICES. */
+    private List<String> pick(List<String> choices, int n) {
+        int[] order = shuffled(choices.size());
+        List<String> result = new ArrayList<String>();
+        for (int i = 0; i < n; i += 1) {
+            result.add(choices.get(order[i]));
+        }
+        return result;
+    }
+
+    /** Return a random permutation of 0 .. N - 1. */
+    private int[] shuffled(int n) {
+        int[] result = new int[n];
+        for (int i = 0; i < n; i += 1) {
+            int j = _random.nextInt(i + 1);
+            result[i] = result[j];
+            result[j] = i;
+        }
+        return result;
+    }
+
+    /** For each of MIXES (LINE/LINES/PLUGS), generate a workload of BYTES
+     *  from SEED for configuration file CONFIG, run Main over it in a new
+     *  JVM with options JVM, and print its measurements. */
+    static void run(String config, long seed, long bytes, String jvm,
+                    List<String> mixes) throws IOException {
+        System.out.printf("%-14s %10s %14s %12s %10s%n", "mix", "MiB",
+                "chars/s", "peak RSS MiB", "GC ms");
+        for (String mix : mixes) {
+            String[] parts = mix.split("/");
+            if (parts.length != 3) {
+                throw error("mix %s is not LINE/LINES/PLUGS", mix);
+            }
+            File input = File.createTempFile("workload", ".in");
+            File output = File.createTempFile("workload", ".out");
+            try {
+                try (Writer out = Files.newBufferedWriter(input.toPath(),
+                        Charset.defaultCharset())) {
+                    new Workload(config, seed, Integer.parseInt(parts[0]),
+                            Integer.parseInt(parts[1]),
+                            Integer.parseInt(parts[2])).write(out, bytes);
+                }
+                String[] stats = measure(config, input, output, jvm);
+                System.out.printf("%-14s %10.1f %14s %12s %10s%n", mix,
+                        input.length() / 1048576.0, stats[0],
+                        stats[1].isEmpty() ? "-"
+                        : Long.toString(Long.parseLong(stats[1]) / 1024),
+                        stats[2]);
+            } finally {
+                input.delete();
+                output.delete();
+            }
+        }
+    }
+
+    /** Run Main with configuration file CONFIG from INPUT to OUTPUT in a
+     *  new JVM with options JVM and --stats, and return its throughput,
+     *  peak resident set size (or "") and GC time as reported. */
+    private static String[] measure(String config, File input, File output,
+                                    String jvm) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(ProcessHandle.current().info().command()
+                    .orElse("java"));
+        if (!jvm.isEmpty()) {
+            command.addAll(Arrays.asList(jvm.trim().split("\\s+")));
+        }
+        command.addAll(Arrays.asList("-cp",
+                System.getProperty("java.class.path"), "enigma.Main",
+                "--stats", config, input.getPath(), output.getPath()));
+        Process process = new ProcessBuilder(command).start();
+        String[] result = { "", "", "" };
+        try (BufferedReader err = new BufferedReader(
+                new InputStreamReader(process.getErrorStream()))) {
+            String line;
+            while ((line = err.readLine()) != null) {
+                String value = line.replaceAll("[^0-9]", "");
+                if (line.startsWith("throughput:")) {
+                    result[0] = value;
+                } else if (line.startsWith("peak rss:")) {
+                    result[1] = value;
+                } else if (line.startsWith("gc time:")) {
+                    result[2] = value;
+                } else if (line.startsWith("Error")) {
+                    throw error("Main failed: %s", line);
+                }
+            }
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw error("Main exited with status %d",
+                        process.exitValue());
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        }
+        return result;
+    }
+
+    /** Alphabet of my machine. */
+    private final Alphabet _alphabet;
+
+    /** Slots and pawls of my machine. */
+    private final int _numRotors, _numPawls;
+
+    /** Names of the reflectors, fixed and moving rotors available. */
+    private final List<String> _reflectors, _fixed, _moving;
+
+    /** Source of all random choices. */
+    private final Random _random;
+
+    /** Characters per message line. */
+    private final int _lineLength;
+
+    /** Message lines per section. */
+    private final int _lines;
+
+    /** Most plugboard pairs in a setting line. */
+    private final int _plugs;
+}
@@ -0,0 +1,50 @@
+package enigma;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Workload class.
+ *  @author Frank Warren
+ */
+public class WorkloadTest {
+
+    /** Return about BYTES characters of the workload with seed SEED for
+     *  the naval machine, with 10 message lines of 40 characters a
+     *  section and up to 10 plugboard pairs. */
+    private static String generate(long seed, long bytes)
+        throws IOException {
+        Workload workload =
+            new Workload(navalConfigFile().getPath(), seed, 40, 10, 10);
+        StringWriter out = new StringWriter();
+        workload.write(out, bytes);
+        return out.toString();
+    }
+
+    @Test
+    public void seedDeterminesWorkload() throws IOException {
+        String text = generate(37, 20000);
+        assertTrue(text.length() >= 20000);
+        assertEquals(text, generate(37, 20000));
+        assertFalse(text.equals(generate(38, 20000)));
+    }
+
+    @Test
+    public void settingLinesConfigure() throws IOException {
+        Machine m = Main.parseConfig(navalConfig());
+        int settings = 0;
+        for (String line : generate(41, 50000).split("\n")) {
+            if (line.startsWith("*")) {
+                Main.configure(m, line.substring(1));
+                settings += 1;
+            } else {
+                assertEquals(line, 40, line.length());
+            }
+        }
+        assertTrue(settings > 10);
+    }
+}
@@ -0,0 +1,15 @@
+#!/bin/sh
+# Launch the Enigma simulator from the packaged JAR, mapping in the AppCDS
+# archive produced by 'make cds' so class loading comes from shared pages.
+# Arguments are passed through unchanged to enigma.Main.
+#
+# Falls back to an ordinary launch (-Xshare:auto) when the archive is
+# missing or was dumped by a different JVM.  Extra JVM options (e.g. -ea
+# for debugging) may be given in ENIGMA_JAVA_OPTS.
+
+DIR=$(cd "$(dirname "$0")/.." && pwd)
+JAR="${ENIGMA_JAR:-$DIR/enigma.jar}"
+JSA="${ENIGMA_JSA:-$DIR/enigma.jsa}"
+
+exec java $ENIGMA_JAVA_OPTS -Xshare:auto -XX:SharedArchiveFile="$JSA" \
+     -jar "$JAR" "$@"
@@ -0,0 +1,43 @@
+#!/bin/sh
+# Report the time to first output byte of enigma.Main, launched from the
+# loose class files and through enigma.sh (JAR + AppCDS archive).
+#
+# Usage: startup-bench.sh CONFIG INPUT [RUNS]
+
+CONF="$1"
+INPUT="$2"
+RUNS="${3:-20}"
+DIR=$(cd "$(dirname "$0")" && pwd)
+
+if [ -z "$CONF" ] || [ -z "$INPUT" ]; then
+    echo "Usage: $0 CONFIG INPUT [RUNS]" >&2
+    exit 1
+fi
+
+STAMP=$(mktemp)
+trap 'rm -f "$STAMP"' EXIT
+
+# Print the mean milliseconds until the command "$@" writes its first
+# byte to standard output, over RUNS runs.  The time is stamped as soon
+# as that byte is read; the rest of the output is drained so that the
+# command runs to completion as usual, but is not timed.
+first_byte() {
+    total=0
+    i=0
+    while [ $i -lt "$RUNS" ]; do
+        start=$(date +%s%N)
+        "$@" | { head -c 1 > /dev/null; date +%s%N > "$STAMP";
+                 cat > /dev/null; }
+        end=$(cat "$STAMP")
+        total=$((total + end - start))
+        i=$((i + 1))
+    done
+    echo $((total / RUNS / 1000000))
+}
+
+plain=$(first_byte java -cp "$DIR/.." enigma.Main "$CONF" "$INPUT")
+cds=$(first_byte "$DIR/enigma.sh" "$CONF" "$INPUT")
+
+echo "time to first byte over $RUNS runs (mean ms)"
+echo "  classes:     $plain"
+echo "  jar + cds:   $cds"